@@ -22,7 +22,9 @@ import csv.impl.AbstractStreamTableWriter;
 import csv.impl.CSVReader;
 import csv.impl.CSVWriter;
 import csv.impl.ExcelReader;
+import csv.impl.ExcelStreamWriter;
 import csv.impl.ExcelWriter;
+import csv.impl.XExcelStreamWriter;
 import csv.impl.XExcelWriter;
 import csv.impl.XmlReader;
 import csv.impl.XmlWriter;
@@ -60,6 +62,22 @@ public class MimeTypeInfo {
 			ExcelReader.class, 
 			ExcelWriter.class
 	);
+	/**
+	 * The information for classic Excel files written without building a workbook in memory.
+	 * This information is not registered by default.
+	 * @see csv.CSVFactory#register(MimeTypeInfo)
+	 * @since 4.4
+	 */
+	public static final MimeTypeInfo EXCEL_STREAM_INFO = new MimeTypeInfo(
+			new String[] {
+					"application/excel",
+					"application/vnd.ms-excel",
+					"application/x-excel",
+					"application/x-msexcel",
+			}, 
+			ExcelReader.class, 
+			ExcelStreamWriter.class
+	);
 	/**
 	 * The default information for classic Excel files.
 	 */
@@ -70,6 +88,19 @@ public class MimeTypeInfo {
 			ExcelReader.class, 
 			XExcelWriter.class
 	);
+	/**
+	 * The information for Excel 2007+ files written without Apache POI.
+	 * This information is not registered by default.
+	 * @see csv.CSVFactory#register(MimeTypeInfo)
+	 * @since 4.4
+	 */
+	public static final MimeTypeInfo X_EXCEL_STREAM_INFO = new MimeTypeInfo(
+			new String[] {
+					"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+			}, 
+			ExcelReader.class, 
+			XExcelStreamWriter.class
+	);
 	/**
 	 * The default information for Excel files.
 	 */
@@ -0,0 +1,538 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import csv.CsvException;
+
+/**
+ * Base class for parsers that read Excel sheets row by row without building a workbook.
+ * <p>
+ * A parser delivers the physical rows of the selected sheet in the order they
+ * appear in the file. Only the current row is held in memory. Missing rows are not
+ * reported and it is the responsibility of the caller to fill any gaps.
+ * Formulas are never evaluated, the cached results stored in the file are returned instead.
+ * </p>
+ * <p>
+ * A parser must not be used by multiple threads. However, {@link #createSheetParser()}
+ * creates parsers that share the workbook data and can read other sheets concurrently.
+ * </p>
+ * @author RalphSchuster
+ * @see ExcelReader#setStreaming(boolean)
+ * @since 4.4
+ */
+public abstract class AbstractExcelStreamParser implements Closeable {
+
+	/** The names of all sheets in the workbook */
+	private List<String> sheetNames = new ArrayList<>();
+	/** Index of the selected sheet */
+	private int sheetIndex = 0;
+	/** Whether the selected sheet was opened already */
+	private boolean sheetOpened = false;
+	/** Index of the current row */
+	private int rowIndex = -1;
+	/** The values of the current row */
+	private Object values[] = new Object[16];
+	/** The number of cells in the current row */
+	private int cellCount = 0;
+	/** Date classification of styles: 0 = unknown, 1 = date format, 2 = other format */
+	private byte dateStyles[] = new byte[0];
+	/** Whether the current row has no values */
+	private boolean blankRow = true;
+	/** Whether the workbook uses the 1904 date system */
+	private boolean date1904 = false;
+	/** Whether JavaTime objects shall be returned (default is <code>false</code> = no) */
+	private boolean javaTimeEnabled = false;
+	/** Format for delivering all values as texts, <code>null</code> = deliver Java objects */
+	private ExcelTextFormat textFormat = null;
+	/** Index of first row to be read */
+	private int regionFirstRow = 0;
+	/** Index of last row to be read, -1 = all rows */
+	private int regionLastRow = -1;
+	/** Columns to be read, <code>null</code> = all columns */
+	private int regionColumns[] = null;
+	/** Index of each column in the values, -1 when the column is not read */
+	private int columnSlots[] = null;
+
+	/**
+	 * Default constructor.
+	 */
+	public AbstractExcelStreamParser() {
+	}
+
+	/**
+	 * Constructor for parsers sharing the workbook data of another parser.
+	 * @param workbook the parser that read the workbook data
+	 * @see #createSheetParser()
+	 */
+	protected AbstractExcelStreamParser(AbstractExcelStreamParser workbook) {
+		this.sheetNames = workbook.sheetNames;
+		this.date1904 = workbook.date1904;
+		this.javaTimeEnabled = workbook.javaTimeEnabled;
+		this.textFormat = workbook.textFormat;
+	}
+
+	/**
+	 * Creates the parser for the format of the given file.
+	 * @param file the Excel file
+	 * @return the parser
+	 * @throws CsvException when the file format is not supported or the file cannot be read
+	 */
+	public static AbstractExcelStreamParser newInstance(File file) {
+		return newInstance(file, 0);
+	}
+
+	/**
+	 * Creates the parser for the format of the given file.
+	 * @param file the Excel file
+	 * @param sharedStringsCacheSize number of shared strings kept in memory (Excel 2007+ files only),
+	 *        0 when all shared strings shall be loaded into memory
+	 * @return the parser
+	 * @throws CsvException when the file format is not supported or the file cannot be read
+	 */
+	public static AbstractExcelStreamParser newInstance(File file, int sharedStringsCacheSize) {
+		FileMagic magic;
+		try {
+			magic = FileMagic.valueOf(file);
+		} catch (IOException e) {
+			throw new CsvException("Cannot create Excel workbook", e);
+		}
+		if (magic == FileMagic.OOXML) return new XExcelStreamParser(file, sharedStringsCacheSize);
+		if (magic == FileMagic.OLE2) return new ExcelStreamParser(file);
+		throw new CsvException("Streaming mode is not supported for this file format: "+magic);
+	}
+
+	/**
+	 * Creates a parser that shares the workbook data of this parser, e.g. sheet names,
+	 * shared strings and formats, but reads sheets independently.
+	 * <p>
+	 * The new parser can be used by another thread concurrently to this parser.
+	 * It must be closed before this parser is closed.
+	 * </p>
+	 * @return the new parser with the first sheet selected
+	 */
+	public abstract AbstractExcelStreamParser createSheetParser();
+
+	/**
+	 * Returns the names of all sheets in the workbook.
+	 * @return the sheet names in workbook order
+	 */
+	public List<String> getSheetNames() {
+		return Collections.unmodifiableList(sheetNames);
+	}
+
+	/**
+	 * Adds a sheet name.
+	 * Subclasses call this method while reading the workbook structure.
+	 * @param name name of next sheet
+	 */
+	protected void addSheetName(String name) {
+		sheetNames.add(name);
+	}
+
+	/**
+	 * Returns the index of the sheet with given name.
+	 * @param name name of sheet
+	 * @return index of sheet or -1 if no such sheet exists
+	 */
+	public int getSheetIndex(String name) {
+		for (int i=0; i<sheetNames.size(); i++) {
+			if (sheetNames.get(i).equalsIgnoreCase(name)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the selected sheet.
+	 * @return the index of the sheet
+	 */
+	public int getSheetIndex() {
+		return sheetIndex;
+	}
+
+	/**
+	 * Selects the sheet to be parsed.
+	 * The parser will restart at the beginning of the sheet, even if the sheet was selected before.
+	 * The sheet itself is opened when the first row is requested.
+	 * @param index index of sheet
+	 */
+	public void selectSheet(int index) {
+		if ((index < 0) || (index >= sheetNames.size())) throw new CsvException("No such sheet: "+index);
+		sheetIndex = index;
+		sheetOpened = false;
+		rowIndex = -1;
+		clearValues();
+	}
+
+	/**
+	 * Restricts reading to a region of the sheets.
+	 * Rows outside the region are skipped without building values and parsing stops
+	 * after the last row of the region. Rows contain the values of the given columns
+	 * in the given order.
+	 * @param firstRow index of first row to be read
+	 * @param lastRow index of last row to be read, -1 for all rows
+	 * @param columns indexes of columns to be read, <code>null</code> or empty for all columns
+	 */
+	public void setRegion(int firstRow, int lastRow, int columns[]) {
+		regionFirstRow = firstRow;
+		regionLastRow = lastRow;
+		regionColumns = (columns != null) && (columns.length > 0) ? columns.clone() : null;
+		columnSlots = null;
+		if (regionColumns != null) {
+			int max = 0;
+			for (int column : regionColumns) max = Math.max(max, column);
+			columnSlots = new int[max+1];
+			Arrays.fill(columnSlots, -1);
+			for (int i=0; i<regionColumns.length; i++) columnSlots[regionColumns[i]] = i;
+		}
+	}
+
+	/**
+	 * Returns the index of the first row to be read.
+	 * @return index of first row
+	 */
+	public int getRegionFirstRow() {
+		return regionFirstRow;
+	}
+
+	/**
+	 * Returns the index of the last row to be read.
+	 * @return index of last row, -1 for all rows
+	 */
+	public int getRegionLastRow() {
+		return regionLastRow;
+	}
+
+	/**
+	 * Returns the indexes of the columns to be read.
+	 * @return the column indexes or <code>null</code> for all columns
+	 */
+	public int[] getRegionColumns() {
+		return regionColumns != null ? regionColumns.clone() : null;
+	}
+
+	/**
+	 * Returns whether a row is located before the region to be read.
+	 * @param rowIndex index of row
+	 * @return <code>true</code> when the row shall be skipped
+	 */
+	protected boolean isBeforeRegion(int rowIndex) {
+		return rowIndex < regionFirstRow;
+	}
+
+	/**
+	 * Returns whether a row is located after the region to be read.
+	 * @param rowIndex index of row
+	 * @return <code>true</code> when parsing can stop
+	 */
+	protected boolean isAfterRegion(int rowIndex) {
+		return (regionLastRow >= 0) && (rowIndex > regionLastRow);
+	}
+
+	/**
+	 * Returns whether a column shall be read.
+	 * @param column column index
+	 * @return <code>true</code> when the column is in the region
+	 */
+	protected boolean isColumnSelected(int column) {
+		return (columnSlots == null) || ((column < columnSlots.length) && (columnSlots[column] >= 0));
+	}
+
+	/**
+	 * Returns the index of the last row in the selected sheet.
+	 * @return last row index as declared in the file or -1 when unknown
+	 */
+	public int getLastRowNum() {
+		ensureSheetOpened();
+		return getDeclaredLastRowNum();
+	}
+
+	/**
+	 * Reads the next physical row from the selected sheet.
+	 * @return <code>true</code> when a row was read, <code>false</code> when the end of sheet was reached
+	 */
+	public boolean nextRow() {
+		ensureSheetOpened();
+		clearValues();
+		return readRow();
+	}
+
+	/**
+	 * Clears the values of the current row.
+	 */
+	private void clearValues() {
+		Arrays.fill(values, 0, cellCount, null);
+		cellCount = 0;
+		blankRow = true;
+	}
+
+	/**
+	 * Opens the selected sheet if not done yet.
+	 */
+	protected void ensureSheetOpened() {
+		if (!sheetOpened) {
+			openSheet(sheetIndex);
+			sheetOpened = true;
+		}
+	}
+
+	/**
+	 * Opens the given sheet for parsing.
+	 * Any previously opened sheet must be closed by this method.
+	 * @param index index of sheet
+	 */
+	protected abstract void openSheet(int index);
+
+	/**
+	 * Returns the last row index as declared in the file.
+	 * This method is called after the sheet was opened.
+	 * @return last row index or -1 when unknown
+	 */
+	protected abstract int getDeclaredLastRowNum();
+
+	/**
+	 * Reads the next row from the opened sheet.
+	 * Implementations call {@link #startRow(int)} and {@link #setValue(int, Object)} for each cell in the row.
+	 * @return <code>true</code> when a row was read, <code>false</code> when the end of sheet was reached
+	 */
+	protected abstract boolean readRow();
+
+	/**
+	 * Starts a new row.
+	 * @param rowIndex index of row
+	 */
+	protected void startRow(int rowIndex) {
+		this.rowIndex = rowIndex;
+	}
+
+	/**
+	 * Sets the value of a cell in the current row.
+	 * Columns that were skipped are filled with <code>null</code>.
+	 * Values of columns outside the region are ignored.
+	 * @param column column index
+	 * @param value value of cell, <code>null</code> for blank cells
+	 */
+	protected void setValue(int column, Object value) {
+		if (columnSlots != null) {
+			if (!isColumnSelected(column)) return;
+			column = columnSlots[column];
+		}
+		if (column >= values.length) values = Arrays.copyOf(values, Math.max(column+1, values.length*2));
+		values[column] = value;
+		if (column >= cellCount) cellCount = column+1;
+		if (value != null) blankRow = false;
+	}
+
+	/**
+	 * Returns the index of the current row.
+	 * @return the index of the current row
+	 */
+	public int getRowIndex() {
+		return rowIndex;
+	}
+
+	/**
+	 * Returns whether the current row contains blank cells only.
+	 * @return <code>true</code> when the row has no values
+	 */
+	public boolean isBlankRow() {
+		return blankRow;
+	}
+
+	/**
+	 * Returns the number of cells in the current row.
+	 * @return number of cells, including blank cells
+	 */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * Returns the values of the current row.
+	 * @param minLength minimum length of the array
+	 * @return the values
+	 */
+	public Object[] getValues(int minLength) {
+		int length = regionColumns != null ? regionColumns.length : cellCount;
+		return Arrays.copyOf(values, Math.max(length, minLength));
+	}
+
+	/**
+	 * Returns the number of values in the current row.
+	 * @return the number of columns in the region or the number of cells
+	 * @since 4.4
+	 */
+	public int getValueCount() {
+		return regionColumns != null ? regionColumns.length : cellCount;
+	}
+
+	/**
+	 * Copies the values of the current row into the given array.
+	 * Other than {@link #getValues(int)} no array is allocated.
+	 * @param target the array to receive the values
+	 * @param length number of values to copy, values beyond {@link #getValueCount()} are <code>null</code>
+	 * @since 4.4
+	 */
+	public void copyValues(Object target[], int length) {
+		int count = Math.min(length, Math.min(getValueCount(), values.length));
+		System.arraycopy(values, 0, target, 0, count);
+		Arrays.fill(target, count, length, null);
+	}
+
+	/**
+	 * Returns the Java object for a numeric cell.
+	 * The value will be converted into a date when the style has a date format.
+	 * @param value numeric value
+	 * @param styleIndex index of cell style
+	 * @return the value as {@link Double} or date object, or as text when a {@link #getTextFormat() text format} is set
+	 */
+	protected Object getNumericValue(double value, int styleIndex) {
+		if (isDateStyle(styleIndex) && DateUtil.isValidExcelDate(value)) {
+			if (textFormat != null) return textFormat.formatDate(DateUtil.getLocalDateTime(value, date1904));
+			return javaTimeEnabled ? DateUtil.getLocalDateTime(value, date1904) : DateUtil.getJavaDate(value, date1904);
+		}
+		if (textFormat != null) return textFormat.formatNumber(value);
+		return value;
+	}
+
+	/**
+	 * Returns whether the given style has a date format.
+	 * The classification is computed once per style by {@link #isDateFormat(int)}.
+	 * @param styleIndex index of cell style
+	 * @return <code>true</code> when the style formats dates
+	 */
+	protected boolean isDateStyle(int styleIndex) {
+		if (styleIndex < 0) return false;
+		if (styleIndex >= dateStyles.length) dateStyles = Arrays.copyOf(dateStyles, Math.max(styleIndex+1, dateStyles.length*2));
+		byte rc = dateStyles[styleIndex];
+		if (rc == 0) {
+			rc = isDateFormat(styleIndex) ? (byte)1 : (byte)2;
+			dateStyles[styleIndex] = rc;
+		}
+		return rc == 1;
+	}
+
+	/**
+	 * Returns whether the number format of the given style is a date format.
+	 * @param styleIndex index of cell style
+	 * @return <code>true</code> when the style formats dates
+	 */
+	protected abstract boolean isDateFormat(int styleIndex);
+
+	/**
+	 * Returns the Java object for a date cell.
+	 * @param value the date
+	 * @return the date object as requested by {@link #isJavaTimeEnabled()}
+	 */
+	protected Object getDateValue(LocalDateTime value) {
+		if (textFormat != null) return textFormat.formatDate(value);
+		if (javaTimeEnabled) return value;
+		return Date.from(value.atZone(ZoneId.systemDefault()).toInstant());
+	}
+
+	/**
+	 * Returns the Java object for a boolean cell.
+	 * @param value the boolean
+	 * @return the {@link Boolean}, or the text when a {@link #getTextFormat() text format} is set
+	 */
+	protected Object getBooleanValue(boolean value) {
+		if (textFormat != null) return textFormat.formatBoolean(value);
+		return value;
+	}
+
+	/**
+	 * Returns the Java object for an error cell.
+	 * @param code the error code
+	 * @return the code as {@link Byte}, or the text when a {@link #getTextFormat() text format} is set
+	 */
+	protected Object getErrorValue(int code) {
+		if (textFormat != null) return textFormat.formatError(code);
+		return (byte)code;
+	}
+
+	/**
+	 * Returns whether the workbook uses the 1904 date system.
+	 * @return <code>true</code> when dates are based on 1904
+	 */
+	public boolean isDate1904() {
+		return date1904;
+	}
+
+	/**
+	 * Sets whether the workbook uses the 1904 date system.
+	 * @param date1904 <code>true</code> when dates are based on 1904
+	 */
+	protected void setDate1904(boolean date1904) {
+		this.date1904 = date1904;
+	}
+
+	/**
+	 * Returns whether date/time values shall be returns as LocalDateTime object or simple Dates.
+	 * @return whether date/time values shall be returns as LocalDateTime object or simple Dates
+	 */
+	public boolean isJavaTimeEnabled() {
+		return javaTimeEnabled;
+	}
+
+	/**
+	 * Sets whether date/time values shall be returns as LocalDateTime object or simple Dates.
+	 * @param javaTimeEnabled whether date/time values shall be returns as LocalDateTime object or simple Dates
+	 */
+	public void setJavaTimeEnabled(boolean javaTimeEnabled) {
+		this.javaTimeEnabled = javaTimeEnabled;
+	}
+
+	/**
+	 * Returns the format for delivering all values as texts.
+	 * @return the format, <code>null</code> when Java objects are delivered
+	 * @since 4.4
+	 */
+	public ExcelTextFormat getTextFormat() {
+		return textFormat;
+	}
+
+	/**
+	 * Sets the format for delivering all values as texts.
+	 * The format applies to all rows read after this call.
+	 * @param textFormat the format, <code>null</code> to deliver Java objects (default)
+	 * @since 4.4
+	 */
+	public void setTextFormat(ExcelTextFormat textFormat) {
+		this.textFormat = textFormat;
+	}
+
+	/**
+	 * Closes the parser and releases all resources.
+	 */
+	@Override
+	public abstract void close();
+
+}
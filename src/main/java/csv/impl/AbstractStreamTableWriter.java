@@ -40,6 +40,7 @@ public abstract class AbstractStreamTableWriter extends AbstractTableWriter {
     private PrintWriter writer;
     private OutputStream outputStream;
     private CharsetEncoder charsetEncoder = CSVUtils.getDefaultCharset().newEncoder();
+    private int flushInterval = 1;
     
 	/**
 	 * Default Constructor.
@@ -154,6 +155,39 @@ public abstract class AbstractStreamTableWriter extends AbstractTableWriter {
 		return outputStream;
 	}
 
+	/**
+	 * Returns the number of rows after which the writer is flushed.
+	 * @return the flush interval, 0 when the writer is flushed on close only
+	 * @since 4.4
+	 */
+	public int getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * Sets the number of rows after which the writer is flushed.
+	 * The default of 1 flushes the writer after each row so readers of the stream
+	 * see every row immediately. Larger intervals reduce the number of writes
+	 * to the underlying stream when writing large tables.
+	 * Writers of Excel files ignore the interval as the files can only be read after closing.
+	 * @param flushInterval the number of rows, 0 to flush on close only
+	 * @since 4.4
+	 */
+	public void setFlushInterval(int flushInterval) {
+		if (flushInterval < 0) throw new CsvException("Flush interval must not be negative: "+flushInterval);
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Flushes the writer when the number of rows written reached the flush interval.
+	 * Implementations call this method after each row was written and counted.
+	 * @see #setFlushInterval(int)
+	 * @since 4.4
+	 */
+	protected void checkFlush() {
+		if ((flushInterval > 0) && (getRowCount() % flushInterval == 0)) getWriter().flush();
+	}
+
 	/**
 	 * Closes the writer and its underlying streams.
 	 */
@@ -235,13 +235,37 @@ public class CSVWriter extends AbstractStreamTableWriter {
      * Prints a new row into the CSV file.
      * This is the method where an actual CSV row will be printed.
      * The columns are prepared to follow the CSV syntax rules
-     * and definitions. The underlying stream in flushed immediately.
+     * and definitions. The underlying stream is flushed according
+     * to the flush interval.
      * @param columns array of column values.
+     * @see #setFlushInterval(int)
      */
     public void printRow(Object[] columns) throws IOException {
         getWriter().print(prepareRow(columns));
-        getWriter().flush();
         incrementRowCount();
+        checkFlush();
+    }
+    
+    /**
+     * Prints a row of texts into the CSV file.
+     * The texts are not converted by the mapper, so this method is suited for
+     * copying large numbers of rows, e.g. by {@link ExcelReader#transcode(CSVWriter)}.
+     * The underlying stream is flushed according to the flush interval.
+     * @param texts array of column texts, <code>null</code> for empty columns
+     * @param length number of columns to be printed
+     * @see #setFlushInterval(int)
+     * @since 4.4
+     */
+    public void printTexts(Object texts[], int length) {
+        PrintWriter out = getWriter();
+        for (int i=0; i<length; i++) {
+            if (i != 0) out.print(columnSeparator);
+            if (texts[i] != null) out.print(prepareText(texts[i].toString()));
+        }
+        out.print(rowSeparator);
+        if (columnCount < length) columnCount = length;
+        incrementRowCount();
+        checkFlush();
     }
     
     /**
@@ -291,9 +315,17 @@ public class CSVWriter extends AbstractStreamTableWriter {
      * @return column value to write to output
      */
     private String prepareColumn(Object o) {
-        String rc = "";
-        if (o == null) return rc;
-        String s = convert(o).toString();
+        if (o == null) return "";
+        return prepareText(convert(o).toString());
+    }
+    
+    /**
+     * Prepares a converted column value for output.
+     * @param s value to wrap and parse
+     * @return column value to write to output
+     */
+    private String prepareText(String s) {
+        String rc;
         if ((columnDelimiter != null) && columnNeedsDelimiting(s)) {
             rc = columnDelimiter;
             rc += prepareColumnValue(s);
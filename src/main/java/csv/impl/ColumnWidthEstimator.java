@@ -0,0 +1,182 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.time.LocalDate;
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.Date;
+
+import rs.baselib.type.MonetaryValue;
+
+/**
+ * Estimates the widths of the columns in a sheet while cells are written.
+ * <p>
+ * The estimator keeps the widest value per column. Widths of texts are computed
+ * from a glyph-width table relative to the width of a digit in the default font,
+ * so no font metrics are required. Multi-line texts are measured by their longest line.
+ * Numbers and dates are measured by the length of their default display format.
+ * </p>
+ * <p>
+ * Estimates are expressed in units of 1/256th of a character width, the unit
+ * of {@link org.apache.poi.ss.usermodel.Sheet#setColumnWidth(int, int)}.
+ * </p>
+ * @author RalphSchuster
+ * @see ExcelWriter#getColumnWidthEstimator(org.apache.poi.ss.usermodel.Sheet)
+ * @since 4.4
+ */
+public class ColumnWidthEstimator {
+
+	/** Maximum column width in characters as accepted by Excel */
+	public static final int MAX_CHARACTERS = 255;
+	/** Relative widths of the ASCII glyphs */
+	private static final float GLYPH_WIDTHS[] = new float[128];
+	/** Relative width of wide glyphs, e.g. CJK ideographs */
+	private static final float WIDE_GLYPH_WIDTH = 2f;
+
+	static {
+		Arrays.fill(GLYPH_WIDTHS, 1f);
+		setGlyphWidth(" .,;:'|!`il", 0.5f);
+		setGlyphWidth("\"()[]{}-/\\fjrtI", 0.7f);
+		setGlyphWidth("ABCDEFGHKNOPQRSTUVXYZ&", 1.2f);
+		setGlyphWidth("mwMW@%", 1.5f);
+	}
+
+	/**
+	 * Sets the relative width of the given glyphs.
+	 * @param glyphs the glyphs
+	 * @param width relative width
+	 */
+	private static void setGlyphWidth(String glyphs, float width) {
+		for (int i=0; i<glyphs.length(); i++) GLYPH_WIDTHS[glyphs.charAt(i)] = width;
+	}
+
+	/** The widest value of each column in characters */
+	private float widths[] = new float[16];
+	/** Number of columns with estimates */
+	private int columnCount = 0;
+
+	/**
+	 * Default constructor.
+	 */
+	public ColumnWidthEstimator() {
+	}
+
+	/**
+	 * Updates the estimate of a column with a value written into it.
+	 * @param column column index
+	 * @param value value of the cell
+	 */
+	public void update(int column, Object value) {
+		if (value == null) return;
+		float width = getValueWidth(value);
+		if (column >= widths.length) widths = Arrays.copyOf(widths, Math.max(column+1, widths.length*2));
+		if (width > widths[column]) widths[column] = width;
+		if (column >= columnCount) columnCount = column+1;
+	}
+
+	/**
+	 * Returns the number of columns that have estimates.
+	 * @return index of last column with an estimate plus 1
+	 */
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Returns the estimated width of the given column.
+	 * @param column column index
+	 * @param padding additional characters to be added, e.g. for an autofilter button
+	 * @return width in units of 1/256th of a character or -1 when no value was written into the column
+	 */
+	public int getColumnWidth(int column, float padding) {
+		if ((column >= columnCount) || (widths[column] <= 0)) return -1;
+		float characters = Math.min(widths[column] + padding + 1, MAX_CHARACTERS);
+		return (int)(characters * 256);
+	}
+
+	/**
+	 * Returns the estimated display width of a value.
+	 * @param value the value
+	 * @return width in characters
+	 */
+	public static float getValueWidth(Object value) {
+		if (value instanceof CharSequence) return getTextWidth((CharSequence)value);
+		if (value instanceof Date) return 16;
+		if (value instanceof LocalDate) return 10;
+		if (value instanceof TemporalAccessor) return 16;
+		if (value instanceof MonetaryValue) return getNumberWidth(((MonetaryValue)value).getDouble()) + 4;
+		if (value instanceof Double) return getNumberWidth(((Double)value).doubleValue());
+		if (value instanceof Float) return getNumberWidth(((Float)value).doubleValue());
+		if (value instanceof Number) return getDigits(((Number)value).longValue());
+		if (value instanceof Boolean) return 5;
+		return getTextWidth(value.toString());
+	}
+
+	/**
+	 * Returns the estimated display width of a decimal number.
+	 * @param value the number
+	 * @return width in characters
+	 */
+	private static float getNumberWidth(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) return 8;
+		if (Math.abs(value) >= 1e15) return 10;
+		return getDigits((long)value) + 3;
+	}
+
+	/**
+	 * Returns the number of characters of an integer.
+	 * @param value the number
+	 * @return number of digits including the sign
+	 */
+	private static int getDigits(long value) {
+		int rc = value < 0 ? 2 : 1;
+		while ((value >= 10) || (value <= -10)) {
+			value /= 10;
+			rc++;
+		}
+		return rc;
+	}
+
+	/**
+	 * Returns the estimated display width of a text.
+	 * The longest line determines the width of multi-line texts.
+	 * Measuring stops when the maximum column width was exceeded.
+	 * @param s the text
+	 * @return width in characters
+	 */
+	public static float getTextWidth(CharSequence s) {
+		float rc = 0;
+		float line = 0;
+		int len = s.length();
+		for (int i=0; i<len; i++) {
+			char c = s.charAt(i);
+			if (c == '\n') {
+				if (line > rc) rc = line;
+				line = 0;
+			} else if (c < 128) {
+				line += GLYPH_WIDTHS[c];
+			} else {
+				line += Character.isIdeographic(c) || (c >= '\uFF01') && (c <= '\uFF60') ? WIDE_GLYPH_WIDTH : 1f;
+			}
+			if (line >= MAX_CHARACTERS) return MAX_CHARACTERS;
+		}
+		return Math.max(rc, line);
+	}
+
+}
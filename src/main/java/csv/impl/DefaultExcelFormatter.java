@@ -17,14 +17,19 @@
  */
 package csv.impl;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Currency;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.poi.ss.usermodel.BorderStyle;
 import org.apache.poi.ss.usermodel.Cell;
@@ -39,6 +44,7 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
 
 import rs.baselib.type.MonetaryValue;
 
@@ -49,6 +55,16 @@ import rs.baselib.type.MonetaryValue;
  * formatting hyperlinks in cells.
  * You can derive from this implementation to change formatting, e.g. just
  * setting another color or font size.
+ * <p>
+ * Styles are planned once per column, value class and row kind (first row,
+ * odd row, even row). Subsequent cells with the same key reuse the planned style
+ * without calling the style methods again. The plan is disabled by default for
+ * subclasses that override any of the style methods (e.g. {@link #getFont(ExcelWriter, int, int, Object)},
+ * {@link #getDateFormat(int, int, Object)} or {@link #getPlainFont(Workbook, int, int, Object)}),
+ * as their styles might depend on other properties of the row or value. Such subclasses
+ * can enable the plan by {@link #setStylePlanEnabled(boolean)} and restrict it by overriding
+ * {@link #isStylePlanApplicable(ExcelWriter, int, int, Object)}.
+ * </p>
  * @author RalphSchuster
  *
  */
@@ -56,6 +72,15 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 
 	/** Arial font name */
 	public static final String DEFAULT_FONT_NAME = "Arial";
+	/** Names of the methods that define a cell style */
+	private static final Set<String> STYLE_METHODS = new HashSet<>(Arrays.asList(
+			"createStyle", "getAlign", "getFormat", "getBackgroundColor", "getFillPattern",
+			"getForegroundColor", "getFont", "getTopBorderColor", "getLeftBorderColor",
+			"getRightBorderColor", "getBottomBorderColor", "getTopBorderThickness",
+			"getLeftBorderThickness", "getRightBorderThickness", "getBottomBorderThickness",
+			"isTextWrap", "getDateFormat", "getDateTimeFormat", "getIntegerFormat",
+			"getRealFormat", "getCurrencyFormat", "getBoldFont", "getPlainFont", "getHyperlinkFont"));
+
 	/** Color Black */
 	public static final short DEFAULT_FONT_COLOR = IndexedColors.BLACK.getIndex();
 	/** Color Blue */
@@ -70,6 +95,8 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 	public static final String DEFAULT_INTEGER_FORMAT = "0";
 	/** real format "0.00" */
 	public static final String DEFAULT_REAL_FORMAT = "0.00";
+	/** additional column width in characters for the autofilter button */
+	public static final float AUTOFILTER_BUTTON_WIDTH = 2f;
 
 	private boolean emphasizeFirstRow;
 	private boolean autofilter;
@@ -86,6 +113,9 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 	private Map<String, Short> currencyFormat;
 	private Map<String, Short> realFormat;
 	private Map<StyleDescription, CellStyle> styles;
+	private Boolean stylePlanEnabled = null;
+	private Map<Class<?>, Integer> stylePlanClasses;
+	private StylePlan[][] stylePlan;
 	private Short borderColor;
 	private BorderStyle borderThickness;
 
@@ -161,6 +191,16 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 		realFormat           = new HashMap<>();
 		currencyFormat       = new HashMap<>();
 		styles               = new HashMap<>();
+		resetStylePlan();
+	}
+
+	/**
+	 * Forgets all planned styles.
+	 * Called when a property changes that the styles depend on.
+	 */
+	protected void resetStylePlan() {
+		stylePlanClasses = new HashMap<>();
+		stylePlan        = new StylePlan[0][];
 	}
 
 	/**
@@ -179,13 +219,53 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 		this.autofilter = autofilter;
 	}
 
+	/**
+	 * Returns whether styles are planned per column, value class and row kind.
+	 * The default is <code>true</code> unless a subclass overrides one of the style methods.
+	 * @return <code>true</code> when styles are planned
+	 * @since 4.4
+	 */
+	public boolean isStylePlanEnabled() {
+		if (stylePlanEnabled == null) stylePlanEnabled = !overridesStyleMethods(getClass());
+		return stylePlanEnabled;
+	}
+
+	/**
+	 * Returns whether the class overrides any of the methods that define a cell style.
+	 * All overloads of these methods are regarded.
+	 * @param clazz the class
+	 * @return <code>true</code> when a style method is overridden
+	 */
+	private static boolean overridesStyleMethods(Class<?> clazz) {
+		for (Class<?> c = clazz; c != DefaultExcelFormatter.class; c = c.getSuperclass()) {
+			for (Method m : c.getDeclaredMethods()) {
+				if (Modifier.isStatic(m.getModifiers()) || Modifier.isPrivate(m.getModifiers())) continue;
+				if (STYLE_METHODS.contains(m.getName())) return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sets whether styles are planned per column, value class and row kind.
+	 * Disable the plan when the style methods return different styles for cells
+	 * of the same column, value class and row kind.
+	 * @param stylePlanEnabled <code>true</code> when styles shall be planned
+	 * @since 4.4
+	 */
+	public void setStylePlanEnabled(boolean stylePlanEnabled) {
+		this.stylePlanEnabled = stylePlanEnabled;
+		resetStylePlan();
+	}
+
 	/**
 	 * Sets the cell style.
 	 * This implementations calls various other methods to define
-	 * the style of the cell.
+	 * the style of the cell when no style was planned yet for the cell.
 	 * @param writer writer that requires the information
 	 * @param cell cell to be formatted
 	 * @param value value in cell
+	 * @see #isStylePlanEnabled()
 	 * @see #getFormat(ExcelWriter, int, int, Object)
 	 * @see #getBackgroundColor(ExcelWriter, int, int, Object)
 	 * @see #getFillPattern(ExcelWriter, int, int, Object)
@@ -199,6 +279,83 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 		int row = cell.getRowIndex();
 		int column = cell.getColumnIndex();
 
+		Hyperlink link = getHyperlink(writer, row, column, value);
+		CellStyle style;
+		if (isStylePlanEnabled() && (link == null) && isStylePlanApplicable(writer, row, column, value)) {
+			style = getPlannedStyle(writer, row, column, value);
+		} else {
+			style = createStyle(writer, row, column, value);
+		}
+		if (style != null) cell.setCellStyle(style);
+
+		// Set a hyperlink
+		if (link != null) cell.setHyperlink(link);
+	}
+
+	/**
+	 * Returns whether the style of the cell can be taken from the style plan.
+	 * This implementation excludes monetary values as their format depends on the currency.
+	 * @param writer the calling writer
+	 * @param row row index
+	 * @param column column index
+	 * @param value value in cell
+	 * @return <code>true</code> when the style only depends on column, value class and row kind
+	 * @since 4.4
+	 */
+	protected boolean isStylePlanApplicable(ExcelWriter writer, int row, int column, Object value) {
+		return !(value instanceof MonetaryValue);
+	}
+
+	/**
+	 * Returns the planned style for the cell.
+	 * The style is created by {@link #createStyle(ExcelWriter, int, int, Object)} when
+	 * the first cell for the column, value class and row kind is formatted.
+	 * @param writer the calling writer
+	 * @param row row index
+	 * @param column column index
+	 * @param value value in cell
+	 * @return the style or <code>null</code> if the default style applies
+	 * @since 4.4
+	 */
+	protected CellStyle getPlannedStyle(ExcelWriter writer, int row, int column, Object value) {
+		Class<?> valueClass = value != null ? value.getClass() : Void.class;
+		Integer classIndex = stylePlanClasses.get(valueClass);
+		if (classIndex == null) {
+			classIndex = stylePlanClasses.size();
+			stylePlanClasses.put(valueClass, classIndex);
+		}
+		// Row kinds: first row, odd rows, even rows
+		int slot = classIndex*3 + (row == 0 ? 0 : 1 + (row & 1));
+
+		if (column >= stylePlan.length) stylePlan = Arrays.copyOf(stylePlan, Math.max(column+1, stylePlan.length*2));
+		StylePlan columnPlan[] = stylePlan[column];
+		if (columnPlan == null) {
+			columnPlan = new StylePlan[Math.max(slot+1, 6)];
+			stylePlan[column] = columnPlan;
+		} else if (slot >= columnPlan.length) {
+			columnPlan = Arrays.copyOf(columnPlan, Math.max(slot+1, columnPlan.length*2));
+			stylePlan[column] = columnPlan;
+		}
+		StylePlan plan = columnPlan[slot];
+		if (plan == null) {
+			plan = new StylePlan(createStyle(writer, row, column, value));
+			columnPlan[slot] = plan;
+		}
+		return plan.getStyle();
+	}
+
+	/**
+	 * Creates the style for the cell.
+	 * This implementations calls various other methods to define the style.
+	 * Styles with equal descriptions are shared.
+	 * @param writer the calling writer
+	 * @param row row index
+	 * @param column column index
+	 * @param value value in cell
+	 * @return the style or <code>null</code> if the default style applies
+	 * @since 4.4
+	 */
+	protected CellStyle createStyle(ExcelWriter writer, int row, int column, Object value) {
 		StyleDescription desc = new StyleDescription();
 
 		// Collect cell style and check if we already had it before
@@ -226,24 +383,14 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 		// Alignment
 		desc.setAlignment(getAlign(writer, row, column, value));
 
-		if (!desc.isDefault()) {
-			CellStyle style = styles.get(desc);
-			if (style == null) {
-				style = writer.getWorkbook().createCellStyle();
-				styles.put(desc, style);
-				desc.applyStyle(style);
-			}
-
+		if (desc.isDefault()) return null;
+		CellStyle style = styles.get(desc);
+		if (style == null) {
+			style = writer.getWorkbook().createCellStyle();
 			desc.applyStyle(style);
-
-			// set style
-			cell.setCellStyle(style);
+			styles.put(desc, style);
 		}
-
-		// Set a hyperlink
-		Hyperlink link = getHyperlink(writer, row, column, value);
-		if (link != null) cell.setHyperlink(link);
-
+		return style;
 	}
 
 	/**
@@ -298,6 +445,8 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 	 * Finalizes the given sheet in the workbook.
 	 * The method is automatically called by {@link #finalize(ExcelWriter)} and takes care
 	 * of finalizing the first row in a sheet by calling {@link #finalizeFirstRow(ExcelWriter, Workbook, Sheet, int, Row, Cell, int)}.
+	 * Sheets of streaming workbooks whose first row was flushed already will be finalized
+	 * by {@link #finalizeStreamedSheet(ExcelWriter, Workbook, SXSSFSheet, int)} instead.
 	 * @param writer - writer the calling writer
 	 * @param workbook - the workbook to be finalized
 	 * @param sheet - the sheet to be finalized
@@ -321,9 +470,33 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 				}
 			}
 			if (isAutofilter()) applyAutofilter(workbook, sheet, row);
+		} else if (sheet instanceof SXSSFSheet) {
+			finalizeStreamedSheet(writer, workbook, (SXSSFSheet)sheet, sheetIndex);
 		}
 	}
-	
+
+	/**
+	 * Finalizes a sheet of a streaming workbook whose first row was already flushed to disk.
+	 * Cells of the first row cannot be modified anymore. So this implementation
+	 * sets the estimated widths of all columns and the autofilter only.
+	 * @param writer - writer the calling writer
+	 * @param workbook - the workbook to be finalized
+	 * @param sheet - the sheet to be finalized
+	 * @param sheetIndex - the index of the sheet
+	 * @see XExcelWriter#setStreaming(boolean)
+	 * @since 4.4
+	 */
+	public void finalizeStreamedSheet(ExcelWriter writer, Workbook workbook, SXSSFSheet sheet, int sheetIndex) {
+		ColumnWidthEstimator estimator = writer.getColumnWidthEstimator(sheet);
+		int lastColumn = estimator != null ? estimator.getColumnCount()-1 : -1;
+		for (int column=0; column<=lastColumn; column++) {
+			applyColumnWidth(writer, sheet, column);
+		}
+		if (isAutofilter() && (lastColumn >= 0)) {
+			sheet.setAutoFilter(new CellRangeAddress(0, sheet.getLastRowNum(), 0, lastColumn));
+		}
+	}
+
 	/**
 	 * Sets the autofilter property in this row.
 	 * @param workbook - the workbook to be finalized
@@ -335,7 +508,27 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 	}
 	
 	/**
-	 * Finalized the first row of the given sheet by setting the autosize of the column.
+	 * Sets the width of a column as estimated by the writer while the cells were written.
+	 * Columns without estimate, e.g. in workbooks that were modified directly, will be auto-sized
+	 * unless the sheet is streamed.
+	 * @param writer - writer the calling writer
+	 * @param sheet - the sheet to be finalized
+	 * @param column - the column index
+	 * @see ExcelWriter#getColumnWidthEstimator(Sheet)
+	 * @since 4.4
+	 */
+	public void applyColumnWidth(ExcelWriter writer, Sheet sheet, int column) {
+		ColumnWidthEstimator estimator = writer.getColumnWidthEstimator(sheet);
+		int width = estimator != null ? estimator.getColumnWidth(column, isAutofilter() ? AUTOFILTER_BUTTON_WIDTH : 0) : -1;
+		if (width > 0) {
+			sheet.setColumnWidth(column, width);
+		} else if (!(sheet instanceof SXSSFSheet)) {
+			sheet.autoSizeColumn(column);
+		}
+	}
+	
+	/**
+	 * Finalized the first row of the given sheet by setting the width of the column.
 	 * @param writer - writer the calling writer
 	 * @param workbook - the workbook to be finalized
 	 * @param sheet - the sheet to be finalized
@@ -348,7 +541,7 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 	 * @since 4.1
 	 */
 	public void finalizeFirstRow(ExcelWriter writer, Workbook workbook, Sheet sheet, int sheetIndex, Row row, Cell cell, int cellIndex) {
-		sheet.autoSizeColumn(cellIndex);
+		applyColumnWidth(writer, sheet, cellIndex);
 		if (isAutofilter()) {
 			CellStyle style = workbook.createCellStyle();
 			style.setFont(getDefaultBoldFont(workbook));
@@ -655,6 +848,7 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 	 */
 	public void setEmphasizeFirstRow(boolean emphasizeFirstRow) {
 		this.emphasizeFirstRow = emphasizeFirstRow;
+		resetStylePlan();
 	}
 
 	/**
@@ -793,6 +987,7 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 	 */
 	public void setDefaultBorderColor(Short borderColor) {
 		this.borderColor = borderColor;
+		resetStylePlan();
 	}
 
 	/**
@@ -800,12 +995,36 @@ public class DefaultExcelFormatter implements ExcelFormatter {
 	 */
 	public void setDefaultBorderThickness(BorderStyle borderThickness) {
 		this.borderThickness = borderThickness;
+		resetStylePlan();
 	}
 
 	public boolean isTextWrap(ExcelWriter writer, int row, int column, Object value) {
 		return value instanceof String;
 	}
 
+	/** A planned style for cells of a column, value class and row kind. */
+	protected static class StylePlan {
+
+		/** The style, <code>null</code> if the default style applies */
+		private final CellStyle style;
+
+		/**
+		 * Constructor.
+		 * @param style - the style
+		 */
+		public StylePlan(CellStyle style) {
+			this.style = style;
+		}
+
+		/**
+		 * Returns the style.
+		 * @return the style, <code>null</code> if the default style applies
+		 */
+		public CellStyle getStyle() {
+			return style;
+		}
+	}
+
 	/** Describes a style for a cell. */
 	protected static class StyleDescription {
 
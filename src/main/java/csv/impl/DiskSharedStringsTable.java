@@ -0,0 +1,276 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+
+import csv.CsvException;
+
+/**
+ * Provides the shared strings of an XLSX package with bounded memory.
+ * <p>
+ * The shared strings part is parsed when the first string is requested. The strings
+ * are written into a temporary file and only their positions (8 bytes per string)
+ * are kept in memory. A limited number of recently used strings is cached.
+ * Lookups are thread-safe so that the table can be shared by multiple parsers.
+ * </p>
+ * @author RalphSchuster
+ * @see ExcelReader#setSharedStringsCacheSize(int)
+ * @since 4.4
+ */
+public class DiskSharedStringsTable implements Closeable {
+
+	/** The package containing the shared strings */
+	private OPCPackage pkg;
+	/** Maximum number of strings in the cache */
+	private int cacheSize;
+	/** The recently used strings */
+	private Map<Integer, String> cache;
+	/** The file holding the UTF-8 encoded strings */
+	private File file;
+	/** Channel for reading the file */
+	private FileChannel channel;
+	/** Positions of the strings in the file, plus the end of the last string */
+	private long offsets[];
+	/** Number of strings */
+	private int count = -1;
+
+	/**
+	 * Constructor.
+	 * @param pkg the package containing the shared strings
+	 * @param cacheSize maximum number of strings kept in memory
+	 */
+	public DiskSharedStringsTable(OPCPackage pkg, final int cacheSize) {
+		this.pkg = pkg;
+		this.cacheSize = cacheSize;
+		this.cache = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the maximum number of strings in the cache.
+	 * @return the cache size
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Returns the number of strings.
+	 * @return the number of unique strings in the package
+	 */
+	public synchronized int getCount() {
+		ensureLoaded();
+		return count;
+	}
+
+	/**
+	 * Returns the string at the given index.
+	 * @param index index of string
+	 * @return the string
+	 */
+	public synchronized String getString(int index) {
+		ensureLoaded();
+		if ((index < 0) || (index >= count)) throw new CsvException("Invalid shared string index: "+index);
+		String rc = cache.get(index);
+		if (rc == null) {
+			rc = read(index);
+			cache.put(index, rc);
+		}
+		return rc;
+	}
+
+	/**
+	 * Reads a string from the file.
+	 * @param index index of string
+	 * @return the string
+	 */
+	private String read(int index) {
+		long pos = offsets[index];
+		ByteBuffer buf = ByteBuffer.allocate((int)(offsets[index+1]-pos));
+		try {
+			while (buf.hasRemaining()) {
+				int n = channel.read(buf, pos+buf.position());
+				if (n < 0) throw new CsvException("Unexpected end of shared strings file");
+			}
+		} catch (IOException e) {
+			throw new CsvException("Cannot read shared string "+index, e);
+		}
+		return new String(buf.array(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Parses the shared strings part into the file if not done yet.
+	 */
+	protected void ensureLoaded() {
+		if (count >= 0) return;
+		if (pkg == null) throw new CsvException("Shared strings were closed already");
+		File tmpFile = null;
+		boolean loaded = false;
+		try {
+			tmpFile = File.createTempFile("csv-sst", ".tmp");
+			long tmpOffsets[] = new long[1];
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile))) {
+				List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+				if (!parts.isEmpty()) {
+					try (InputStream in = parts.get(0).getInputStream()) {
+						tmpOffsets = parse(in, out);
+					}
+				}
+			}
+			channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.READ);
+			// Publish the table only when it was read completely
+			file = tmpFile;
+			offsets = tmpOffsets;
+			count = tmpOffsets.length-1;
+			loaded = true;
+		} catch (CsvException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new CsvException("Cannot read shared strings", e);
+		} finally {
+			if (!loaded && (tmpFile != null)) tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Writes the strings of the shared strings part into the file.
+	 * Phonetic runs are ignored.
+	 * @param in the shared strings part
+	 * @param out the file
+	 * @return the positions of the strings in the file, plus the end of the last string
+	 * @throws XMLStreamException when the XML cannot be read
+	 * @throws IOException when the file cannot be written
+	 */
+	private long[] parse(InputStream in, OutputStream out) throws XMLStreamException, IOException {
+		XMLInputFactory factory = XMLHelper.newXMLInputFactory();
+		XMLStreamReader xml = factory.createXMLStreamReader(in);
+		try {
+			long offsets[] = new long[1024];
+			int count = 0;
+			long pos = 0;
+			StringBuilder s = new StringBuilder();
+			int phoneticDepth = 0;
+			while (xml.hasNext()) {
+				int event = xml.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = xml.getLocalName();
+					if ("si".equals(name)) {
+						s.setLength(0);
+					} else if ("rPh".equals(name)) {
+						phoneticDepth++;
+					} else if ("t".equals(name) && (phoneticDepth == 0)) {
+						s.append(xml.getElementText());
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					String name = xml.getLocalName();
+					if ("rPh".equals(name)) {
+						phoneticDepth--;
+					} else if ("si".equals(name)) {
+						byte bytes[] = decode(s).getBytes(StandardCharsets.UTF_8);
+						out.write(bytes);
+						if (count+1 >= offsets.length) offsets = Arrays.copyOf(offsets, offsets.length*2);
+						offsets[count] = pos;
+						pos += bytes.length;
+						count++;
+						offsets[count] = pos;
+					}
+				}
+			}
+			return Arrays.copyOf(offsets, count+1);
+		} finally {
+			xml.close();
+		}
+	}
+
+	/**
+	 * Decodes characters escaped as "_xHHHH_" by Excel.
+	 * @param s the string
+	 * @return the decoded string
+	 */
+	static String decode(CharSequence s) {
+		String value = s.toString();
+		if (value.indexOf("_x") < 0) return value;
+		StringBuilder rc = new StringBuilder(value.length());
+		int i = 0;
+		while (i < value.length()) {
+			if ((i+7 <= value.length()) && value.startsWith("_x", i) && (value.charAt(i+6) == '_')) {
+				try {
+					rc.append((char)Integer.parseInt(value.substring(i+2, i+6), 16));
+					i += 7;
+					continue;
+				} catch (NumberFormatException e) {
+					// not escaped
+				}
+			}
+			rc.append(value.charAt(i));
+			i++;
+		}
+		return rc.toString();
+	}
+
+	/**
+	 * Closes the table and deletes the temporary file.
+	 */
+	@Override
+	public synchronized void close() {
+		try {
+			if (channel != null) channel.close();
+		} catch (IOException e) {
+			throw new CsvException("Cannot close shared strings", e);
+		} finally {
+			channel = null;
+			if (file != null) file.delete();
+			file = null;
+			cache.clear();
+			offsets = null;
+			count = -1;
+			pkg = null;
+		}
+	}
+
+}
@@ -19,11 +19,16 @@ package csv.impl;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.CellValue;
 import org.apache.poi.ss.usermodel.DateUtil;
@@ -55,6 +60,23 @@ while (in.hasNext()) {
     // Do something here
 }
 in.close();
+</pre>
+ * <p>
+ * The reader can also read sheets in streaming mode. The workbook is not loaded
+ * into memory then but the selected sheet is parsed row by row. Memory consumption
+ * stays constant regardless of the number of rows. Random access to rows and cells, the
+ * workbook and the sheet objects are not available in this mode. Formulas are not
+ * evaluated, the cached results from the file are returned instead. Streaming mode
+ * must be enabled before the first row is read.
+ * </p>
+ * <pre>
+ExcelReader in = new ExcelReader(new java.io.File("excel-test.xlsx"));
+in.setStreaming(true);
+while (in.hasNext()) {
+    Object columns[] = in.next();
+    // Do something here
+}
+in.close();
 </pre>
  * @author RalphSchuster
  * @see #selectSheet(int)
@@ -62,12 +84,40 @@ in.close();
  */
 public class ExcelReader extends AbstractStreamTableReader {
 
+	/**
+	 * Strategies for retrieving the values of formula cells.
+	 * @since 4.4
+	 */
+	public static enum FormulaStrategy {
+		/** Formulas are not evaluated, the cached results from the file are returned */
+		CACHED,
+		/** All formulas in the workbook are evaluated once before the first formula value is returned */
+		EVALUATE_ALL,
+		/** Formulas are evaluated when the cell is read, results are remembered per cell */
+		LAZY
+	}
+
+	/** {@link #advanceStreamedRow()}: no more rows */
+	private static final int STREAM_END = 0;
+	/** {@link #advanceStreamedRow()}: a row missing in the file is to be delivered */
+	private static final int STREAM_EMPTY_ROW = 1;
+	/** {@link #advanceStreamedRow()}: the current row of the stream parser is to be delivered */
+	private static final int STREAM_ROW = 2;
+
 	/** The workbook */
 	private Workbook workbook;
 	/** The evaluator for cell formulas */
 	private FormulaEvaluator formulaEvaluator = null;
-	/** Whether formulas shall be evaluated or not (default is <code>true</code> = yes) */
-	private boolean evaluateFormulas = true;
+	/** How formulas shall be evaluated (default is {@link FormulaStrategy#LAZY}) */
+	private FormulaStrategy formulaStrategy = FormulaStrategy.LAZY;
+	/** Whether all formulas were evaluated already */
+	private boolean formulasEvaluated = false;
+	/** Results of lazily evaluated formula cells of the current sheet, cleared on sheet change, reset and close */
+	private Map<Cell, Object> formulaResults = new IdentityHashMap<>();
+	/** Number of formula cells evaluated */
+	private long formulaEvaluationCount = 0;
+	/** Time spent in formula evaluation (nanoseconds) */
+	private long formulaEvaluationTime = 0;
 	/** Whether JavaTime objects shall be returned (default is <code>false</code> = no) */
 	private boolean javaTimeEnabled = false;
 	/** The sheet we are dealing with */
@@ -84,6 +134,30 @@ public class ExcelReader extends AbstractStreamTableReader {
 	private int rowNum;
 	/** Whether to skip blank rows (not deliver them) */
 	private boolean skipBlankRows = true;
+	/** Whether the sheet shall be read in streaming mode (default is <code>false</code>) */
+	private boolean streaming = false;
+	/** The file to read from (if known) */
+	private File file;
+	/** Temporary copy of the input stream for streaming mode */
+	private File tempFile;
+	/** The parser in streaming mode */
+	private AbstractExcelStreamParser streamParser;
+	/** The values of the current row in streaming mode */
+	private Object currentValues[];
+	/** Whether the stream parser holds a row that was not delivered yet */
+	private boolean streamRowPending;
+	/** Number of shared strings kept in memory in streaming mode, 0 = all */
+	private int sharedStringsCacheSize = 0;
+	/** Index of first row to be read */
+	private int regionFirstRow = 0;
+	/** Index of last row to be read, -1 = all rows */
+	private int regionLastRow = -1;
+	/** Columns to be read, <code>null</code> = all columns */
+	private int regionColumns[] = null;
+	/** Date classification of cell styles: 0 = unknown, 1 = date format, 2 = other format */
+	private byte dateStyles[] = new byte[0];
+	/** Format for delivering values as texts in streaming mode, <code>null</code> = Java objects */
+	private ExcelTextFormat textFormat = null;
 
 	/**
 	 * Default constructor.
@@ -98,6 +172,7 @@ public class ExcelReader extends AbstractStreamTableReader {
 	 */
 	public ExcelReader(File file) throws FileNotFoundException {
 		super(file);
+		this.file = file;
 	}
 
 	/**
@@ -123,32 +198,157 @@ public class ExcelReader extends AbstractStreamTableReader {
 	 */
 	public ExcelReader(String file) throws FileNotFoundException {
 		super(file);
+		this.file = new File(file);
 	}
 
 	/**
-	 * Opens the stream by retrieving the workbook and selecting the first sheet.
+	 * Constructor to read in streaming mode from an existing parser.
+	 * The reader starts at the sheet selected in the parser and closes the parser when it is closed.
+	 * @param parser the parser to be used
+	 * @see ExcelWorkbookReader
+	 * @since 4.4
+	 */
+	public ExcelReader(AbstractExcelStreamParser parser) {
+		this.streaming = true;
+		this.streamParser = parser;
+		this.javaTimeEnabled = parser.isJavaTimeEnabled();
+		this.textFormat = parser.getTextFormat();
+		selectSheet(parser.getSheetIndex());
+	}
+
+	/**
+	 * Opens the stream.
+	 * The workbook is retrieved and the first sheet selected when it is accessed first.
 	 * @see csv.impl.AbstractStreamTableReader#open()
+	 * @see #ensureOpen()
 	 */
 	@Override
 	public void open() {
 		super.open();
-		try {
-			workbook = WorkbookFactory.create(getInputStream());
+	}
+
+	/**
+	 * Retrieves the workbook or creates the stream parser and selects the first sheet
+	 * if not done yet.
+	 * @since 4.4
+	 */
+	protected void ensureOpen() {
+		if ((workbook != null) || (streamParser != null)) return;
+		if ((file == null) && (getInputStream() == null)) return;
+		if (isStreaming()) {
+			streamParser = createStreamParser();
 			selectSheet(0);
-		} catch (Exception e) {
-			throw new CsvException("Cannot create Excel workbook", e);
+		} else {
+			try {
+				workbook = WorkbookFactory.create(getInputStream());
+				selectSheet(0);
+			} catch (Exception e) {
+				throw new CsvException("Cannot create Excel workbook", e);
+			}
+		}
+	}
+
+	/**
+	 * Creates the parser for streaming mode.
+	 * @return the parser for the file format
+	 * @since 4.4
+	 */
+	protected AbstractExcelStreamParser createStreamParser() {
+		AbstractExcelStreamParser rc = AbstractExcelStreamParser.newInstance(getStreamFile(), getSharedStringsCacheSize());
+		rc.setRegion(regionFirstRow, regionLastRow, regionColumns);
+		rc.setJavaTimeEnabled(isJavaTimeEnabled());
+		rc.setTextFormat(getTextFormat());
+		return rc;
+	}
+
+	/**
+	 * Returns the file to be parsed in streaming mode.
+	 * The input stream will be copied to a temporary file when the reader was not created from a file.
+	 * @return the file
+	 */
+	private File getStreamFile() {
+		if (file != null) return file;
+		if (tempFile == null) {
+			try {
+				tempFile = File.createTempFile("csv-excel", ".tmp");
+				Files.copy(getInputStream(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				throw new CsvException("Cannot copy input stream", e);
+			}
 		}
+		return tempFile;
 	}
 
 	/**
 	 * Returns the workbook.
 	 * @return workbook
+	 * @throws CsvException when the reader is in streaming mode
 	 */
 	public Workbook getWorkbook() {
-		if (workbook == null) open();
+		if (isStreaming()) throw new CsvException("Workbook is not available in streaming mode");
+		ensureOpen();
 		return workbook;
 	}
 
+	/**
+	 * Returns whether the sheet is read in streaming mode.
+	 * @return <code>true</code> when rows are streamed, <code>false</code> when the workbook is loaded (default)
+	 * @since 4.4
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Sets whether the sheet is read in streaming mode.
+	 * <p>
+	 * The workbook will not be loaded in streaming mode. Only the selected sheet
+	 * is parsed row by row which keeps memory consumption constant. The following restrictions apply:
+	 * </p>
+	 * <ul>
+	 * <li>{@link #getWorkbook()} throws an exception, {@link #getSheet()}, {@link #selectSheet(int)}
+	 * and {@link #getLastExcelRow()} return <code>null</code>,</li>
+	 * <li>rows and cells cannot be accessed randomly,</li>
+	 * <li>formulas are not evaluated but the cached results are returned.</li>
+	 * </ul>
+	 * @param streaming <code>true</code> when rows shall be streamed
+	 * @throws CsvException when reading started already
+	 * @since 4.4
+	 */
+	public void setStreaming(boolean streaming) {
+		if ((workbook != null) || (streamParser != null)) throw new CsvException("Streaming mode must be set before reading");
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Returns the number of shared strings kept in memory in streaming mode.
+	 * @return the number of strings, 0 when all shared strings are loaded into memory
+	 * @since 4.4
+	 */
+	public int getSharedStringsCacheSize() {
+		return sharedStringsCacheSize;
+	}
+
+	/**
+	 * Sets the number of shared strings kept in memory in streaming mode.
+	 * <p>
+	 * Excel 2007+ files store all texts in a shared strings table that is loaded
+	 * into memory by default. When a cache size is set, the table is copied into a
+	 * temporary file instead and only the given number of recently used strings
+	 * is kept in memory (see {@link DiskSharedStringsTable}). This bounds the heap
+	 * required for text-heavy workbooks at the cost of file access for cache misses.
+	 * The setting has no effect on Excel 97-2003 files.
+	 * </p>
+	 * @param sharedStringsCacheSize the number of strings, 0 when all shared strings shall be loaded into memory
+	 * @throws CsvException when reading started already
+	 * @see #setStreaming(boolean)
+	 * @since 4.4
+	 */
+	public void setSharedStringsCacheSize(int sharedStringsCacheSize) {
+		if ((workbook != null) || (streamParser != null)) throw new CsvException("Shared strings cache must be set before reading");
+		this.sharedStringsCacheSize = sharedStringsCacheSize;
+	}
+
 	/**
 	 * Returns whether blank rows will be skipped or not while reading.
 	 * @return <code>true</code> when blank rows are skipped (default), <code>false</code> otherwise
@@ -165,6 +365,66 @@ public class ExcelReader extends AbstractStreamTableReader {
 		this.skipBlankRows = skipBlankRows;
 	}
 
+	/**
+	 * Restricts reading to a region of the sheets.
+	 * <p>
+	 * Only rows from <code>firstRow</code> to <code>lastRow</code> are delivered, the
+	 * header row being the first row of the region. Rows contain the values of the given
+	 * columns only, in the given order. Cells outside the region are never converted or
+	 * evaluated. In streaming mode, rows and cells outside the region are skipped
+	 * without building values and parsing stops after the last row of the region.
+	 * Reading restarts at the beginning of the region in the current sheet.
+	 * </p>
+	 * @param firstRow index of first row to be read
+	 * @param lastRow index of last row to be read, -1 for all rows
+	 * @param columns indexes of columns to be read, none for all columns
+	 * @since 4.4
+	 */
+	public void setRegion(int firstRow, int lastRow, int... columns) {
+		if (firstRow < 0) throw new CsvException("Invalid first row: "+firstRow);
+		if ((lastRow >= 0) && (lastRow < firstRow)) throw new CsvException("Invalid last row: "+lastRow);
+		regionFirstRow = firstRow;
+		regionLastRow = lastRow;
+		regionColumns = (columns != null) && (columns.length > 0) ? columns.clone() : null;
+		if (streamParser != null) {
+			streamParser.setRegion(regionFirstRow, regionLastRow, regionColumns);
+			selectSheet(streamParser.getSheetIndex());
+		} else if (sheet != null) {
+			rowNum = Math.max(this.firstRow, regionFirstRow);
+			currentRow = null;
+		}
+	}
+
+	/**
+	 * Returns the index of the first row to be read.
+	 * @return index of first row
+	 * @see #setRegion(int, int, int...)
+	 * @since 4.4
+	 */
+	public int getRegionFirstRow() {
+		return regionFirstRow;
+	}
+
+	/**
+	 * Returns the index of the last row to be read.
+	 * @return index of last row, -1 for all rows
+	 * @see #setRegion(int, int, int...)
+	 * @since 4.4
+	 */
+	public int getRegionLastRow() {
+		return regionLastRow;
+	}
+
+	/**
+	 * Returns the indexes of the columns to be read.
+	 * @return the column indexes or <code>null</code> for all columns
+	 * @see #setRegion(int, int, int...)
+	 * @since 4.4
+	 */
+	public int[] getRegionColumns() {
+		return regionColumns != null ? regionColumns.clone() : null;
+	}
+
 
 	/**
 	 * Computes the max row length of any rows in this sheet.
@@ -172,7 +432,19 @@ public class ExcelReader extends AbstractStreamTableReader {
 	 */
 	public int computeMaxColumnCount() {
 		int maxColumnCount = 0;
-		for (java.util.Iterator<Row> i = sheet.rowIterator(); i.hasNext();) {
+		if (isStreaming()) {
+			// Requires an additional pass over the sheet
+			ensureOpen();
+			try (AbstractExcelStreamParser parser = streamParser.createSheetParser()) {
+				parser.selectSheet(streamParser.getSheetIndex());
+				while (parser.nextRow()) {
+					int length = parser.getCellCount();
+					if (length > maxColumnCount) maxColumnCount = length;
+				}
+			}
+			return maxColumnCount;
+		}
+		for (java.util.Iterator<Row> i = getSheet().rowIterator(); i.hasNext();) {
 			int length = i.next().getLastCellNum();
 			if (length > maxColumnCount) maxColumnCount = length;
 		}
@@ -182,10 +454,16 @@ public class ExcelReader extends AbstractStreamTableReader {
 	/**
 	 * Select the given sheet to be read from.
 	 * @param name name of sheet
-	 * @return sheet selected
+	 * @return sheet selected, <code>null</code> in streaming mode
 	 */
 	public Sheet selectSheet(String name) {
-		return selectSheet(workbook.getSheet(name));
+		if (isStreaming()) {
+			ensureOpen();
+			int index = streamParser.getSheetIndex(name);
+			if (index < 0) throw new CsvException("No such sheet: "+name);
+			return selectSheet(index);
+		}
+		return selectSheet(getWorkbook().getSheet(name));
 	}
 
 	/**
@@ -197,19 +475,26 @@ public class ExcelReader extends AbstractStreamTableReader {
 		if (this.sheet != sheet) {
 			this.sheet = sheet;
 			firstRow = sheet.getFirstRowNum();
-			rowNum = firstRow;
+			rowNum = Math.max(firstRow, regionFirstRow);
 			lastRow = sheet.getLastRowNum();
 			currentRow = null;
+			formulaResults.clear();
 		}
 		return this.sheet;
 	}
 
 	/**
 	 * Returns the number of rows in the current sheet.
-	 * @return number of rows in sheet or {@code -1} if no sheet is selected
+	 * In streaming mode, the number is taken from the dimension declared in the file.
+	 * @return number of rows in sheet or {@code -1} if no sheet is selected or the number is unknown
 	 * @since 2.9.1
 	 */
 	public int getNumRows() {
+		ensureOpen();
+		if (streamParser != null) {
+			int lastRowNum = streamParser.getLastRowNum();
+			return lastRowNum >= 0 ? lastRowNum+1 : -1;
+		}
 		if (this.sheet != null) {
 			return lastRow+1;
 		}
@@ -219,24 +504,33 @@ public class ExcelReader extends AbstractStreamTableReader {
 	/**
 	 * Select the given sheet to be read from.
 	 * @param index index of sheet
-	 * @return sheet selected
+	 * @return sheet selected, <code>null</code> in streaming mode
 	 */
 	public Sheet selectSheet(int index) {
-		return selectSheet(workbook.getSheetAt(index));
+		if (isStreaming()) {
+			ensureOpen();
+			streamParser.selectSheet(index);
+			rowNum = -1;
+			currentValues = null;
+			streamRowPending = false;
+			return null;
+		}
+		return selectSheet(getWorkbook().getSheetAt(index));
 	}
 
 	/**
 	 * Returns the current sheet.
-	 * @return the current sheet.
+	 * @return the current sheet, <code>null</code> in streaming mode
 	 */
 	public Sheet getSheet() {
+		ensureOpen();
 		return sheet;
 	}
 
 	/**
 	 * Returns the last delivered row.
 	 * This is the row delivered by last call to {@link #next()}.
-	 * @return the last row delivered by {@link #next()}
+	 * @return the last row delivered by {@link #next()}, <code>null</code> in streaming mode
 	 */
 	public Row getLastExcelRow() {
 		return lastDeliveredRow;
@@ -250,8 +544,31 @@ public class ExcelReader extends AbstractStreamTableReader {
 	@Override
 	public void reset() {
 		super.reset();
-		rowNum = firstRow;
-		currentRow = null;
+		if (streamParser != null) {
+			selectSheet(streamParser.getSheetIndex());
+		} else {
+			rowNum = Math.max(firstRow, regionFirstRow);
+			currentRow = null;
+		}
+		formulaResults.clear();
+	}
+
+	/**
+	 * Closes the reader and releases the stream parser.
+	 * @see csv.impl.AbstractStreamTableReader#close()
+	 */
+	@Override
+	public void close() {
+		try {
+			if (streamParser != null) streamParser.close();
+		} finally {
+			streamParser = null;
+			currentValues = null;
+			formulaResults.clear();
+			if (tempFile != null) tempFile.delete();
+			tempFile = null;
+			super.close();
+		}
 	}
 
 	/**
@@ -265,6 +582,11 @@ public class ExcelReader extends AbstractStreamTableReader {
 	 */
 	@Override
 	public boolean hasNext() {
+		ensureOpen();
+		if (streamParser != null) {
+			if (currentValues == null) retrieveNextRow();
+			return currentValues != null;
+		}
 		if (currentRow == null) retrieveNextRow();
 		return currentRow != null;
 	}
@@ -281,9 +603,15 @@ public class ExcelReader extends AbstractStreamTableReader {
 	@Override
 	public Object[] next() {
 		if (hasNext()) {
-			Object row[] = getValues(currentRow);
-			lastDeliveredRow = currentRow;
-			currentRow = null;
+			Object row[];
+			if (streamParser != null) {
+				row = currentValues;
+				currentValues = null;
+			} else {
+				row = getValues(currentRow);
+				lastDeliveredRow = currentRow;
+				currentRow = null;
+			}
 
 			incrementLineCount();
 			incrementRowCount();
@@ -300,6 +628,7 @@ public class ExcelReader extends AbstractStreamTableReader {
 	 * @return values of row
 	 */
 	public Object[] getValues(int rowNum) {
+		if (isStreaming()) throw new CsvException("Random access is not supported in streaming mode");
 		Row row = getSheet().getRow(rowNum);
 		return getValues(row);
 	}
@@ -308,19 +637,27 @@ public class ExcelReader extends AbstractStreamTableReader {
 	 * Returns the row as Java objects.
 	 * Values in the array are Java objects depending on the cell type. If the cell contained
 	 * a formula, the formula is evaluated before returning the row.
+	 * Only the columns of the region are returned when columns were set.
 	 * @return values in row
 	 * @param row row to read
+	 * @see #setRegion(int, int, int...)
 	 */
 	public Object[] getValues(Row row) {
 		if (row == null) return null;
-		List<Object> columns = new ArrayList<Object>();
-		int colCount = row.getLastCellNum();
-		for (int col=0; col<colCount; col++) {
-			Cell cell = row.getCell(col);
-			columns.add(getValue(cell));
+		if (regionColumns != null) {
+			Object rc[] = new Object[Math.max(regionColumns.length, getMinimumColumnCount())];
+			for (int i=0; i<regionColumns.length; i++) {
+				Cell cell = row.getCell(regionColumns[i]);
+				if (cell != null) rc[i] = getValue(cell);
+			}
+			return rc;
 		}
-
-		return CSVUtils.convertList(columns, getMinimumColumnCount());
+		Object rc[] = new Object[Math.max(Math.max(row.getLastCellNum(), 0), getMinimumColumnCount())];
+		for (Cell cell : row) {
+			int col = cell.getColumnIndex();
+			if (col < rc.length) rc[col] = getValue(cell);
+		}
+		return rc;
 	}
 
 	/**
@@ -332,6 +669,7 @@ public class ExcelReader extends AbstractStreamTableReader {
 	 * @return value of cell
 	 */
 	public Object getValue(int rownum, int cellNum) {
+		if (isStreaming()) throw new CsvException("Random access is not supported in streaming mode");
 		Row row = getSheet().getRow(rowNum);
 		return getValue(row, cellNum);
 	}
@@ -353,7 +691,7 @@ public class ExcelReader extends AbstractStreamTableReader {
 	/**
 	 * Returns the value of the specified cell.
 	 * If the cell contained
-	 * a formula, the formula is evaluated before returning the row.
+	 * a formula, the value is retrieved as defined by the {@link #getFormulaStrategy() formula strategy}.
 	 * @param cell cell object
 	 * @return value of cell
 	 */
@@ -362,18 +700,29 @@ public class ExcelReader extends AbstractStreamTableReader {
 		if (cell == null) return null;
 
 		CellType cellType = cell.getCellType();
-		if (cellType == CellType.FORMULA && !isEvaluateFormulas()) {
-			cellType = cell.getCachedFormulaResultType();
+		if (cellType == CellType.FORMULA) {
+			switch (getFormulaStrategy()) {
+			case CACHED:
+				cellType = cell.getCachedFormulaResultType();
+				break;
+			case EVALUATE_ALL:
+				evaluateAllFormulas();
+				cellType = cell.getCachedFormulaResultType();
+				break;
+			case LAZY:
+				return getFormulaResult(cell);
+			}
 		}
 		
 		switch (cellType) {
 		case STRING:
 			return cell.getStringCellValue();
 		case NUMERIC:
-			if(DateUtil.isCellDateFormatted(cell)) {
+			double value = cell.getNumericCellValue();
+			if (isDateFormatted(cell, value)) {
 				return javaTimeEnabled ? cell.getLocalDateTimeCellValue() : cell.getDateCellValue();
 			} else {
-				return cell.getNumericCellValue();
+				return value;
 			}
 		case BLANK:
 			return null;
@@ -401,7 +750,7 @@ public class ExcelReader extends AbstractStreamTableReader {
 		case STRING:
 			return value.getStringValue();
 		case NUMERIC:
-			if (DateUtil.isCellDateFormatted(cell)) {
+			if (isDateFormatted(cell, value.getNumberValue())) {
 				return DateUtil.getJavaDate(value.getNumberValue());
 			} else {
 				return value.getNumberValue();
@@ -418,6 +767,67 @@ public class ExcelReader extends AbstractStreamTableReader {
 		return cell.getCellFormula();
 	}
 
+	/**
+	 * Returns the remembered result of a formula cell or evaluates it.
+	 * @param cell the formula cell
+	 * @return the value of the cell
+	 * @see #evaluateCellValue(Cell)
+	 */
+	private Object getFormulaResult(Cell cell) {
+		if (formulaResults.containsKey(cell)) return formulaResults.get(cell);
+		long start = System.nanoTime();
+		Object rc = evaluateCellValue(cell);
+		formulaEvaluationTime += System.nanoTime() - start;
+		formulaEvaluationCount++;
+		formulaResults.put(cell, rc);
+		return rc;
+	}
+
+	/**
+	 * Evaluates all formulas in the workbook and stores the results in the cells.
+	 * The method evaluates the formulas only once.
+	 * @since 4.4
+	 */
+	public void evaluateAllFormulas() {
+		if (formulasEvaluated) return;
+		long start = System.nanoTime();
+		FormulaEvaluator evaluator = getFormulaEvaluator();
+		for (Sheet s : getWorkbook()) {
+			for (Row r : s) {
+				for (Cell c : r) {
+					if (c.getCellType() == CellType.FORMULA) {
+						evaluator.evaluateFormulaCell(c);
+						formulaEvaluationCount++;
+					}
+				}
+			}
+		}
+		formulaEvaluationTime += System.nanoTime() - start;
+		formulasEvaluated = true;
+	}
+
+	/**
+	 * Returns whether a numeric cell is formatted as a date.
+	 * The classification of the number format is computed once per cell style.
+	 * @param cell the cell
+	 * @param value the numeric value of the cell
+	 * @return <code>true</code> when the value is a valid date and the style has a date format
+	 * @since 4.4
+	 */
+	protected boolean isDateFormatted(Cell cell, double value) {
+		if (!DateUtil.isValidExcelDate(value)) return false;
+		CellStyle style = cell.getCellStyle();
+		if (style == null) return false;
+		int index = style.getIndex() & 0xFFFF;
+		if (index >= dateStyles.length) dateStyles = Arrays.copyOf(dateStyles, Math.max(index+1, dateStyles.length*2));
+		byte rc = dateStyles[index];
+		if (rc == 0) {
+			rc = DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString()) ? (byte)1 : (byte)2;
+			dateStyles[index] = rc;
+		}
+		return rc == 1;
+	}
+
 	/**
 	 * Returns a formula evaluator for the current workbook.
 	 * This is for convinience.
@@ -434,17 +844,64 @@ public class ExcelReader extends AbstractStreamTableReader {
 	/**
 	 * Returns whether formulas shall be evaluated or not (default is <code>true</code>).
 	 * @return <code>true</code> when formulas are evaluated
+	 * @see #getFormulaStrategy()
 	 */
 	public boolean isEvaluateFormulas() {
-		return evaluateFormulas;
+		return formulaStrategy != FormulaStrategy.CACHED;
 	}
 
 	/**
 	 * Sets whether formulas shall be evaluated or not (default is <code>true</code>).
+	 * Enabling evaluation selects the {@link FormulaStrategy#LAZY} strategy unless
+	 * another evaluating strategy was set before. Disabling selects {@link FormulaStrategy#CACHED}.
 	 * @param evaluateFormulas <code>true</code> or <code>false</code>
+	 * @see #setFormulaStrategy(FormulaStrategy)
 	 */
 	public void setEvaluateFormulas(boolean evaluateFormulas) {
-		this.evaluateFormulas = evaluateFormulas;
+		if (!evaluateFormulas) {
+			setFormulaStrategy(FormulaStrategy.CACHED);
+		} else if (!isEvaluateFormulas()) {
+			setFormulaStrategy(FormulaStrategy.LAZY);
+		}
+	}
+
+	/**
+	 * Returns how values of formula cells are retrieved.
+	 * @return the formula strategy (default is {@link FormulaStrategy#LAZY})
+	 * @since 4.4
+	 */
+	public FormulaStrategy getFormulaStrategy() {
+		return formulaStrategy;
+	}
+
+	/**
+	 * Sets how values of formula cells are retrieved.
+	 * The strategy has no effect in streaming mode where cached values are returned always.
+	 * @param formulaStrategy the formula strategy
+	 * @since 4.4
+	 */
+	public void setFormulaStrategy(FormulaStrategy formulaStrategy) {
+		if (formulaStrategy == null) throw new CsvException("Formula strategy must not be null");
+		this.formulaStrategy = formulaStrategy;
+		formulaResults.clear();
+	}
+
+	/**
+	 * Returns the number of formula cells evaluated so far.
+	 * @return number of evaluated formula cells
+	 * @since 4.4
+	 */
+	public long getFormulaEvaluationCount() {
+		return formulaEvaluationCount;
+	}
+
+	/**
+	 * Returns the time spent in formula evaluation so far.
+	 * @return the evaluation time in nanoseconds
+	 * @since 4.4
+	 */
+	public long getFormulaEvaluationTime() {
+		return formulaEvaluationTime;
 	}
 
 	/**
@@ -461,6 +918,110 @@ public class ExcelReader extends AbstractStreamTableReader {
 	 */
 	public void setJavaTimeEnabled(boolean javaTimeEnabled) {
 		this.javaTimeEnabled = javaTimeEnabled;
+		if (streamParser != null) streamParser.setJavaTimeEnabled(javaTimeEnabled);
+	}
+
+	/**
+	 * Returns the format for delivering values as texts in streaming mode.
+	 * @return the format, <code>null</code> when values are delivered as Java objects
+	 * @since 4.4
+	 */
+	public ExcelTextFormat getTextFormat() {
+		return textFormat;
+	}
+
+	/**
+	 * Sets the format for delivering values as texts in streaming mode.
+	 * All rows will then contain strings only, formatted by the given format.
+	 * The format is ignored when the reader is not in streaming mode.
+	 * @param textFormat the format, <code>null</code> to deliver Java objects (default)
+	 * @since 4.4
+	 */
+	public void setTextFormat(ExcelTextFormat textFormat) {
+		this.textFormat = textFormat;
+		if (streamParser != null) streamParser.setTextFormat(textFormat);
+	}
+
+	/**
+	 * Writes all remaining rows of the current sheet into a CSV writer.
+	 * Same as {@link #transcode(CSVWriter, boolean)} without copying the header row.
+	 * @param writer the CSV writer
+	 * @return number of rows written
+	 * @throws IOException when a row cannot be written
+	 * @since 4.4
+	 */
+	public int transcode(CSVWriter writer) throws IOException {
+		return transcode(writer, false);
+	}
+
+	/**
+	 * Writes all remaining rows of the current sheet into a CSV writer.
+	 * <p>
+	 * In streaming mode, the cell values are formatted once by the {@link #getTextFormat() text format}
+	 * (a default {@link ExcelTextFormat} when none was set) and passed to the writer
+	 * by {@link CSVWriter#printTexts(Object[], int)} without creating an array per row.
+	 * The writer's mapper is not applied and the writer is flushed according to its
+	 * {@link CSVWriter#setFlushInterval(int) flush interval}. The text format
+	 * of the reader is restored when transcoding finishes.
+	 * Otherwise the rows are copied by {@link CSVWriter#printRow(Object[])}.
+	 * </p>
+	 * @param writer the CSV writer
+	 * @param copyHeaderRow whether a header row shall be written first
+	 * @return number of rows written, excluding the header row
+	 * @throws IOException when a row cannot be written
+	 * @since 4.4
+	 */
+	public int transcode(CSVWriter writer, boolean copyHeaderRow) throws IOException {
+		int rc = 0;
+		ensureOpen();
+		if (copyHeaderRow && hasHeaderRow()) {
+			writer.printRow(getHeaderRow());
+		}
+		if (streamParser == null) {
+			while (hasNext()) {
+				writer.printRow(next());
+				rc++;
+			}
+			return rc;
+		}
+		ExcelTextFormat previousFormat = getTextFormat();
+		try {
+			if (previousFormat == null) setTextFormat(new ExcelTextFormat());
+			rc = transcodeStream(writer);
+		} finally {
+			setTextFormat(previousFormat);
+		}
+		return rc;
+	}
+
+	/**
+	 * Writes all remaining streamed rows as texts.
+	 * @param writer the CSV writer
+	 * @return number of rows written
+	 * @throws IOException when a row cannot be written
+	 */
+	private int transcodeStream(CSVWriter writer) throws IOException {
+		int rc = 0;
+		// A row retrieved by hasNext() was not formatted yet
+		if (currentValues != null) {
+			writer.printRow(next());
+			rc++;
+		}
+		Object buffer[] = new Object[16];
+		int state;
+		while ((state = advanceStreamedRow()) != STREAM_END) {
+			int length = getMinimumColumnCount();
+			if (state == STREAM_ROW) length = Math.max(streamParser.getValueCount(), length);
+			else if (regionColumns != null) length = Math.max(regionColumns.length, length);
+			if (buffer.length < length) buffer = new Object[Math.max(length, buffer.length*2)];
+			if (state == STREAM_ROW) streamParser.copyValues(buffer, length);
+			else Arrays.fill(buffer, 0, length, null);
+			writer.printTexts(buffer, length);
+			incrementLineCount();
+			incrementRowCount();
+			rc++;
+		}
+		return rc;
 	}
 
 	/**
@@ -481,7 +1042,12 @@ public class ExcelReader extends AbstractStreamTableReader {
 	 * return <code>true</code>.
 	 */
 	protected void retrieveNextRow() {
-		while (rowNum <= lastRow) {
+		if (streamParser != null) {
+			retrieveNextStreamedRow();
+			return;
+		}
+		int last = (regionLastRow >= 0) && (regionLastRow < lastRow) ? regionLastRow : lastRow;
+		while (rowNum <= last) {
 			currentRow = getOrCreateRow(rowNum++);
 			if (currentRow == null) continue;
 			if (isSkipBlankRows() && rowHasOnlyBlankCells(currentRow)) {
@@ -492,6 +1058,46 @@ public class ExcelReader extends AbstractStreamTableReader {
 		}
 	}
 
+	/**
+	 * Retrieves the next row from the stream parser.
+	 * Rows missing in the file are delivered as empty rows when blank rows
+	 * shall not be skipped, starting from the first row in the sheet.
+	 * @since 4.4
+	 */
+	protected void retrieveNextStreamedRow() {
+		switch (advanceStreamedRow()) {
+		case STREAM_EMPTY_ROW:
+			currentValues = new Object[Math.max(regionColumns != null ? regionColumns.length : 0, getMinimumColumnCount())];
+			break;
+		case STREAM_ROW:
+			currentValues = streamParser.getValues(getMinimumColumnCount());
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Advances the stream parser to the next row to be delivered.
+	 * @return {@link #STREAM_END}, {@link #STREAM_EMPTY_ROW} or {@link #STREAM_ROW}
+	 */
+	private int advanceStreamedRow() {
+		while (true) {
+			if (!streamRowPending) {
+				if (!streamParser.nextRow()) return STREAM_END;
+				streamRowPending = true;
+			}
+			int index = streamParser.getRowIndex();
+			if (!isSkipBlankRows() && (rowNum >= 0) && (rowNum < index)) {
+				rowNum++;
+				return STREAM_EMPTY_ROW;
+			}
+			streamRowPending = false;
+			rowNum = index+1;
+			if (!isSkipBlankRows() || !streamParser.isBlankRow()) return STREAM_ROW;
+		}
+	}
+
 	/**
 	 * Checks whether row has only blank cells.
 	 * The method is called from {@link #retrieveNextRow()}.
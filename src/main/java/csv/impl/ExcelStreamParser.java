@@ -0,0 +1,396 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.DimensionsRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FilePassRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactoryInputStream;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import csv.CsvException;
+
+/**
+ * Parses Excel 97-2003 (.xls) sheets row by row.
+ * <p>
+ * The parser pulls the BIFF8 records of the selected sheet from the workbook stream
+ * the same way the HSSF event model does. The workbook globals (shared strings,
+ * number formats and sheet positions) are read once when the parser is created.
+ * The stream is then positioned directly at the selected sheet. Parsers created
+ * by {@link #createSheetParser()} share the globals but open the file again.
+ * </p>
+ * @author RalphSchuster
+ * @since 4.4
+ */
+public class ExcelStreamParser extends AbstractExcelStreamParser {
+
+	/** The Excel file */
+	private File file;
+	/** The file system of the Excel file */
+	private POIFSFileSystem fs;
+	/** Name of the workbook stream in the file system */
+	private String workbookEntry;
+	/** The shared strings */
+	private SSTRecord sst;
+	/** Tracks the number formats of the workbook */
+	private FormatTrackingHSSFListener formats = new FormatTrackingHSSFListener(null);
+	/** Number format indexes of the extended formats (styles) */
+	private List<Integer> styleFormats = new ArrayList<>();
+	/** Stream positions of the sheets */
+	private List<Integer> sheetPositions = new ArrayList<>();
+	/** The input of the opened sheet */
+	private InputStream sheetStream;
+	/** The records of the opened sheet */
+	private RecordFactoryInputStream records;
+	/** Record read ahead that belongs to the next row */
+	private Record pendingRecord;
+	/** Depth of nested BOF records */
+	private int bofDepth;
+	/** Last row index as declared by the dimensions record */
+	private int lastRowNum;
+	/** Column of the formula waiting for its string result */
+	private int formulaColumn;
+
+	/**
+	 * Constructor.
+	 * @param file the Excel file
+	 */
+	public ExcelStreamParser(File file) {
+		this.file = file;
+		try {
+			fs = new POIFSFileSystem(file, true);
+			workbookEntry = HSSFWorkbook.getWorkbookDirEntryName(fs.getRoot());
+			readGlobals();
+		} catch (CsvException e) {
+			close();
+			throw e;
+		} catch (Exception e) {
+			close();
+			throw new CsvException("Cannot open Excel workbook", e);
+		}
+	}
+
+	/**
+	 * Constructor for a parser sharing the workbook globals of another parser.
+	 * The file system is opened again as it cannot be read concurrently.
+	 * @param workbook the parser that read the workbook globals
+	 * @see #createSheetParser()
+	 */
+	protected ExcelStreamParser(ExcelStreamParser workbook) {
+		super(workbook);
+		this.file = workbook.file;
+		this.workbookEntry = workbook.workbookEntry;
+		this.sst = workbook.sst;
+		this.formats = workbook.formats;
+		this.styleFormats = workbook.styleFormats;
+		this.sheetPositions = workbook.sheetPositions;
+		try {
+			fs = new POIFSFileSystem(file, true);
+		} catch (Exception e) {
+			throw new CsvException("Cannot open Excel workbook", e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public AbstractExcelStreamParser createSheetParser() {
+		if (fs == null) throw new CsvException("Parser was closed already");
+		return new ExcelStreamParser(this);
+	}
+
+	/**
+	 * Reads the workbook globals up to the first EOF record.
+	 * @throws Exception when the workbook stream cannot be read
+	 */
+	protected void readGlobals() throws Exception {
+		try (InputStream in = fs.createDocumentInputStream(workbookEntry)) {
+			RecordFactoryInputStream globals = new RecordFactoryInputStream(in, false);
+			Record record;
+			while ((record = globals.nextRecord()) != null) {
+				if (record instanceof EOFRecord) break;
+				if (record instanceof BoundSheetRecord) {
+					BoundSheetRecord bsr = (BoundSheetRecord)record;
+					addSheetName(bsr.getSheetname());
+					sheetPositions.add(bsr.getPositionOfBof());
+				} else if (record instanceof SSTRecord) {
+					sst = (SSTRecord)record;
+				} else if (record instanceof DateWindow1904Record) {
+					setDate1904(((DateWindow1904Record)record).getWindowing() == 1);
+				} else if (record instanceof ExtendedFormatRecord) {
+					styleFormats.add((int)((ExtendedFormatRecord)record).getFormatIndex());
+				} else if (record instanceof FilePassRecord) {
+					throw new CsvException("Encrypted workbooks are not supported in streaming mode");
+				} else {
+					formats.processRecordInternally(record);
+				}
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void openSheet(int index) {
+		closeSheet();
+		lastRowNum = -1;
+		bofDepth = 0;
+		pendingRecord = null;
+		formulaColumn = -1;
+		try {
+			sheetStream = fs.createDocumentInputStream(workbookEntry);
+			long toSkip = sheetPositions.get(index);
+			while (toSkip > 0) {
+				long skipped = sheetStream.skip(toSkip);
+				if (skipped <= 0) throw new CsvException("Invalid position of sheet "+index);
+				toSkip -= skipped;
+			}
+			records = new RecordFactoryInputStream(sheetStream, false);
+			// Advance to the first cell
+			Record record;
+			while ((record = nextRecord()) != null) {
+				if (record instanceof DimensionsRecord) {
+					lastRowNum = ((DimensionsRecord)record).getLastRow()-1;
+				} else if (getRow(record) >= 0) {
+					pendingRecord = record;
+					break;
+				}
+			}
+		} catch (CsvException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new CsvException("Cannot open sheet "+index, e);
+		}
+	}
+
+	/**
+	 * Returns the next record of the opened sheet.
+	 * @return next record or <code>null</code> when the end of sheet was reached
+	 */
+	private Record nextRecord() {
+		if (pendingRecord != null) {
+			Record rc = pendingRecord;
+			pendingRecord = null;
+			return rc;
+		}
+		if (records == null) return null;
+		Record rc = records.nextRecord();
+		if (rc instanceof BOFRecord) {
+			bofDepth++;
+		} else if (rc instanceof EOFRecord) {
+			bofDepth--;
+			if (bofDepth <= 0) rc = null;
+		}
+		if (rc == null) records = null;
+		return rc;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int getDeclaredLastRowNum() {
+		return lastRowNum;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean readRow() {
+		boolean rowStarted = false;
+		Record record;
+		while ((record = nextRecord()) != null) {
+			if (record instanceof StringRecord) {
+				if (rowStarted && (formulaColumn >= 0)) setValue(formulaColumn, ((StringRecord)record).getString());
+				formulaColumn = -1;
+				continue;
+			}
+			int row = getRow(record);
+			if (row < 0) continue;
+			if (isBeforeRegion(row)) {
+				formulaColumn = -1;
+				continue;
+			}
+			if (isAfterRegion(row)) {
+				// Stop parsing the sheet
+				records = null;
+				break;
+			}
+			if (!rowStarted) {
+				startRow(row);
+				rowStarted = true;
+			} else if (row != getRowIndex()) {
+				pendingRecord = record;
+				break;
+			}
+			readCell(record);
+		}
+		return rowStarted;
+	}
+
+	/**
+	 * Returns the row index of a cell record.
+	 * @param record the record
+	 * @return the row index or -1 if the record is not a cell record
+	 */
+	private static int getRow(Record record) {
+		if (record instanceof CellValueRecordInterface) return ((CellValueRecordInterface)record).getRow();
+		if (record instanceof MulBlankRecord) return ((MulBlankRecord)record).getRow();
+		return -1;
+	}
+
+	/**
+	 * Sets the value of a cell record in the current row.
+	 * @param record the cell record
+	 */
+	protected void readCell(Record record) {
+		formulaColumn = -1;
+		if (record instanceof MulBlankRecord) {
+			MulBlankRecord mbr = (MulBlankRecord)record;
+			for (int column=mbr.getFirstColumn(); column<=mbr.getLastColumn(); column++) {
+				setValue(column, null);
+			}
+			return;
+		}
+		CellValueRecordInterface cell = (CellValueRecordInterface)record;
+		int column = cell.getColumn();
+		if (!isColumnSelected(column)) return;
+		if (record instanceof NumberRecord) {
+			setValue(column, getNumericValue(((NumberRecord)record).getValue(), cell));
+		} else if (record instanceof LabelSSTRecord) {
+			setValue(column, sst.getString(((LabelSSTRecord)record).getSSTIndex()).getString());
+		} else if (record instanceof LabelRecord) {
+			setValue(column, ((LabelRecord)record).getValue());
+		} else if (record instanceof BoolErrRecord) {
+			BoolErrRecord ber = (BoolErrRecord)record;
+			setValue(column, ber.isBoolean() ? getBooleanValue(ber.getBooleanValue()) : getErrorValue(ber.getErrorValue()));
+		} else if (record instanceof FormulaRecord) {
+			readFormula((FormulaRecord)record);
+		} else if (record instanceof BlankRecord) {
+			setValue(column, null);
+		}
+	}
+
+	/**
+	 * Sets the cached result of a formula in the current row.
+	 * String results are delivered by a subsequent string record.
+	 * @param record the formula record
+	 */
+	protected void readFormula(FormulaRecord record) {
+		int column = record.getColumn();
+		CellType type = record.getCachedResultTypeEnum();
+		switch (type) {
+		case STRING:
+			setValue(column, null);
+			formulaColumn = column;
+			break;
+		case BOOLEAN:
+			setValue(column, getBooleanValue(record.getCachedBooleanValue()));
+			break;
+		case ERROR:
+			setValue(column, getErrorValue(record.getCachedErrorValue()));
+			break;
+		case NUMERIC:
+			setValue(column, getNumericValue(record.getValue(), record));
+			break;
+		default:
+			setValue(column, null);
+		}
+	}
+
+	/**
+	 * Returns the Java object for a numeric cell.
+	 * @param value numeric value
+	 * @param cell the cell record
+	 * @return the value as {@link Double} or date object
+	 */
+	private Object getNumericValue(double value, CellValueRecordInterface cell) {
+		return getNumericValue(value, cell.getXFIndex());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean isDateFormat(int styleIndex) {
+		if (styleIndex >= styleFormats.size()) return false;
+		int formatIndex = styleFormats.get(styleIndex);
+		return DateUtil.isADateFormat(formatIndex, formats.getFormatString(formatIndex));
+	}
+
+	/**
+	 * Closes the opened sheet.
+	 */
+	protected void closeSheet() {
+		try {
+			if (sheetStream != null) sheetStream.close();
+		} catch (Exception e) {
+			throw new CsvException("Cannot close sheet", e);
+		} finally {
+			sheetStream = null;
+			records = null;
+			pendingRecord = null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		try {
+			closeSheet();
+		} finally {
+			try {
+				if (fs != null) fs.close();
+			} catch (Exception e) {
+				throw new CsvException("Cannot close Excel workbook", e);
+			} finally {
+				fs = null;
+			}
+		}
+	}
+
+}
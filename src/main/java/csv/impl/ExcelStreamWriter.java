@@ -0,0 +1,786 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import csv.CsvException;
+import rs.baselib.type.MonetaryValue;
+
+/**
+ * Writes classic Excel (.xls, BIFF8) files without building a workbook in memory.
+ * <p>
+ * Cell records and strings are written into temporary files when a row is printed.
+ * On {@link #close()} the workbook globals are created and the temporary files are copied
+ * into an OLE2 container. Memory usage does not depend on the number of rows.
+ * Every text is added to the shared strings table, texts are not deduplicated.
+ * A small set of styles is provided for dates, date/times, integers and decimal numbers.
+ * The writer is limited to one sheet with 65,536 rows and 256 columns.
+ * Use {@link ExcelWriter} when cells shall be formatted or modified after they were written.
+ * The file can only be read after {@link #close()}, so the writer ignores the
+ * {@link #setFlushInterval(int) flush interval}.
+ * </p>
+ * <pre>
+java.io.File f = new java.io.File("excel-test.xls");
+ExcelStreamWriter out = new ExcelStreamWriter(f);
+out.printRow(new Object[] { "0:0", 3, new Date() });
+out.printRow(new Object[] { "1:0", 1.5d, "another String value" });
+out.close();
+</pre>
+ * <p>
+ * The writer can replace the default writer for .xls files in the {@link csv.CSVFactory}
+ * by registering {@link csv.MimeTypeInfo#EXCEL_STREAM_INFO}.
+ * </p>
+ * @author RalphSchuster
+ * @since 4.4
+ */
+public class ExcelStreamWriter extends AbstractStreamTableWriter {
+
+	/** Style index for texts and booleans */
+	protected static final int STYLE_GENERAL  = 15;
+	/** Style index for dates */
+	protected static final int STYLE_DATE     = 16;
+	/** Style index for date/times */
+	protected static final int STYLE_DATETIME = 17;
+	/** Style index for integers */
+	protected static final int STYLE_INTEGER  = 18;
+	/** Style index for decimal numbers */
+	protected static final int STYLE_REAL     = 19;
+
+	/** Maximum length of record data */
+	private static final int MAX_RECORD_SIZE  = 8224;
+	/** Maximum number of characters in a cell */
+	private static final int MAX_TEXT_LENGTH  = SpreadsheetVersion.EXCEL97.getMaxTextLength();
+	/** Maximum number of buckets in the EXTSST record */
+	private static final int MAX_SST_BUCKETS  = 128;
+	/** Minimum size of a stream that is not stored in the mini stream of the OLE2 container */
+	private static final int MIN_STREAM_SIZE  = 4096;
+	/** Sector size of the OLE2 container */
+	private static final int SECTOR_SIZE      = 512;
+
+	/** BIFF record identifiers */
+	private static final int BOF = 0x0809, EOF = 0x000A, CODEPAGE = 0x0042, WINDOW1 = 0x003D, DATE1904 = 0x0022,
+			FONT = 0x0031, FORMAT = 0x041E, XF = 0x00E0, STYLE = 0x0293, BOUNDSHEET = 0x0085, SST = 0x00FC,
+			CONTINUE = 0x003C, EXTSST = 0x00FF, DIMENSIONS = 0x0200, WINDOW2 = 0x023E, ROW = 0x0208,
+			NUMBER = 0x0203, RK = 0x027E, LABELSST = 0x00FD, BOOLERR = 0x0205;
+
+	/** Name of the sheet */
+	private String sheetName = "Sheet1";
+	/** Date format of date cells */
+	private String dateFormat = DefaultExcelFormatter.DEFAULT_DATE_FORMAT;
+	/** Date format of date/time cells */
+	private String dateTimeFormat = DefaultExcelFormatter.DEFAULT_DATETIME_FORMAT;
+	/** Temporary file for cell records */
+	private File cellsFile;
+	/** Stream for cell records */
+	private OutputStream cellsOut;
+	/** Buffer for the current cell record */
+	private ByteBuffer cell = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+	/** Temporary file for the shared strings records */
+	private File sstFile;
+	/** Stream for shared strings records */
+	private OutputStream sstOut;
+	/** Data of the current shared strings record */
+	private ByteBuffer sstRecord = ByteBuffer.allocate(MAX_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	/** Number of bytes written into the shared strings file */
+	private long sstFileSize;
+	/** Number of shared strings */
+	private int sstCount;
+	/** Number of strings per EXTSST bucket */
+	private int sstBucketSize = 8;
+	/** Number of EXTSST buckets */
+	private int sstBuckets;
+	/** Positions of the first string of each EXTSST bucket in the shared strings file */
+	private long sstBucketPositions[] = new long[MAX_SST_BUCKETS];
+	/** Offsets of the first string of each EXTSST bucket within its record */
+	private int sstBucketOffsets[] = new int[MAX_SST_BUCKETS];
+	/** Index of next row */
+	private int rowNum = 0;
+	/** Number of columns */
+	private int maxColumns = 0;
+
+	/**
+	 * Default constructor.
+	 * Please, notice that you are required to set the output stream
+	 * before writing.
+	 * @see #setOutputStream(OutputStream)
+	 */
+	public ExcelStreamWriter() {
+	}
+
+	/**
+	 * Constructor for writing into a stream.
+	 * @param out output stream to be used
+	 */
+	public ExcelStreamWriter(OutputStream out) {
+		super(out);
+	}
+
+	/**
+	 * Constructor for writing into a file.
+	 * @param file output file to be used
+	 * @throws IOException when the file cannot be written to
+	 */
+	public ExcelStreamWriter(File file) throws IOException {
+		super(file);
+	}
+
+	/**
+	 * Constructor for writing into a file.
+	 * @param file output file to be used
+	 * @throws IOException when the file cannot be written to
+	 */
+	public ExcelStreamWriter(String file) throws IOException {
+		super(file);
+	}
+
+	/**
+	 * Prints the values into the next row of the sheet.
+	 * @param columns values to be written
+	 * @throws IOException when the values cannot be written
+	 * @see csv.TableWriter#printRow(java.lang.Object[])
+	 */
+	@Override
+	public void printRow(Object[] columns) throws IOException {
+		ensureStarted();
+		if (rowNum >= SpreadsheetVersion.EXCEL97.getMaxRows()) throw new CsvException("Maximum number of rows exceeded: "+rowNum);
+		if (columns.length > SpreadsheetVersion.EXCEL97.getMaxColumns()) throw new CsvException("Maximum number of columns exceeded: "+columns.length);
+		Object values[] = new Object[columns.length];
+		int first = -1, last = -1;
+		for (int i=0; i<columns.length; i++) {
+			values[i] = convert(columns[i]);
+			if (values[i] != null) {
+				if (first < 0) first = i;
+				last = i;
+			}
+		}
+		if (first >= 0) {
+			startCell(ROW, 16);
+			cell.putShort((short)rowNum).putShort((short)first).putShort((short)(last+1));
+			cell.putShort((short)0x00FF).putInt(0).putShort((short)0x0100).putShort((short)STYLE_GENERAL);
+			writeCell();
+			for (int i=first; i<=last; i++) {
+				if (values[i] != null) writeCell(i, values[i]);
+			}
+			if (last >= maxColumns) maxColumns = last+1;
+		}
+		rowNum++;
+		incrementRowCount();
+	}
+
+	/**
+	 * Writes a cell record.
+	 * @param column column index
+	 * @param value the value of the cell
+	 * @throws IOException when the cell cannot be written
+	 */
+	protected void writeCell(int column, Object value) throws IOException {
+		if (value instanceof Date) {
+			writeNumber(column, DateUtil.getExcelDate(LocalDateTime.ofInstant(((Date)value).toInstant(), ZoneId.systemDefault())), STYLE_DATETIME);
+		} else if (value instanceof LocalDate) {
+			writeNumber(column, DateUtil.getExcelDate((LocalDate)value), STYLE_DATE);
+		} else if (value instanceof LocalDateTime) {
+			writeNumber(column, DateUtil.getExcelDate((LocalDateTime)value), STYLE_DATETIME);
+		} else if (value instanceof ZonedDateTime) {
+			writeNumber(column, DateUtil.getExcelDate(((ZonedDateTime)value).toLocalDateTime()), STYLE_DATETIME);
+		} else if (value instanceof MonetaryValue) {
+			writeNumber(column, ((MonetaryValue)value).getDouble(), STYLE_REAL);
+		} else if ((value instanceof Integer) || (value instanceof Long) || (value instanceof Short) || (value instanceof Byte) || (value instanceof BigInteger)) {
+			writeNumber(column, ((Number)value).doubleValue(), STYLE_INTEGER);
+		} else if (value instanceof Number) {
+			double d = ((Number)value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				writeString(column, value.toString());
+			} else {
+				writeNumber(column, d, STYLE_REAL);
+			}
+		} else if (value instanceof Boolean) {
+			startCell(BOOLERR, 8);
+			cell.putShort((short)rowNum).putShort((short)column).putShort((short)STYLE_GENERAL);
+			cell.put((byte)(((Boolean)value).booleanValue() ? 1 : 0)).put((byte)0);
+			writeCell();
+		} else {
+			writeString(column, value.toString());
+		}
+	}
+
+	/**
+	 * Writes a numeric cell record.
+	 * Integral values that fit into 30 bits are written as compact RK records.
+	 * @param column column index
+	 * @param value the number
+	 * @param style the style index
+	 * @throws IOException when the cell cannot be written
+	 */
+	protected void writeNumber(int column, double value, int style) throws IOException {
+		if ((value == Math.rint(value)) && (value >= -0x20000000) && (value < 0x20000000) && !((value == 0) && (1/value < 0))) {
+			startCell(RK, 10);
+			cell.putShort((short)rowNum).putShort((short)column).putShort((short)style);
+			cell.putInt(((int)value << 2) | 0x02);
+		} else {
+			startCell(NUMBER, 14);
+			cell.putShort((short)rowNum).putShort((short)column).putShort((short)style);
+			cell.putDouble(value);
+		}
+		writeCell();
+	}
+
+	/**
+	 * Writes a text cell record and adds the text to the shared strings.
+	 * @param column column index
+	 * @param value the text
+	 * @throws IOException when the cell cannot be written
+	 */
+	protected void writeString(int column, String value) throws IOException {
+		if (value.length() > MAX_TEXT_LENGTH) throw new CsvException("Maximum text length exceeded in row "+rowNum+", column "+column);
+		startCell(LABELSST, 10);
+		cell.putShort((short)rowNum).putShort((short)column).putShort((short)STYLE_GENERAL);
+		cell.putInt(addSharedString(value));
+		writeCell();
+	}
+
+	/**
+	 * Starts a new cell record.
+	 * @param sid record identifier
+	 * @param length length of record data
+	 */
+	private void startCell(int sid, int length) {
+		cell.clear();
+		cell.putShort((short)sid).putShort((short)length);
+	}
+
+	/**
+	 * Writes the current cell record.
+	 * @throws IOException when the record cannot be written
+	 */
+	private void writeCell() throws IOException {
+		cellsOut.write(cell.array(), 0, cell.position());
+	}
+
+	/**
+	 * Adds a string to the shared strings records.
+	 * Strings are split into CONTINUE records when the current record is full.
+	 * @param s the string
+	 * @return index of string
+	 * @throws IOException when the records cannot be written
+	 */
+	private int addSharedString(String s) throws IOException {
+		boolean highByte = isHighByte(s);
+		int charSize = highByte ? 2 : 1;
+		// The string header must not be split from the first character
+		if (sstRecord.remaining() < 3+charSize) flushSharedStrings();
+		if (sstCount % sstBucketSize == 0) addSharedStringBucket();
+		sstRecord.putShort((short)s.length()).put((byte)(highByte ? 1 : 0));
+		int pos = 0;
+		while (true) {
+			int n = Math.min(s.length()-pos, sstRecord.remaining()/charSize);
+			putChars(sstRecord, s, pos, n, highByte);
+			pos += n;
+			if (pos >= s.length()) break;
+			flushSharedStrings();
+			sstRecord.put((byte)(highByte ? 1 : 0));
+		}
+		return sstCount++;
+	}
+
+	/**
+	 * Remembers the position of the next string for the EXTSST record.
+	 * The bucket size is doubled when the maximum number of buckets is reached.
+	 */
+	private void addSharedStringBucket() {
+		if (sstBuckets == MAX_SST_BUCKETS) {
+			for (int i=0; i<MAX_SST_BUCKETS/2; i++) {
+				sstBucketPositions[i] = sstBucketPositions[2*i];
+				sstBucketOffsets[i]   = sstBucketOffsets[2*i];
+			}
+			sstBuckets = MAX_SST_BUCKETS/2;
+			sstBucketSize *= 2;
+			if (sstCount % sstBucketSize != 0) return;
+		}
+		sstBucketPositions[sstBuckets] = sstFileSize + 4 + sstRecord.position();
+		sstBucketOffsets[sstBuckets]   = 4 + sstRecord.position();
+		sstBuckets++;
+	}
+
+	/**
+	 * Writes the current shared strings record.
+	 * The first record is a SST record, all others are CONTINUE records.
+	 * @throws IOException when the record cannot be written
+	 */
+	private void flushSharedStrings() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		header.putShort((short)(sstFileSize == 0 ? SST : CONTINUE)).putShort((short)sstRecord.position());
+		sstOut.write(header.array());
+		sstOut.write(sstRecord.array(), 0, sstRecord.position());
+		sstFileSize += 4 + sstRecord.position();
+		sstRecord.clear();
+	}
+
+	/**
+	 * Creates the temporary files if not done yet.
+	 * @throws IOException when the files cannot be created
+	 */
+	protected void ensureStarted() throws IOException {
+		if (cellsOut != null) return;
+		if (getOutputStream() == null) throw new CsvException("No output stream set");
+		cellsFile = File.createTempFile("csv-xls", ".tmp");
+		cellsOut  = new BufferedOutputStream(new FileOutputStream(cellsFile), 65536);
+		sstFile   = File.createTempFile("csv-sst", ".tmp");
+		sstOut    = new BufferedOutputStream(new FileOutputStream(sstFile), 65536);
+		// Placeholder for the string counts
+		sstRecord.putInt(0).putInt(0);
+	}
+
+	/**
+	 * Writes the OLE2 container with the workbook stream.
+	 * @throws IOException when the container cannot be written
+	 */
+	protected void writeWorkbook() throws IOException {
+		if (sstRecord.position() > 0) flushSharedStrings();
+		sstOut.close();
+		cellsOut.close();
+
+		byte extSst[]     = createExtSst();
+		byte sheetStart[] = createSheetStart();
+		byte sheetEnd[]   = createSheetEnd();
+		long globalsSize  = getGlobalsSize() + sstFileSize + extSst.length + 4;
+		byte globals[]    = createGlobals(globalsSize);
+		long streamSize   = globalsSize + sheetStart.length + cellsFile.length() + sheetEnd.length;
+		if (streamSize > Integer.MAX_VALUE) throw new CsvException("Excel file too large");
+		int size = (int)Math.max(streamSize, MIN_STREAM_SIZE);
+
+		OutputStream out = getOutputStream();
+		writeContainerHeader(out, size);
+		out.write(globals);
+		copySharedStrings(out);
+		out.write(extSst);
+		out.write(createRecord(EOF, 0).array());
+		out.write(sheetStart);
+		copy(cellsFile, out);
+		out.write(sheetEnd);
+		writeContainerTail(out, size, streamSize);
+	}
+
+	/**
+	 * Returns the size of the globals records up to the SST record.
+	 * @return the size in bytes
+	 */
+	private int getGlobalsSize() {
+		return createGlobals(0).length;
+	}
+
+	/**
+	 * Creates the globals records up to the SST record.
+	 * @param sheetPosition position of the sheet within the workbook stream
+	 * @return the records
+	 */
+	private byte[] createGlobals(long sheetPosition) {
+		ByteBuffer b = ByteBuffer.allocate(4096 + 2*(sheetName.length()+dateFormat.length()+dateTimeFormat.length())).order(ByteOrder.LITTLE_ENDIAN);
+		putBof(b, 0x0005);
+		putHeader(b, CODEPAGE, 2).putShort((short)1200);
+		putHeader(b, WINDOW1, 18).putShort((short)0x0168).putShort((short)0x010E).putShort((short)0x3A5C).putShort((short)0x23BE)
+			.putShort((short)0x0038).putShort((short)0).putShort((short)0).putShort((short)1).putShort((short)0x0258);
+		putHeader(b, DATE1904, 2).putShort((short)0);
+		for (int i=0; i<4; i++) {
+			putHeader(b, FONT, 16+5).putShort((short)200).putShort((short)0).putShort((short)0x7FFF).putShort((short)400)
+				.putShort((short)0).put((byte)0).put((byte)0).put((byte)0).put((byte)0);
+			b.put((byte)5).put((byte)0);
+			putChars(b, "Arial", 0, 5, false);
+		}
+		putFormat(b, 164, dateFormat);
+		putFormat(b, 165, dateTimeFormat);
+		for (int i=0; i<15; i++) {
+			putXf(b, (i == 1) || (i == 2) ? i : 0, 0, 0xFFF5, i == 0 ? 0 : 0xF400);
+		}
+		putXf(b, 0, 0,   0x0001, 0);
+		putXf(b, 0, 164, 0x0001, 0);
+		putXf(b, 0, 165, 0x0001, 0);
+		putXf(b, 0, 1,   0x0001, 0);
+		putXf(b, 0, 2,   0x0001, 0);
+		putHeader(b, STYLE, 4).putShort((short)0x8000).put((byte)0).put((byte)0xFF);
+		boolean highByte = isHighByte(sheetName);
+		putHeader(b, BOUNDSHEET, 8+sheetName.length()*(highByte ? 2 : 1)).putInt((int)sheetPosition).put((byte)0).put((byte)0);
+		b.put((byte)sheetName.length()).put((byte)(highByte ? 1 : 0));
+		putChars(b, sheetName, 0, sheetName.length(), highByte);
+		byte rc[] = new byte[b.position()];
+		System.arraycopy(b.array(), 0, rc, 0, rc.length);
+		return rc;
+	}
+
+	/**
+	 * Creates the EXTSST record that indexes the shared strings.
+	 * @return the record
+	 */
+	private byte[] createExtSst() {
+		long sstPosition = getGlobalsSize();
+		ByteBuffer b = createRecord(EXTSST, 2+8*sstBuckets);
+		b.putShort((short)sstBucketSize);
+		for (int i=0; i<sstBuckets; i++) {
+			b.putInt((int)(sstPosition+sstBucketPositions[i])).putShort((short)sstBucketOffsets[i]).putShort((short)0);
+		}
+		return b.array();
+	}
+
+	/**
+	 * Creates the records preceding the cell records of the sheet.
+	 * @return the records
+	 */
+	private byte[] createSheetStart() {
+		ByteBuffer b = ByteBuffer.allocate(20+18).order(ByteOrder.LITTLE_ENDIAN);
+		putBof(b, 0x0010);
+		putHeader(b, DIMENSIONS, 14).putInt(0).putInt(rowNum).putShort((short)0).putShort((short)maxColumns).putShort((short)0);
+		return b.array();
+	}
+
+	/**
+	 * Creates the records following the cell records of the sheet.
+	 * @return the records
+	 */
+	private byte[] createSheetEnd() {
+		ByteBuffer b = ByteBuffer.allocate(22+4).order(ByteOrder.LITTLE_ENDIAN);
+		putHeader(b, WINDOW2, 18).putShort((short)0x06B6).putShort((short)0).putShort((short)0).putInt(0x40)
+			.putShort((short)0).putShort((short)0).putInt(0);
+		putHeader(b, EOF, 0);
+		return b.array();
+	}
+
+	/**
+	 * Copies the shared strings records and sets the string counts in the SST record.
+	 * @param out the stream to write to
+	 * @throws IOException when the records cannot be copied
+	 */
+	private void copySharedStrings(OutputStream out) throws IOException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(sstFile), 65536)) {
+			byte header[] = new byte[4];
+			if (in.read(header) != 4) throw new CsvException("Cannot read shared strings");
+			out.write(header);
+			if (in.readNBytes(8).length != 8) throw new CsvException("Cannot read shared strings");
+			out.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(sstCount).putInt(sstCount).array());
+			in.transferTo(out);
+		}
+	}
+
+	/**
+	 * Writes the header of the OLE2 container.
+	 * @param out the stream to write to
+	 * @param size size of the workbook stream
+	 * @throws IOException when the header cannot be written
+	 */
+	private void writeContainerHeader(OutputStream out, int size) throws IOException {
+		int layout[] = getContainerLayout(size);
+		int dataSectors = layout[0], fatSectors = layout[1], difatSectors = layout[2];
+		ByteBuffer b = ByteBuffer.allocate(SECTOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		b.putLong(0xE11AB1A1E011CFD0L).put(new byte[16]);
+		b.putShort((short)0x003E).putShort((short)0x0003).putShort((short)0xFFFE).putShort((short)9).putShort((short)6);
+		b.put(new byte[6]).putInt(0).putInt(fatSectors).putInt(dataSectors).putInt(0).putInt(MIN_STREAM_SIZE);
+		b.putInt(-2).putInt(0).putInt(difatSectors > 0 ? dataSectors+1+fatSectors : -2).putInt(difatSectors);
+		for (int i=0; i<109; i++) b.putInt(i < fatSectors ? dataSectors+1+i : -1);
+		out.write(b.array());
+	}
+
+	/**
+	 * Writes the directory, the FAT and the DIFAT sectors of the OLE2 container
+	 * after the workbook stream was written.
+	 * @param out the stream to write to
+	 * @param size size of the workbook stream
+	 * @param written number of bytes written
+	 * @throws IOException when the sectors cannot be written
+	 */
+	private void writeContainerTail(OutputStream out, int size, long written) throws IOException {
+		int layout[] = getContainerLayout(size);
+		int dataSectors = layout[0], fatSectors = layout[1], difatSectors = layout[2];
+		out.write(new byte[(int)((long)dataSectors*SECTOR_SIZE - written)]);
+
+		// Directory
+		ByteBuffer b = ByteBuffer.allocate(SECTOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		putDirectoryEntry(b, "Root Entry", 5, 1, -2, 0);
+		putDirectoryEntry(b, "Workbook", 2, -1, 0, size);
+		putDirectoryEntry(b, null, 0, -1, 0, 0);
+		putDirectoryEntry(b, null, 0, -1, 0, 0);
+		out.write(b.array());
+
+		// FAT
+		int directorySector = dataSectors;
+		int firstFatSector  = dataSectors+1;
+		int firstDifatSector = firstFatSector+fatSectors;
+		for (int i=0; i<fatSectors*SECTOR_SIZE/4; i++) {
+			int next;
+			if (i < dataSectors-1) next = i+1;
+			else if (i == dataSectors-1) next = -2;
+			else if (i == directorySector) next = -2;
+			else if (i < firstDifatSector) next = -3;
+			else if (i < firstDifatSector+difatSectors) next = -4;
+			else next = -1;
+			b.clear();
+			b.putInt(next);
+			out.write(b.array(), 0, 4);
+		}
+
+		// DIFAT
+		for (int i=0; i<difatSectors; i++) {
+			b.clear();
+			for (int j=0; j<127; j++) {
+				int fatSector = 109 + i*127 + j;
+				b.putInt(fatSector < fatSectors ? firstFatSector+fatSector : -1);
+			}
+			b.putInt(i < difatSectors-1 ? firstDifatSector+i+1 : -2);
+			out.write(b.array());
+		}
+	}
+
+	/**
+	 * Computes the number of sectors of the OLE2 container.
+	 * The sectors are layed out in the order: workbook stream, directory, FAT, DIFAT.
+	 * @param size size of the workbook stream
+	 * @return number of data sectors, FAT sectors and DIFAT sectors
+	 */
+	private static int[] getContainerLayout(int size) {
+		int dataSectors = (size + SECTOR_SIZE - 1) / SECTOR_SIZE;
+		int fatSectors = 1, difatSectors = 0;
+		while (true) {
+			int sectors = dataSectors + 1 + fatSectors + difatSectors;
+			int f = (sectors + 127) / 128;
+			int d = f > 109 ? (f - 109 + 126) / 127 : 0;
+			if ((f == fatSectors) && (d == difatSectors)) break;
+			fatSectors = f;
+			difatSectors = d;
+		}
+		return new int[] { dataSectors, fatSectors, difatSectors };
+	}
+
+	/**
+	 * Adds a directory entry of the OLE2 container.
+	 * @param b the buffer
+	 * @param name name of entry, null for an unused entry
+	 * @param type type of entry
+	 * @param child index of child entry
+	 * @param start first sector
+	 * @param size size of stream
+	 */
+	private static void putDirectoryEntry(ByteBuffer b, String name, int type, int child, int start, int size) {
+		int pos = b.position();
+		if (name != null) {
+			b.put(name.getBytes(StandardCharsets.UTF_16LE));
+			b.position(pos+64);
+			b.putShort((short)(2*name.length()+2)).put((byte)type).put((byte)1);
+		} else {
+			b.position(pos+68);
+		}
+		b.putInt(-1).putInt(-1).putInt(child);
+		b.position(pos+116);
+		b.putInt(start).putInt(size).putInt(0);
+	}
+
+	/**
+	 * Copies a file into a stream.
+	 * @param file the file
+	 * @param out the stream
+	 * @throws IOException when the file cannot be copied
+	 */
+	private static void copy(File file, OutputStream out) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			in.transferTo(out);
+		}
+	}
+
+	/**
+	 * Creates a record buffer with its header set.
+	 * @param sid record identifier
+	 * @param length length of record data
+	 * @return the buffer
+	 */
+	private static ByteBuffer createRecord(int sid, int length) {
+		ByteBuffer rc = ByteBuffer.allocate(4+length).order(ByteOrder.LITTLE_ENDIAN);
+		putHeader(rc, sid, length);
+		return rc;
+	}
+
+	/**
+	 * Adds a record header.
+	 * @param b the buffer
+	 * @param sid record identifier
+	 * @param length length of record data
+	 * @return the buffer
+	 */
+	private static ByteBuffer putHeader(ByteBuffer b, int sid, int length) {
+		return b.putShort((short)sid).putShort((short)length);
+	}
+
+	/**
+	 * Adds a BOF record.
+	 * @param b the buffer
+	 * @param type type of substream
+	 */
+	private static void putBof(ByteBuffer b, int type) {
+		putHeader(b, BOF, 16).putShort((short)0x0600).putShort((short)type).putShort((short)0x10D3).putShort((short)0x07CC)
+			.putInt(0x41).putInt(0x06);
+	}
+
+	/**
+	 * Adds a FORMAT record.
+	 * @param b the buffer
+	 * @param index format index
+	 * @param format the format
+	 */
+	private static void putFormat(ByteBuffer b, int index, String format) {
+		boolean highByte = isHighByte(format);
+		putHeader(b, FORMAT, 5+format.length()*(highByte ? 2 : 1)).putShort((short)index);
+		b.putShort((short)format.length()).put((byte)(highByte ? 1 : 0));
+		putChars(b, format, 0, format.length(), highByte);
+	}
+
+	/**
+	 * Adds a XF record.
+	 * @param b the buffer
+	 * @param font font index
+	 * @param format format index
+	 * @param options cell options (style flag and parent)
+	 * @param indention indention options
+	 */
+	private static void putXf(ByteBuffer b, int font, int format, int options, int indention) {
+		putHeader(b, XF, 20).putShort((short)font).putShort((short)format).putShort((short)options).putShort((short)0x0020)
+			.putShort((short)indention).putShort((short)0).putShort((short)0).putInt(0).putShort((short)0x20C0);
+	}
+
+	/**
+	 * Adds characters of a string, either compressed (1 byte) or as UTF-16LE.
+	 * @param b the buffer
+	 * @param s the string
+	 * @param start index of first character
+	 * @param length number of characters
+	 * @param highByte whether characters are written as UTF-16LE
+	 */
+	private static void putChars(ByteBuffer b, String s, int start, int length, boolean highByte) {
+		for (int i=start; i<start+length; i++) {
+			char c = s.charAt(i);
+			if (highByte) b.putChar(c);
+			else b.put((byte)c);
+		}
+	}
+
+	/**
+	 * Returns whether a string requires UTF-16 characters.
+	 * @param s the string
+	 * @return true when any character is not in ISO-8859-1
+	 */
+	private static boolean isHighByte(String s) {
+		for (int i=0; i<s.length(); i++) {
+			if (s.charAt(i) > 0xFF) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the name of the sheet.
+	 * @return the name of the sheet
+	 */
+	public String getSheetName() {
+		return sheetName;
+	}
+
+	/**
+	 * Sets the name of the sheet.
+	 * @param sheetName the name of the sheet (default is "Sheet1", 31 characters at most)
+	 */
+	public void setSheetName(String sheetName) {
+		if ((sheetName == null) || sheetName.isEmpty() || (sheetName.length() > 31)) throw new CsvException("Invalid sheet name: "+sheetName);
+		this.sheetName = sheetName;
+	}
+
+	/**
+	 * Returns the format of date cells.
+	 * @return the format
+	 */
+	public String getDateFormat() {
+		return dateFormat;
+	}
+
+	/**
+	 * Sets the format of date cells ({@link LocalDate}).
+	 * @param dateFormat the Excel format (default is {@link DefaultExcelFormatter#DEFAULT_DATE_FORMAT})
+	 */
+	public void setDateFormat(String dateFormat) {
+		this.dateFormat = dateFormat;
+	}
+
+	/**
+	 * Returns the format of date/time cells.
+	 * @return the format
+	 */
+	public String getDateTimeFormat() {
+		return dateTimeFormat;
+	}
+
+	/**
+	 * Sets the format of date/time cells ({@link Date}, {@link LocalDateTime} and {@link ZonedDateTime}).
+	 * @param dateTimeFormat the Excel format (default is {@link DefaultExcelFormatter#DEFAULT_DATETIME_FORMAT})
+	 */
+	public void setDateTimeFormat(String dateTimeFormat) {
+		this.dateTimeFormat = dateTimeFormat;
+	}
+
+	/**
+	 * Writes the workbook, deletes the temporary files and closes the writer.
+	 * @see csv.impl.AbstractStreamTableWriter#close()
+	 */
+	@Override
+	public void close() {
+		try {
+			if (getOutputStream() != null) {
+				ensureStarted();
+				writeWorkbook();
+			}
+		} catch (IOException e) {
+			throw new CsvException("Cannot write Excel file", e);
+		} finally {
+			try {
+				if (cellsOut != null) cellsOut.close();
+				if (sstOut != null) sstOut.close();
+			} catch (IOException e) {
+				// Ignore, the files are deleted anyway
+			}
+			if (cellsFile != null) cellsFile.delete();
+			if (sstFile != null) sstFile.delete();
+			cellsOut = null;
+			sstOut = null;
+			cellsFile = null;
+			sstFile = null;
+		}
+		super.close();
+	}
+
+}
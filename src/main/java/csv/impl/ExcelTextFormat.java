@@ -0,0 +1,149 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+
+import org.apache.poi.ss.usermodel.FormulaError;
+
+/**
+ * Formats Excel cell values as texts.
+ * <p>
+ * The format is used by the stream parsers to deliver texts instead of Java objects,
+ * e.g. when transcoding a sheet into CSV (see {@link ExcelReader#transcode(CSVWriter)}).
+ * Each value is formatted exactly once and independently of the cell's number format,
+ * so Excel 97-2003 and Excel 2007+ files produce the same texts:
+ * </p>
+ * <ul>
+ * <li>integral numbers are formatted without decimals, other numbers by {@link Double#toString(double)},</li>
+ * <li>dates are formatted as <code>yyyy-MM-dd</code> when they have no time, as <code>yyyy-MM-dd HH:mm:ss</code> otherwise,</li>
+ * <li>booleans are formatted as <code>true</code> or <code>false</code>,</li>
+ * <li>errors are formatted as Excel displays them, e.g. <code>#DIV/0!</code>.</li>
+ * </ul>
+ * @author RalphSchuster
+ * @since 4.4
+ */
+public class ExcelTextFormat {
+
+	/** Largest number that is formatted as an integer */
+	private static final double MAX_INTEGER = 1e15;
+
+	/** Format for dates without time */
+	private DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+	/** Format for dates with time */
+	private DateTimeFormatter dateTimeFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	/** Decimal separator */
+	private char decimalSeparator = '.';
+
+	/**
+	 * Default constructor.
+	 */
+	public ExcelTextFormat() {
+	}
+
+	/**
+	 * Formats a number.
+	 * @param value the number
+	 * @return the text
+	 */
+	public String formatNumber(double value) {
+		if ((value == Math.rint(value)) && (Math.abs(value) < MAX_INTEGER)) return Long.toString((long)value);
+		String rc = Double.toString(value);
+		if (decimalSeparator != '.') rc = rc.replace('.', decimalSeparator);
+		return rc;
+	}
+
+	/**
+	 * Formats a date.
+	 * @param value the date
+	 * @return the text
+	 */
+	public String formatDate(LocalDateTime value) {
+		if (value.toLocalTime().equals(LocalTime.MIDNIGHT)) return dateFormat.format(value);
+		return dateTimeFormat.format(value);
+	}
+
+	/**
+	 * Formats a boolean.
+	 * @param value the boolean
+	 * @return the text
+	 */
+	public String formatBoolean(boolean value) {
+		return value ? "true" : "false";
+	}
+
+	/**
+	 * Formats an error.
+	 * @param code the error code
+	 * @return the text
+	 */
+	public String formatError(int code) {
+		return FormulaError.isValidCode(code) ? FormulaError.forInt(code).getString() : "#N/A";
+	}
+
+	/**
+	 * Returns the format for dates without time.
+	 * @return the format
+	 */
+	public DateTimeFormatter getDateFormat() {
+		return dateFormat;
+	}
+
+	/**
+	 * Sets the format for dates without time.
+	 * @param dateFormat the format (default is <code>yyyy-MM-dd</code>)
+	 */
+	public void setDateFormat(DateTimeFormatter dateFormat) {
+		this.dateFormat = dateFormat;
+	}
+
+	/**
+	 * Returns the format for dates with time.
+	 * @return the format
+	 */
+	public DateTimeFormatter getDateTimeFormat() {
+		return dateTimeFormat;
+	}
+
+	/**
+	 * Sets the format for dates with time.
+	 * @param dateTimeFormat the format (default is <code>yyyy-MM-dd HH:mm:ss</code>)
+	 */
+	public void setDateTimeFormat(DateTimeFormatter dateTimeFormat) {
+		this.dateTimeFormat = dateTimeFormat;
+	}
+
+	/**
+	 * Returns the decimal separator.
+	 * @return the decimal separator
+	 */
+	public char getDecimalSeparator() {
+		return decimalSeparator;
+	}
+
+	/**
+	 * Sets the decimal separator.
+	 * @param decimalSeparator the decimal separator (default is '.')
+	 */
+	public void setDecimalSeparator(char decimalSeparator) {
+		this.decimalSeparator = decimalSeparator;
+	}
+
+}
@@ -0,0 +1,220 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import csv.CsvException;
+
+/**
+ * Opens an Excel workbook once and provides its sheets as independent readers.
+ * <p>
+ * The workbook data, e.g. sheet names, shared strings and formats, is read only once.
+ * Each sheet reader parses its sheet in its own streaming pass (see {@link ExcelReader#setStreaming(boolean)}).
+ * Sheet readers do not share any state that is modified while reading, so they can be
+ * consumed concurrently by different threads.
+ * </p>
+ * <p>
+ * Sheet readers must be closed before the workbook reader is closed.
+ * </p>
+ * <pre>
+ExcelWorkbookReader workbook = new ExcelWorkbookReader(new java.io.File("monthly.xlsx"));
+ExecutorService executor = Executors.newFixedThreadPool(4);
+for (ExcelReader in : workbook.getSheetReaders()) {
+    executor.submit(() -&gt; {
+        while (in.hasNext()) {
+            Object columns[] = in.next();
+            // Do something here
+        }
+        in.close();
+    });
+}
+executor.shutdown();
+executor.awaitTermination(1, TimeUnit.HOURS);
+workbook.close();
+</pre>
+ * @author RalphSchuster
+ * @since 4.4
+ */
+public class ExcelWorkbookReader implements Closeable {
+
+	/** Temporary copy of an input stream */
+	private File tempFile;
+	/** The parser that read the workbook data */
+	private AbstractExcelStreamParser parser;
+	/** Whether date/time values shall be returned as JavaTime objects */
+	private boolean javaTimeEnabled = false;
+
+	/**
+	 * Constructor for reading from a file.
+	 * @param file file to read from
+	 */
+	public ExcelWorkbookReader(File file) {
+		this(file, 0);
+	}
+
+	/**
+	 * Constructor for reading from a file.
+	 * @param file file to read from
+	 * @param sharedStringsCacheSize number of shared strings kept in memory, 0 = all
+	 * @see ExcelReader#setSharedStringsCacheSize(int)
+	 */
+	public ExcelWorkbookReader(File file, int sharedStringsCacheSize) {
+		parser = AbstractExcelStreamParser.newInstance(file, sharedStringsCacheSize);
+	}
+
+	/**
+	 * Constructor for reading from a file.
+	 * @param file file to read from
+	 */
+	public ExcelWorkbookReader(String file) {
+		this(new File(file));
+	}
+
+	/**
+	 * Constructor for reading from a stream.
+	 * The stream is copied into a temporary file that will be deleted on {@link #close()}.
+	 * The stream will not be closed.
+	 * @param in input stream to be used
+	 */
+	public ExcelWorkbookReader(InputStream in) {
+		this(in, 0);
+	}
+
+	/**
+	 * Constructor for reading from a stream.
+	 * The stream is copied into a temporary file that will be deleted on {@link #close()}.
+	 * The stream will not be closed.
+	 * @param in input stream to be used
+	 * @param sharedStringsCacheSize number of shared strings kept in memory, 0 = all
+	 * @see ExcelReader#setSharedStringsCacheSize(int)
+	 */
+	public ExcelWorkbookReader(InputStream in, int sharedStringsCacheSize) {
+		try {
+			tempFile = File.createTempFile("csv-excel", ".tmp");
+			Files.copy(in, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			parser = AbstractExcelStreamParser.newInstance(tempFile, sharedStringsCacheSize);
+		} catch (IOException e) {
+			close();
+			throw new CsvException("Cannot copy input stream", e);
+		} catch (CsvException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the names of all sheets in the workbook.
+	 * @return the sheet names in workbook order
+	 */
+	public List<String> getSheetNames() {
+		return getParser().getSheetNames();
+	}
+
+	/**
+	 * Returns a new reader for the sheet at given index.
+	 * @param index index of sheet
+	 * @return the reader, to be closed by the caller
+	 */
+	public ExcelReader getSheetReader(int index) {
+		AbstractExcelStreamParser sheetParser = getParser().createSheetParser();
+		try {
+			sheetParser.setJavaTimeEnabled(isJavaTimeEnabled());
+			sheetParser.selectSheet(index);
+		} catch (CsvException e) {
+			sheetParser.close();
+			throw e;
+		}
+		return new ExcelReader(sheetParser);
+	}
+
+	/**
+	 * Returns a new reader for the sheet with given name.
+	 * @param name name of sheet
+	 * @return the reader, to be closed by the caller
+	 */
+	public ExcelReader getSheetReader(String name) {
+		int index = getParser().getSheetIndex(name);
+		if (index < 0) throw new CsvException("No such sheet: "+name);
+		return getSheetReader(index);
+	}
+
+	/**
+	 * Returns new readers for the sheets with given names.
+	 * @param names names of sheets, all sheets when no name is given
+	 * @return the readers in the order of the names, to be closed by the caller
+	 */
+	public List<ExcelReader> getSheetReaders(String... names) {
+		List<ExcelReader> rc = new ArrayList<>();
+		if (names.length == 0) {
+			for (int i=0; i<getSheetNames().size(); i++) rc.add(getSheetReader(i));
+		} else {
+			for (String name : names) rc.add(getSheetReader(name));
+		}
+		return rc;
+	}
+
+	/**
+	 * Returns the parser that read the workbook data.
+	 * @return the parser
+	 */
+	protected AbstractExcelStreamParser getParser() {
+		if (parser == null) throw new CsvException("Workbook reader was closed already");
+		return parser;
+	}
+
+	/**
+	 * Returns whether date/time values shall be returned as LocalDateTime objects or simple Dates.
+	 * @return whether date/time values shall be returned as LocalDateTime objects or simple Dates
+	 */
+	public boolean isJavaTimeEnabled() {
+		return javaTimeEnabled;
+	}
+
+	/**
+	 * Sets whether date/time values shall be returned as LocalDateTime objects or simple Dates.
+	 * The setting applies to sheet readers created afterwards.
+	 * @param javaTimeEnabled whether date/time values shall be returned as LocalDateTime objects or simple Dates
+	 */
+	public void setJavaTimeEnabled(boolean javaTimeEnabled) {
+		this.javaTimeEnabled = javaTimeEnabled;
+	}
+
+	/**
+	 * Closes the workbook and deletes any temporary file.
+	 * All sheet readers must be closed before.
+	 */
+	@Override
+	public void close() {
+		try {
+			if (parser != null) parser.close();
+		} finally {
+			parser = null;
+			if (tempFile != null) tempFile.delete();
+			tempFile = null;
+		}
+	}
+
+}
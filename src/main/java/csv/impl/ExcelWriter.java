@@ -23,15 +23,24 @@ import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.ConditionalFormattingRule;
+import org.apache.poi.ss.usermodel.PatternFormatting;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
 
 import rs.baselib.type.MonetaryValue;
 
@@ -50,6 +59,24 @@ out.printRow(new Object[] { "0:0", new Integer(3), new Date() });
 out.printRow(new Object[] { "1:0", new Double(), "another String value" });
 out.close();
 </pre>
+ * <p>
+ * The writer estimates the width of each column while the cells are written
+ * (see {@link ColumnWidthEstimator}). Formatters can apply these estimates when
+ * the writer is closed instead of measuring all cells again.
+ * </p>
+ * <p>
+ * Exports exceeding the row limit of the file format can be split into multiple
+ * sheets automatically (see {@link #setRollover(boolean)}). The writer creates a new
+ * sheet when the limit or the configured row count (see {@link #setRolloverRowCount(int)})
+ * is reached and optionally repeats the first row as header row
+ * (see {@link #setRepeatHeaderRow(boolean)}).
+ * </p>
+ * <p>
+ * Columns with a uniform format can be styled once per sheet by declaring a column
+ * style (see {@link #setColumnStyle(int, CellStyle, Class)}). Cells matching the column
+ * style are not passed to the {@link ExcelFormatter} anymore. Alternating row colors
+ * can be added as conditional formatting (see {@link #setRowBanding(Short)}).
+ * </p>
  * @see #close()
  * @author RalphSchuster
  *
@@ -62,6 +89,18 @@ public class ExcelWriter extends AbstractStreamTableWriter {
 	private int maxColumns;
 	private Set<ExcelListener> excelListeners = new HashSet<ExcelListener>();
 	private ExcelFormatter formatter;
+	private Map<Sheet, ColumnWidthEstimator> columnWidthEstimators = new IdentityHashMap<Sheet, ColumnWidthEstimator>();
+	private Sheet estimatedSheet;
+	private ColumnWidthEstimator estimator;
+	private boolean rollover = false;
+	private int rolloverRowCount = 0;
+	private boolean repeatHeaderRow = false;
+	private Object headerRow[];
+	private CellStyle columnStyles[] = new CellStyle[0];
+	private Class<?> columnStyleClasses[] = new Class<?>[0];
+	private Short rowBanding = null;
+	private Set<Sheet> styledSheets = Collections.newSetFromMap(new IdentityHashMap<Sheet, Boolean>());
+	private Sheet styledSheet;
 	
 	/**
 	 * Default constructor.
@@ -151,11 +190,22 @@ public class ExcelWriter extends AbstractStreamTableWriter {
 	 * and will always start with row index 0 to write to. The method will
 	 * automatically increase this internal counter.
 	 * You could avoid this by using {@link #printRow(Object[], int)}
+	 * <p>
+	 * A new sheet will be created when rollover is enabled and the current sheet is full.
+	 * </p>
 	 * @param columns values to be written to the Excel sheet
 	 * @see csv.TableWriter#printRow(java.lang.Object[])
+	 * @see #setRollover(boolean)
 	 */
 	@Override
 	public void printRow(Object[] columns) throws IOException {
+		if (rollover) {
+			if (rowNum >= getMaxRowsPerSheet()) {
+				rolloverSheet();
+			} else if ((rowNum == 0) && repeatHeaderRow && (headerRow == null)) {
+				headerRow = columns.clone();
+			}
+		}
 		printRow(columns, rowNum);
 		rowNum++;
 		incrementRowCount();
@@ -292,10 +342,41 @@ public class ExcelWriter extends AbstractStreamTableWriter {
 			}
 			
 			if (cell.getColumnIndex() > maxColumns) maxColumns = cell.getColumnIndex();
+			estimateColumnWidth(cell, value);
 		}
 		setStyle(cell, value);
 	}
 	
+	/**
+	 * Updates the estimated width of the cell's column.
+	 * @param cell cell object
+	 * @param value value that was set
+	 * @see #getColumnWidthEstimator(Sheet)
+	 * @since 4.4
+	 */
+	protected void estimateColumnWidth(Cell cell, Object value) {
+		Sheet sheet = cell.getSheet();
+		if (sheet != estimatedSheet) {
+			estimator = columnWidthEstimators.get(sheet);
+			if (estimator == null) {
+				estimator = new ColumnWidthEstimator();
+				columnWidthEstimators.put(sheet, estimator);
+			}
+			estimatedSheet = sheet;
+		}
+		estimator.update(cell.getColumnIndex(), value);
+	}
+	
+	/**
+	 * Returns the column width estimates of the given sheet.
+	 * @param sheet the sheet
+	 * @return the estimates or <code>null</code> when no values were written into the sheet
+	 * @since 4.4
+	 */
+	public ColumnWidthEstimator getColumnWidthEstimator(Sheet sheet) {
+		return columnWidthEstimators.get(sheet);
+	}
+	
 	/**
 	 * Returns the workbook or creates a fresh one.
 	 * @return the workbook
@@ -371,6 +452,133 @@ public class ExcelWriter extends AbstractStreamTableWriter {
 		return rc;
 	}
 	
+	/**
+	 * Continues writing in a new sheet.
+	 * The new sheet is added after the current sheet and its name is derived from the
+	 * name of the current sheet. The header row will be written when it shall be repeated.
+	 * @return the new sheet
+	 * @throws IOException when the header row cannot be written
+	 * @see #setRollover(boolean)
+	 * @since 4.4
+	 */
+	protected Sheet rolloverSheet() throws IOException {
+		Sheet current = getSheet();
+		int index = getWorkbook().getSheetIndex(current);
+		sheet = createSheet(index+1, getRolloverSheetName(current.getSheetName()));
+		rowNum = 0;
+		maxColumns = -1;
+		if (headerRow != null) {
+			printRow(headerRow, rowNum);
+			rowNum++;
+		}
+		return sheet;
+	}
+	
+	/**
+	 * Returns the name of a sheet that continues the given sheet.
+	 * @param name name of the full sheet
+	 * @return a name not used in the workbook yet, e.g. "Sheet1 (2)"
+	 * @since 4.4
+	 */
+	protected String getRolloverSheetName(String name) {
+		String base = name;
+		int n = 2;
+		if (name.endsWith(")")) {
+			// Continue numbering of a previous rollover sheet
+			int pos = name.lastIndexOf(" (");
+			if (pos > 0) {
+				try {
+					n = Integer.parseInt(name.substring(pos+2, name.length()-1))+1;
+					base = name.substring(0, pos);
+				} catch (NumberFormatException e) {
+					// Not a rollover sheet
+				}
+			}
+		}
+		while (true) {
+			String suffix = " ("+n+")";
+			// Excel limits sheet names to 31 characters
+			String rc = (base.length()+suffix.length() > 31 ? base.substring(0, 31-suffix.length()) : base)+suffix;
+			if (getWorkbook().getSheet(rc) == null) return rc;
+			n++;
+		}
+	}
+	
+	/**
+	 * Returns the maximum number of rows written into a sheet before a new sheet is created.
+	 * @return the configured row count or the limit of the file format, whichever is lower
+	 * @see #setRolloverRowCount(int)
+	 * @since 4.4
+	 */
+	public int getMaxRowsPerSheet() {
+		int rc = getWorkbook().getSpreadsheetVersion().getMaxRows();
+		if ((rolloverRowCount > 0) && (rolloverRowCount < rc)) rc = rolloverRowCount;
+		return rc;
+	}
+	
+	/**
+	 * Returns whether a new sheet will be created when a sheet is full.
+	 * @return <code>true</code> when rollover is enabled
+	 * @since 4.4
+	 */
+	public boolean isRollover() {
+		return rollover;
+	}
+
+	/**
+	 * Sets whether a new sheet will be created when a sheet is full.
+	 * Only rows written by {@link #printRow(Object[])} are considered.
+	 * The default is <code>false</code>.
+	 * @param rollover <code>true</code> when rollover shall be enabled
+	 * @see #setRolloverRowCount(int)
+	 * @see #setRepeatHeaderRow(boolean)
+	 * @since 4.4
+	 */
+	public void setRollover(boolean rollover) {
+		this.rollover = rollover;
+	}
+
+	/**
+	 * Returns the number of rows per sheet when rollover is enabled.
+	 * @return the number of rows including any header row, 0 when limited by the file format only
+	 * @since 4.4
+	 */
+	public int getRolloverRowCount() {
+		return rolloverRowCount;
+	}
+
+	/**
+	 * Sets the number of rows per sheet when rollover is enabled.
+	 * The row limit of the file format applies when the count is 0 or exceeds the limit.
+	 * @param rolloverRowCount the number of rows including any header row
+	 * @see #getMaxRowsPerSheet()
+	 * @since 4.4
+	 */
+	public void setRolloverRowCount(int rolloverRowCount) {
+		this.rolloverRowCount = rolloverRowCount;
+	}
+
+	/**
+	 * Returns whether the first row of the first sheet will be repeated in new sheets.
+	 * @return <code>true</code> when the header row shall be repeated
+	 * @since 4.4
+	 */
+	public boolean isRepeatHeaderRow() {
+		return repeatHeaderRow;
+	}
+
+	/**
+	 * Sets whether the first row of the first sheet will be repeated in new sheets.
+	 * The header row is formatted like the first row of any sheet by the {@link ExcelFormatter}.
+	 * The default is <code>false</code>.
+	 * @param repeatHeaderRow <code>true</code> when the header row shall be repeated
+	 * @see #setRollover(boolean)
+	 * @since 4.4
+	 */
+	public void setRepeatHeaderRow(boolean repeatHeaderRow) {
+		this.repeatHeaderRow = repeatHeaderRow;
+	}
+
 	/**
 	 * Closes the writer and writes the Excel to the underlying stream.
 	 * Please note that all modifications of an Excel sheet appear in memory
@@ -380,6 +588,7 @@ public class ExcelWriter extends AbstractStreamTableWriter {
 	@Override
 	public void close() {
 		try {
+			applyRowBanding();
 			if (formatter != null) formatter.finalize(this);
 			getWorkbook().write(getOutputStream());
 		} catch (IOException e) {
@@ -447,6 +656,128 @@ public class ExcelWriter extends AbstractStreamTableWriter {
 	 * @see #setFormatter(ExcelFormatter)
 	 */
 	protected void setStyle(Cell cell, Object value) {
+		if (applyColumnStyle(cell, value)) return;
 		if (getFormatter() != null) getFormatter().setStyle(this, cell, value);
 	}
+
+	/**
+	 * Applies the column style to a cell if the value matches the style.
+	 * The method is called by {@link #setStyle(Cell, Object)} before the formatter is asked.
+	 * @param cell cell to be formatted
+	 * @param value value that was set
+	 * @return <code>true</code> when the column style applies and the cell needs no further formatting
+	 * @see #setColumnStyle(int, CellStyle, Class)
+	 * @since 4.4
+	 */
+	protected boolean applyColumnStyle(Cell cell, Object value) {
+		if ((rowBanding != null) || (columnStyles.length > 0)) prepareSheet(cell.getSheet());
+		int column = cell.getColumnIndex();
+		if ((value == null) || (column >= columnStyles.length) || (columnStyles[column] == null)) return false;
+		Class<?> valueClass = columnStyleClasses[column];
+		if ((valueClass != null) && !valueClass.isInstance(value)) return false;
+		// New cells might carry the column style already
+		CellStyle style = columnStyles[column];
+		if (cell.getCellStyle().getIndex() != style.getIndex()) cell.setCellStyle(style);
+		return true;
+	}
+
+	/**
+	 * Declares the column styles in a sheet when it is written first.
+	 * @param sheet the sheet
+	 * @since 4.4
+	 */
+	protected void prepareSheet(Sheet sheet) {
+		if (sheet == styledSheet) return;
+		styledSheet = sheet;
+		if (!styledSheets.add(sheet)) return;
+		for (int column=0; column<columnStyles.length; column++) {
+			if (columnStyles[column] != null) sheet.setDefaultColumnStyle(column, columnStyles[column]);
+		}
+	}
+
+	/**
+	 * Adds the conditional formatting for row banding to all written sheets.
+	 * The first row is excluded as it usually is the header row.
+	 * @see #setRowBanding(Short)
+	 * @since 4.4
+	 */
+	protected void applyRowBanding() {
+		if (rowBanding == null) return;
+		for (Sheet s : styledSheets) {
+			ColumnWidthEstimator estimator = getColumnWidthEstimator(s);
+			int lastColumn = estimator != null ? estimator.getColumnCount()-1 : -1;
+			if ((s.getLastRowNum() < 1) || (lastColumn < 0)) continue;
+			SheetConditionalFormatting formatting = s.getSheetConditionalFormatting();
+			ConditionalFormattingRule rule = formatting.createConditionalFormattingRule("MOD(ROW(),2)=1");
+			PatternFormatting fill = rule.createPatternFormatting();
+			fill.setFillBackgroundColor(rowBanding);
+			fill.setFillPattern(PatternFormatting.SOLID_FOREGROUND);
+			formatting.addConditionalFormatting(new CellRangeAddress[] { new CellRangeAddress(1, s.getLastRowNum(), 0, lastColumn) }, rule);
+		}
+	}
+
+	/**
+	 * Returns the style declared for a column.
+	 * @param column column index
+	 * @return the style or <code>null</code>
+	 * @since 4.4
+	 */
+	public CellStyle getColumnStyle(int column) {
+		return column < columnStyles.length ? columnStyles[column] : null;
+	}
+
+	/**
+	 * Declares the style of a column for values of any class.
+	 * @param column column index
+	 * @param style the style created in the workbook of this writer, <code>null</code> to remove the declaration
+	 * @see #setColumnStyle(int, CellStyle, Class)
+	 * @since 4.4
+	 */
+	public void setColumnStyle(int column, CellStyle style) {
+		setColumnStyle(column, style, null);
+	}
+
+	/**
+	 * Declares the style of a column.
+	 * <p>
+	 * The style is set as default column style in each sheet once. Cells receiving a value
+	 * of the given class get this style without asking the {@link ExcelFormatter}, which
+	 * saves CPU per cell and keeps the number of styles low. Values of other classes,
+	 * e.g. a header text in a numeric column, are still styled by the formatter.
+	 * Column styles must be declared before any value is written.
+	 * </p>
+	 * @param column column index
+	 * @param style the style created in the workbook of this writer, <code>null</code> to remove the declaration
+	 * @param valueClass class of matching values, <code>null</code> for values of any class
+	 * @since 4.4
+	 */
+	public void setColumnStyle(int column, CellStyle style, Class<?> valueClass) {
+		if (column >= columnStyles.length) {
+			columnStyles = Arrays.copyOf(columnStyles, column+1);
+			columnStyleClasses = Arrays.copyOf(columnStyleClasses, column+1);
+		}
+		columnStyles[column] = style;
+		columnStyleClasses[column] = valueClass;
+	}
+
+	/**
+	 * Returns the background color of banded rows.
+	 * @return the color index or <code>null</code> when rows are not banded
+	 * @since 4.4
+	 */
+	public Short getRowBanding() {
+		return rowBanding;
+	}
+
+	/**
+	 * Sets the background color of banded rows.
+	 * Every second row after the first row is filled by a conditional formatting
+	 * rule that is added once per sheet when the writer is closed.
+	 * Cell styles are not affected.
+	 * @param rowBanding the color index, e.g. IndexedColors.GREY_25_PERCENT.getIndex(), <code>null</code> for no banding
+	 * @since 4.4
+	 */
+	public void setRowBanding(Short rowBanding) {
+		this.rowBanding = rowBanding;
+	}
 }
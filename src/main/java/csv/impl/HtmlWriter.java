@@ -20,8 +20,14 @@ package csv.impl;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
-import org.apache.commons.text.StringEscapeUtils;
+import org.apache.commons.text.translate.EntityArrays;
 
 /**
  * Provides implementation for writing HTML table.
@@ -31,6 +37,12 @@ import org.apache.commons.text.StringEscapeUtils;
  * static HTML files. You'd rather use JSP pages when you are in a JSP environment (unless you
  * have good reasons to use this class).
  * </p>
+ * <p>
+ * Templates are split into their header and footer parts once and split again only when
+ * a template getter returns another template.
+ * The writer is flushed according to the {@link #setFlushInterval(int) flush interval}.
+ * Use a larger interval when writing large tables.
+ * </p>
  * @author ralph
  *
  */
@@ -51,6 +63,21 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	public static final String DEFAULT_TBODY_TR_TEMPLATE2 = "\t\t<tr class=\"odd\">\n|\t\t</tr>\n";
 	public static final String DEFAULT_TBODY_TD_TEMPLATE2 = "\t\t\t<td class=\"odd\">|</td>\n";
 
+	// Slots of split templates
+	private static final int TABLE = 0;
+	private static final int THEAD = 1;
+	private static final int THEAD_TR = 2;
+	private static final int THEAD_TH = 3;
+	private static final int THEAD_TH2 = 4;
+	private static final int TBODY = 5;
+	private static final int TBODY_TR = 6;
+	private static final int TBODY_TR2 = 7;
+	private static final int TBODY_TD = 8;
+	private static final int TBODY_TD2 = 9;
+
+	/** HTML entities indexed by the character they replace */
+	private static final String ENTITIES[] = createEntities();
+
 	/** General template (table) */
 	private String tableTemplate = DEFAULT_TABLE_TEMPLATE;
 	
@@ -74,6 +101,9 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	/** Header Column Template (th/odd columns) */
 	private String dataColumnTemplate2 = DEFAULT_TBODY_TD_TEMPLATE2;
 	
+	/** Templates split into header and footer parts, indexed by template slot */
+	private Template templateParts[] = new Template[10];
+	
 	/** whether table header was written */
 	private boolean tableHeaderWritten = false;
 	/** whether table header was written */
@@ -139,6 +169,7 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 * if the writer was configured to have a header row then first call will write a HTML header row
 	 * @param columns columns to be written
 	 * @see csv.TableWriter#printRow(java.lang.Object[])
+	 * @see #setFlushInterval(int)
 	 */
 	@Override
 	public void printRow(Object[] columns) throws IOException {
@@ -155,7 +186,7 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 			currentRowIndex++;
 		}
 		incrementRowCount();
-		getWriter().flush();
+		checkFlush();
 	}
 
 	/**
@@ -198,10 +229,8 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 		String s = convert(o).toString();
 		
 		// HTML cleanup of content
-		s = encodeHtml(s);
-		if ((s == null) || (s.length() == 0)) s = "&nbsp;";
-		
-		getWriter().print(s);
+		if (s.length() == 0) getWriter().print("&nbsp;");
+		else encodeHtml(s, getWriter());
 	}
 	
 	/**
@@ -209,7 +238,7 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 */
 	public void printTableHeader() {
 		if (isTableHeaderWritten()) return;
-		getWriter().print(getHeader(getTableTemplate()));
+		getWriter().print(getTemplate(TABLE, getTableTemplate()).header);
 		tableHeaderWritten = true;
 	}
 
@@ -218,7 +247,7 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 */
 	public void printTableFooter() {
 		if (!tableHeaderWritten) return;
-		getWriter().print(getFooter(getTableTemplate()));
+		getWriter().print(getTemplate(TABLE, getTableTemplate()).footer);
 		getWriter().flush();
 	}
 
@@ -226,14 +255,14 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 * Prints the table head (thead) header into the underlying stream.
 	 */
 	public void printTableHeadHeader() {
-		getWriter().print(getHeader(getTheadTemplate()));
+		getWriter().print(getTemplate(THEAD, getTheadTemplate()).header);
 	}
 
 	/**
 	 * Prints the table head (thead) footer into the underlying stream.
 	 */
 	public void printTableHeadFooter() {
-		getWriter().print(getFooter(getTheadTemplate()));
+		getWriter().print(getTemplate(THEAD, getTheadTemplate()).footer);
 	}
 	
 	/**
@@ -241,7 +270,7 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 */
 	public void printTableBodyHeader() {
 		if (tableBodyHeaderWritten) return;
-		getWriter().print(getHeader(getTbodyTemplate()));
+		getWriter().print(getTemplate(TBODY, getTbodyTemplate()).header);
 		tableBodyHeaderWritten = true;
 	}
 
@@ -250,21 +279,21 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 */
 	public void printTableBodyFooter() {
 		if (!tableBodyHeaderWritten) return;
-		getWriter().print(getFooter(getTbodyTemplate()));
+		getWriter().print(getTemplate(TBODY, getTbodyTemplate()).footer);
 	}
 	
 	/**
 	 * Prints the table header row (tr) header into the underlying stream.
 	 */
 	public void printTableHeadRowHeader() {
-		getWriter().print(getHeader(getTheadTrTemplate()));
+		getWriter().print(getTemplate(THEAD_TR, getTheadTrTemplate()).header);
 	}
 
 	/**
 	 * Prints the table header row (tr) footer into the underlying stream.
 	 */
 	public void printTableHeadRowFooter() {
-		getWriter().print(getFooter(getTheadTrTemplate()));
+		getWriter().print(getTemplate(THEAD_TR, getTheadTrTemplate()).footer);
 	}
 
 	/**
@@ -272,8 +301,8 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 * @param columnIndex index of column
 	 */
 	public void printTableHeadColumnHeader(int columnIndex) {
-		boolean even = columnIndex % 2 == 0;
-		getWriter().print(getHeader(even ? getTheadThTemplate() : getTheadThTemplate2()));
+		boolean even = (columnIndex & 1) == 0;
+		getWriter().print(getTemplate(even ? THEAD_TH : THEAD_TH2, even ? getTheadThTemplate() : getTheadThTemplate2()).header);
 	}
 
 	/**
@@ -281,8 +310,8 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 * @param columnIndex index of column
 	 */
 	public void printTableHeadColumnFooter(int columnIndex) {
-		boolean even = columnIndex % 2 == 0;
-		getWriter().print(getFooter(even ? getTheadThTemplate() : getTheadThTemplate2()));
+		boolean even = (columnIndex & 1) == 0;
+		getWriter().print(getTemplate(even ? THEAD_TH : THEAD_TH2, even ? getTheadThTemplate() : getTheadThTemplate2()).footer);
 	}
 	
 	/**
@@ -290,8 +319,8 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 * @param rowIndex index of data row (not including header row)
 	 */
 	public void printTableBodyRowHeader(int rowIndex) {
-		boolean even = rowIndex % 2 == 0;
-		getWriter().print(getHeader(even ? getTbodyTrTemplate() : getTbodyTrTemplate2()));
+		boolean even = (rowIndex & 1) == 0;
+		getWriter().print(getTemplate(even ? TBODY_TR : TBODY_TR2, even ? getTbodyTrTemplate() : getTbodyTrTemplate2()).header);
 	}
 
 	/**
@@ -299,8 +328,8 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 * @param rowIndex index of data row (not including header row)
 	 */
 	public void printTableBodyRowFooter(int rowIndex) {
-		boolean even = rowIndex % 2 == 0;
-		getWriter().print(getFooter(even ? getTbodyTrTemplate() : getTbodyTrTemplate2()));
+		boolean even = (rowIndex & 1) == 0;
+		getWriter().print(getTemplate(even ? TBODY_TR : TBODY_TR2, even ? getTbodyTrTemplate() : getTbodyTrTemplate2()).footer);
 	}
 	
 	/**
@@ -309,8 +338,8 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 * @param columnIndex index of column
 	 */
 	public void printTableDataColumnHeader(int rowIndex, int columnIndex) {
-		boolean even = columnIndex % 2 == 0;
-		getWriter().print(getHeader(even ? getTbodyTdTemplate() : getTbodyTdTemplate2()));
+		boolean even = (columnIndex & 1) == 0;
+		getWriter().print(getTemplate(even ? TBODY_TD : TBODY_TD2, even ? getTbodyTdTemplate() : getTbodyTdTemplate2()).header);
 	}
 
 	/**
@@ -319,8 +348,8 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 * @param columnIndex index of column
 	 */
 	public void printTableDataColumnFooter(int rowIndex, int columnIndex) {
-		boolean even = columnIndex % 2 == 0;
-		getWriter().print(getFooter(even ? getTbodyTdTemplate() : getTbodyTdTemplate2()));
+		boolean even = (columnIndex & 1) == 0;
+		getWriter().print(getTemplate(even ? TBODY_TD : TBODY_TD2, even ? getTbodyTdTemplate() : getTbodyTdTemplate2()).footer);
 	}
 	
 	
@@ -523,9 +552,69 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 	 */
 	public static String encodeHtml(String s) {
 		if (s == null) return null;
-		return StringEscapeUtils.escapeHtml4(s);
+		StringWriter rc = new StringWriter(s.length()+16);
+		encodeHtml(s, new PrintWriter(rc));
+		return rc.toString();
+	}
+	
+	/**
+	 * Makes HTML encoding for the string and writes it to the given writer.
+	 * The string is encoded in a single pass. Characters are replaced by the
+	 * same HTML 4 entities as in {@link #encodeHtml(String)}.
+	 * @param s the string to be encoded
+	 * @param out the writer
+	 * @since 4.4
+	 */
+	public static void encodeHtml(String s, PrintWriter out) {
+		int len = s.length();
+		int start = 0;
+		for (int i=0; i<len; i++) {
+			char c = s.charAt(i);
+			if ((c < ENTITIES.length) && (ENTITIES[c] != null)) {
+				if (i > start) out.write(s, start, i-start);
+				out.write(ENTITIES[c]);
+				start = i+1;
+			}
+		}
+		if (start < len) out.write(s, start, len-start);
 	}
 	
+	/**
+	 * Creates the lookup table of HTML 4 entities.
+	 * @return the entities indexed by the character they replace
+	 */
+	private static String[] createEntities() {
+		List<Map<CharSequence, CharSequence>> maps = Arrays.asList(EntityArrays.BASIC_ESCAPE, EntityArrays.ISO8859_1_ESCAPE, EntityArrays.HTML40_EXTENDED_ESCAPE);
+		int max = 0;
+		for (Map<CharSequence, CharSequence> map : maps) {
+			for (CharSequence c : map.keySet()) max = Math.max(max, c.charAt(0));
+		}
+		String rc[] = new String[max+1];
+		for (Map<CharSequence, CharSequence> map : maps) {
+			for (Map.Entry<CharSequence, CharSequence> entry : map.entrySet()) {
+				char c = entry.getKey().charAt(0);
+				if (rc[c] == null) rc[c] = entry.getValue().toString();
+			}
+		}
+		return rc;
+	}
+	
+	/**
+	 * Returns the template split into header and footer parts.
+	 * The template is split again only when the template getter returns another template.
+	 * @param slot slot of template
+	 * @param template the template as returned by its getter
+	 * @return the split template
+	 */
+	private Template getTemplate(int slot, String template) {
+		Template rc = templateParts[slot];
+		if ((rc == null) || !Objects.equals(rc.template, template)) {
+			rc = new Template(template);
+			templateParts[slot] = rc;
+		}
+		return rc;
+	}
+
 	/**
 	 * Returns the header part of the given template
 	 * @param template template divided into two parts separated by a pipe character (|)
@@ -550,4 +639,29 @@ public class HtmlWriter extends AbstractStreamTableWriter {
 		if (s.length == 1) return "";
 		return s[1];
 	}
+
+	/**
+	 * A template split into its header and footer parts.
+	 */
+	private static class Template {
+		
+		/** the template as given */
+		private String template;
+		/** the header part */
+		private String header;
+		/** the footer part */
+		private String footer;
+		
+		/**
+		 * Constructor.
+		 * @param template template divided into two parts separated by a pipe character (|)
+		 */
+		public Template(String template) {
+			this.template = template;
+			String h = getHeader(template);
+			String f = getFooter(template);
+			this.header = h != null ? h : "";
+			this.footer = f != null ? f : "";
+		}
+	}
 }
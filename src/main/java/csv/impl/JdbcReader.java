@@ -17,25 +17,82 @@
  */
 package csv.impl;
 
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 
 import csv.CsvException;
 import csv.util.CSVUtils;
 
 /**
  * Implements a table reader to read JDBC ResultSet rows.
+ * <p>
+ * The column types are taken from the result set's meta data once and the values
+ * are read with the typed getters of the result set, e.g. <code>getInt()</code>
+ * for <code>INTEGER</code> columns. Types without a typed getter are read by
+ * <code>getObject()</code>. Rows can be prefetched in batches, see {@link #setPrefetchSize(int)}.
+ * </p>
+ * <p>
+ * A reader created for a connection and an SQL query executes the query with a
+ * forward-only, read-only statement when the first row is requested. Set the
+ * {@link #setFetchSize(int) fetch size} before reading to control how many rows
+ * the driver transfers per round trip.
+ * </p>
  * @author ralph
  *
  */
 public class JdbcReader extends AbstractTableReader {
 
+	/** Value is read by getObject() */
+	private static final int GET_OBJECT     = 0;
+	/** Value is read by getString() */
+	private static final int GET_STRING     = 1;
+	/** Value is read by getInt() */
+	private static final int GET_INT        = 2;
+	/** Value is read by getLong() */
+	private static final int GET_LONG       = 3;
+	/** Value is read by getFloat() */
+	private static final int GET_FLOAT      = 4;
+	/** Value is read by getDouble() */
+	private static final int GET_DOUBLE     = 5;
+	/** Value is read by getBigDecimal() */
+	private static final int GET_DECIMAL    = 6;
+	/** Value is read by getBoolean() */
+	private static final int GET_BOOLEAN    = 7;
+	/** Value is read by getDate() */
+	private static final int GET_DATE       = 8;
+	/** Value is read by getTime() */
+	private static final int GET_TIME       = 9;
+	/** Value is read by getTimestamp() */
+	private static final int GET_TIMESTAMP  = 10;
+
 	private ResultSet resultSet;
 	private Object nextRow[] = null;
 	private int columnCount = 0;
 	private boolean closeResultSet = false;
+	/** The connection to execute the query with (when the reader executes the query itself) */
+	private Connection connection;
+	/** The query to be executed (when the reader executes the query itself) */
+	private String query;
+	/** The statement created by this reader */
+	private Statement statement;
+	/** Number of rows the driver shall fetch per round trip */
+	private int fetchSize = 0;
+	/** Number of rows to be read per batch */
+	private int prefetchSize = 1;
+	/** Whether typed getters shall be used */
+	private boolean typedGetters = true;
+	/** Getter for each column, see GET_xxx constants */
+	private int getters[] = null;
+	/** Prefetched rows */
+	private Object batch[][] = null;
+	/** Number of prefetched rows */
+	private int batchCount = 0;
+	/** Index of next prefetched row to be delivered */
+	private int batchIndex = 0;
 	
 	/**
 	 * Default constructor.
@@ -55,6 +112,21 @@ public class JdbcReader extends AbstractTableReader {
 		this(statement.getResultSet());
 	}
 
+	/**
+	 * Constructor for reading the result of a query.
+	 * The query is executed when the first row is requested. The statement
+	 * and its result set will be closed when the reader is closed.
+	 * @param connection the JDBC connection
+	 * @param query the SQL query to be executed
+	 * @since 4.4
+	 */
+	public JdbcReader(Connection connection, String query) {
+		this.connection = connection;
+		this.query = query;
+		setCloseResultSet(true);
+		setHasHeaderRow(true);
+	}
+
 	/**
 	 * Sets the JDBC result set for this reader.
 	 * @param resultSet the resultSet to set
@@ -65,12 +137,34 @@ public class JdbcReader extends AbstractTableReader {
 
 	/**
 	 * Returns the JDBC result set of this reader.
+	 * A reader created for a query will execute it now if not done yet.
 	 * @return the resultSet
 	 */
 	public ResultSet getResultSet() {
+		if ((resultSet == null) && (query != null)) {
+			try {
+				setResultSet(executeQuery());
+			} catch (SQLException e) {
+				throw new CsvException("Cannot execute query", e);
+			}
+		}
 		return resultSet;
 	}
 
+	/**
+	 * Executes the query of this reader.
+	 * The statement is created forward-only and read-only with the fetch size of this reader.
+	 * @return the result set
+	 * @throws SQLException when the query fails
+	 * @since 4.4
+	 */
+	protected ResultSet executeQuery() throws SQLException {
+		statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+		if (fetchSize > 0) statement.setFetchSize(fetchSize);
+		return statement.executeQuery(query);
+	}
+
 	/**
 	 * Closes the reader.
 	 * If the result set was created within this class then it will be closed, too.
@@ -79,10 +173,16 @@ public class JdbcReader extends AbstractTableReader {
 	@Override
 	public void close() {
 		try {
-			if (!resultSet.isClosed() && isCloseResultSet()) resultSet.close();
+			if ((resultSet != null) && !resultSet.isClosed() && isCloseResultSet()) resultSet.close();
+			if (statement != null) {
+				statement.close();
+				statement = null;
+				resultSet = null;
+			}
 		} catch (SQLException e) {
 			throw new CsvException("Error while closing result set", e);
 		}
+		clearBatch();
 		super.close();
 	}
 
@@ -95,21 +195,33 @@ public class JdbcReader extends AbstractTableReader {
 		super.open();
 		nextRow = null;
 		columnCount = 0;
+		getters = null;
+		clearBatch();
 	}
 
 	/**
 	 * Resets the result set cursor before the first row.
+	 * A reader created for a query will execute the query again.
 	 * @see csv.TableReader#reset()
 	 */
 	@Override
 	public void reset() {
 		try {
-			resultSet.beforeFirst();
+			if (query != null) {
+				// The query will be executed again when the first row is requested
+				if (statement != null) statement.close();
+				statement = null;
+				resultSet = null;
+			} else if (resultSet != null) {
+				resultSet.beforeFirst();
+			}
 		} catch (SQLException e) {
 			throw new CsvException("Cannot relocate cursor", e);
 		}
 		nextRow = null;
 		columnCount = 0;
+		getters = null;
+		clearBatch();
 		super.reset();
 	}
 
@@ -119,7 +231,7 @@ public class JdbcReader extends AbstractTableReader {
 	@Override
 	protected void readHeaderRow() {
 		try {
-			ResultSetMetaData meta = resultSet.getMetaData();
+			ResultSetMetaData meta = getResultSet().getMetaData();
 			int colcount = meta.getColumnCount();
 			String l[] = new String[colcount];
 			for (int i=0; i<colcount; i++) {
@@ -138,7 +250,7 @@ public class JdbcReader extends AbstractTableReader {
 	public int getColumnCount() {
 		if (columnCount <= 0) {
 			try {
-				ResultSetMetaData meta = resultSet.getMetaData();
+				ResultSetMetaData meta = getResultSet().getMetaData();
 				columnCount = meta.getColumnCount();
 			} catch (SQLException e) {
 				throw new CsvException("Cannot read column names", e);
@@ -178,26 +290,175 @@ public class JdbcReader extends AbstractTableReader {
 		if (nextRow != null) return;
 		try {
 			// Read the column names first if required
-			readHeaderRow();
+			if (hasHeaderRow() && !isHeaderRowRead()) readHeaderRow();
 			
-			// Read the data row
-			if (resultSet.next()) {
-				nextRow = new Object[getColumnCount()];
-				for (int i=0; i<nextRow.length; i++) {
-					nextRow[i] = resultSet.getObject(i+1);
+			// Deliver prefetched rows first
+			if (prefetchSize > 1) {
+				if (batchIndex >= batchCount) readBatch();
+				if (batchIndex < batchCount) {
+					nextRow = batch[batchIndex];
+					batch[batchIndex++] = null;
 				}
+				return;
 			}
+			
+			// Read the data row
+			ResultSet rs = getResultSet();
+			if (rs.next()) nextRow = readRow(rs);
 		} catch (SQLException e) {
 			throw new CsvException("Cannot read next row", e);
 		}
 	}
 	
+	/**
+	 * Reads the next batch of rows from the result set.
+	 * @throws SQLException when the rows cannot be read
+	 */
+	private void readBatch() throws SQLException {
+		if ((batch == null) || (batch.length != prefetchSize)) batch = new Object[prefetchSize][];
+		batchCount = 0;
+		batchIndex = 0;
+		ResultSet rs = getResultSet();
+		while ((batchCount < batch.length) && rs.next()) {
+			batch[batchCount++] = readRow(rs);
+		}
+	}
+	
+	/**
+	 * Clears the prefetched rows.
+	 */
+	private void clearBatch() {
+		batch = null;
+		batchCount = 0;
+		batchIndex = 0;
+	}
+	
+	/**
+	 * Reads the values of the current row of the result set.
+	 * @param rs the result set
+	 * @return the values
+	 * @throws SQLException when the values cannot be read
+	 */
+	private Object[] readRow(ResultSet rs) throws SQLException {
+		int getters[] = getGetters();
+		Object rc[] = new Object[getters.length];
+		for (int i=0; i<rc.length; i++) {
+			rc[i] = readValue(rs, i+1, getters[i]);
+		}
+		return rc;
+	}
+	
+	/**
+	 * Reads a value from the current row of the result set.
+	 * @param rs the result set
+	 * @param column the JDBC column index (starting with 1)
+	 * @param getter the getter to be used
+	 * @return the value
+	 * @throws SQLException when the value cannot be read
+	 */
+	private Object readValue(ResultSet rs, int column, int getter) throws SQLException {
+		switch (getter) {
+		case GET_STRING:
+			return rs.getString(column);
+		case GET_INT:
+			int i = rs.getInt(column);
+			return rs.wasNull() ? null : Integer.valueOf(i);
+		case GET_LONG:
+			long l = rs.getLong(column);
+			return rs.wasNull() ? null : Long.valueOf(l);
+		case GET_FLOAT:
+			float f = rs.getFloat(column);
+			return rs.wasNull() ? null : Float.valueOf(f);
+		case GET_DOUBLE:
+			double d = rs.getDouble(column);
+			return rs.wasNull() ? null : Double.valueOf(d);
+		case GET_DECIMAL:
+			return rs.getBigDecimal(column);
+		case GET_BOOLEAN:
+			boolean b = rs.getBoolean(column);
+			return rs.wasNull() ? null : Boolean.valueOf(b);
+		case GET_DATE:
+			return rs.getDate(column);
+		case GET_TIME:
+			return rs.getTime(column);
+		case GET_TIMESTAMP:
+			return rs.getTimestamp(column);
+		default:
+			return rs.getObject(column);
+		}
+	}
+	
+	/**
+	 * Returns the getters for the columns.
+	 * The getters are determined once from the meta data of the result set.
+	 * @return the getters
+	 * @throws SQLException when the meta data cannot be read
+	 */
+	private int[] getGetters() throws SQLException {
+		if (getters == null) {
+			ResultSetMetaData meta = getResultSet().getMetaData();
+			int rc[] = new int[getColumnCount()];
+			for (int i=0; i<rc.length; i++) {
+				rc[i] = typedGetters ? getGetter(meta, i+1) : GET_OBJECT;
+			}
+			getters = rc;
+		}
+		return getters;
+	}
+	
+	/**
+	 * Returns the getter for a column.
+	 * Only types that the JDBC specification maps to the same Java class
+	 * as <code>getObject()</code> are read by typed getters.
+	 * @param meta the meta data
+	 * @param column the JDBC column index (starting with 1)
+	 * @return the getter
+	 * @throws SQLException when the meta data cannot be read
+	 */
+	private static int getGetter(ResultSetMetaData meta, int column) throws SQLException {
+		switch (meta.getColumnType(column)) {
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+			return GET_STRING;
+		case Types.INTEGER:
+			// Unsigned integers do not fit into Integer
+			return meta.isSigned(column) ? GET_INT : GET_OBJECT;
+		case Types.BIGINT:
+			// Unsigned integers do not fit into Long
+			return meta.isSigned(column) ? GET_LONG : GET_OBJECT;
+		case Types.REAL:
+			return GET_FLOAT;
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			return GET_DOUBLE;
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			return GET_DECIMAL;
+		case Types.BOOLEAN:
+			return GET_BOOLEAN;
+		case Types.DATE:
+			return GET_DATE;
+		case Types.TIME:
+			return GET_TIME;
+		case Types.TIMESTAMP:
+			return GET_TIMESTAMP;
+		default:
+			return GET_OBJECT;
+		}
+	}
+	
 	/**
 	 * Forwards to JDBC result set.
+	 * Rows cannot be deleted when rows are prefetched.
 	 * @see java.util.Iterator#remove()
 	 */
 	@Override
 	public void remove() {
+		if (prefetchSize > 1) throw new CsvException("Cannot delete row when rows are prefetched");
 		try {
 			resultSet.deleteRow();
 		} catch (SQLException e) {
@@ -221,4 +482,74 @@ public class JdbcReader extends AbstractTableReader {
 		this.closeResultSet = closeResultSet;
 	}
 
+	/**
+	 * Returns the number of rows the driver shall fetch per round trip.
+	 * @return the fetch size, 0 when the driver's default is used
+	 * @since 4.4
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Sets the number of rows the driver shall fetch per round trip.
+	 * The fetch size is passed to the result set immediately and is used for
+	 * statements created by this reader.
+	 * @param fetchSize the fetch size, 0 to use the driver's default
+	 * @since 4.4
+	 */
+	public void setFetchSize(int fetchSize) {
+		if (fetchSize < 0) throw new CsvException("Fetch size must not be negative: "+fetchSize);
+		this.fetchSize = fetchSize;
+		try {
+			if (resultSet != null) resultSet.setFetchSize(fetchSize);
+		} catch (SQLException e) {
+			throw new CsvException("Cannot set fetch size", e);
+		}
+	}
+
+	/**
+	 * Returns the number of rows read per batch.
+	 * @return the number of rows, 1 when rows are read one by one
+	 * @since 4.4
+	 */
+	public int getPrefetchSize() {
+		return prefetchSize;
+	}
+
+	/**
+	 * Sets the number of rows read per batch.
+	 * The reader will read the given number of rows from the result set at once
+	 * and deliver them one by one afterwards. {@link #remove()} is not supported
+	 * when rows are prefetched.
+	 * @param prefetchSize the number of rows (default is 1)
+	 * @since 4.4
+	 */
+	public void setPrefetchSize(int prefetchSize) {
+		if (prefetchSize < 1) throw new CsvException("Prefetch size must be positive: "+prefetchSize);
+		if (batchIndex < batchCount) throw new CsvException("Cannot change prefetch size while rows are prefetched");
+		this.prefetchSize = prefetchSize;
+	}
+
+	/**
+	 * Returns whether values are read by typed getters.
+	 * @return true when typed getters are used (default), false when all values are read by <code>getObject()</code>
+	 * @since 4.4
+	 */
+	public boolean isTypedGetters() {
+		return typedGetters;
+	}
+
+	/**
+	 * Sets whether values are read by typed getters.
+	 * Disable typed getters when a driver returns other classes from <code>getObject()</code>
+	 * than the JDBC specification defines and these classes are required.
+	 * @param typedGetters false when all values shall be read by <code>getObject()</code>
+	 * @since 4.4
+	 */
+	public void setTypedGetters(boolean typedGetters) {
+		this.typedGetters = typedGetters;
+		this.getters = null;
+	}
+
 }
@@ -0,0 +1,664 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import csv.CsvException;
+
+/**
+ * Implements a table writer that inserts rows into a JDBC table.
+ * <p>
+ * The rows are bound to a single prepared statement and executed in batches
+ * (see {@link #setBatchSize(int)}). The target columns are either set explicitly
+ * (see {@link #setColumns(String...)}) or taken from the first row written, e.g. the
+ * header row copied by {@link csv.util.CSVUtils#copy(csv.TableReader, csv.TableWriter, boolean)}.
+ * </p>
+ * <p>
+ * Target and key columns must be columns of the table. They are matched against the
+ * columns reported by the database metadata, ignoring case when there is no exact match,
+ * and written as quoted identifiers. The table name is written as given and may be
+ * qualified by a schema.
+ * </p>
+ * <p>
+ * Several rows can be inserted by one statement (see {@link #setRowsPerStatement(int)}).
+ * When key columns are set (see {@link #setKeyColumns(String...)}), rows are merged
+ * into the table by a SQL:2003 <code>MERGE</code> statement. Override
+ * {@link #createInsertSql(int)} or {@link #createUpsertSql(int)} for databases
+ * that require another syntax.
+ * </p>
+ * <p>
+ * The writer commits the transaction every {@link #setCommitInterval(int) commit interval}
+ * rows when set. When inserting rows fails, no further rows are accepted and the rows
+ * not yet committed are rolled back on {@link #close()}. Otherwise the transaction is
+ * left to the caller. The connection is not closed by this writer.
+ * </p>
+ * @author RalphSchuster
+ * @since 4.4
+ */
+public class JdbcWriter extends AbstractTableWriter {
+
+	/** The connection */
+	private Connection connection;
+	/** The target table */
+	private String table;
+	/** Target column for each column written, <code>null</code> for columns to be skipped */
+	private String columns[] = null;
+	/** Key columns for upserts */
+	private String keyColumns[] = null;
+	/** Whether the first row contains the target columns */
+	private boolean hasHeaderRow = true;
+	/** Number of rows per batch */
+	private int batchSize = 1000;
+	/** Number of rows per commit, 0 when transactions are left to the caller */
+	private int commitInterval = 0;
+	/** Number of rows per statement */
+	private int rowsPerStatement = 1;
+
+	/** Indexes of the columns written for each parameter of a row */
+	private int sourceIndexes[] = null;
+	/** Target columns of the parameters as quoted identifiers, <code>null</code> when not named */
+	private String targetColumns[] = null;
+	/** Key columns as quoted identifiers */
+	private String targetKeyColumns[] = null;
+	/** The statement for full rows per statement */
+	private PreparedStatement statement = null;
+	/** The statement for single rows remaining when flushing */
+	private PreparedStatement singleStatement = null;
+	/** SQL types of the parameters of a row for binding nulls, <code>null</code> while unknown */
+	private Integer nullTypes[] = null;
+	/** Converted values of rows not yet bound to the statement */
+	private Object pendingRows[][] = null;
+	/** Number of rows not yet bound to the statement */
+	private int pendingCount = 0;
+	/** Number of rows added to the current batch */
+	private int batchRows = 0;
+	/** Number of rows not yet committed */
+	private int uncommittedRows = 0;
+	/** Auto-commit mode of the connection before the writer started the transaction */
+	private Boolean autoCommit = null;
+	/** Whether inserting rows failed */
+	private boolean failed = false;
+
+	/**
+	 * Constructor.
+	 * @param connection the JDBC connection
+	 * @param table the target table
+	 */
+	public JdbcWriter(Connection connection, String table) {
+		this.connection = connection;
+		this.table = table;
+		init();
+	}
+
+	/**
+	 * Prints the row.
+	 * If no columns were set and the writer was configured to have a header row
+	 * then the first row defines the target columns.
+	 * @param columns columns to be written
+	 * @see csv.TableWriter#printRow(java.lang.Object[])
+	 */
+	@Override
+	public void printRow(Object[] columns) throws IOException {
+		if (failed) throw new CsvException("Inserting rows into "+table+" failed");
+		if (sourceIndexes == null) {
+			if ((this.columns == null) && hasHeaderRow) {
+				String names[] = new String[columns.length];
+				for (int i=0; i<columns.length; i++) {
+					if (columns[i] != null) names[i] = columns[i].toString();
+				}
+				setColumns(names);
+				return;
+			}
+			prepare(columns.length);
+		}
+
+		// Convert the values into the pending row, the row is pending once all values were converted
+		Object row[] = pendingRows[pendingCount];
+		for (int i=0; i<sourceIndexes.length; i++) {
+			int index = sourceIndexes[i];
+			row[i] = index < columns.length ? convert(columns[index]) : null;
+		}
+		pendingCount++;
+		incrementRowCount();
+
+		try {
+			if (pendingCount == rowsPerStatement) {
+				addBatch(statement, pendingCount);
+				if (batchRows >= batchSize) executeBatch();
+			}
+		} catch (SQLException e) {
+			failed = true;
+			throw new CsvException("Cannot insert rows into "+table, e);
+		}
+	}
+
+	/**
+	 * Prepares the statements.
+	 * @param columnCount number of columns of the first data row
+	 */
+	private void prepare(int columnCount) {
+		if (columns != null) {
+			List<Integer> indexes = new ArrayList<>();
+			List<String> names = new ArrayList<>();
+			for (int i=0; i<columns.length; i++) {
+				if (columns[i] != null) {
+					indexes.add(i);
+					names.add(columns[i]);
+				}
+			}
+			if (names.isEmpty()) throw new CsvException("No target columns defined for "+table);
+			try {
+				targetColumns = getIdentifiers(names.toArray(new String[names.size()]));
+				targetKeyColumns = keyColumns != null ? getIdentifiers(keyColumns) : null;
+			} catch (SQLException e) {
+				throw new CsvException("Cannot read columns of "+table, e);
+			}
+			sourceIndexes = new int[indexes.size()];
+			for (int i=0; i<sourceIndexes.length; i++) sourceIndexes[i] = indexes.get(i);
+		} else {
+			if (keyColumns != null) throw new CsvException("Upserts require the target columns");
+			sourceIndexes = new int[columnCount];
+			for (int i=0; i<columnCount; i++) sourceIndexes[i] = i;
+			targetColumns = null;
+			targetKeyColumns = null;
+		}
+		pendingRows = new Object[rowsPerStatement][sourceIndexes.length];
+		nullTypes = new Integer[sourceIndexes.length];
+		try {
+			if (commitInterval > 0) {
+				autoCommit = connection.getAutoCommit();
+				if (autoCommit) connection.setAutoCommit(false);
+			}
+			statement = connection.prepareStatement(createSql(rowsPerStatement));
+		} catch (SQLException e) {
+			throw new CsvException("Cannot prepare statement for "+table, e);
+		}
+	}
+
+	/**
+	 * Returns the quoted identifiers of columns of the table.
+	 * Each name is matched against the columns of the table, ignoring case
+	 * when there is no exact match.
+	 * @param names the column names
+	 * @return the quoted identifiers
+	 * @throws SQLException when the columns of the table cannot be read
+	 * @throws CsvException when a name is not a column of the table
+	 */
+	private String[] getIdentifiers(String names[]) throws SQLException {
+		DatabaseMetaData meta = connection.getMetaData();
+		Set<String> tableColumns = new HashSet<>();
+		Map<String,String> lowerCaseColumns = new HashMap<>();
+		int dot = table.lastIndexOf('.');
+		String schema = dot > 0 ? getPattern(meta, table.substring(0, dot)) : null;
+		String name = getPattern(meta, table.substring(dot+1));
+		try (ResultSet rs = meta.getColumns(null, schema, name, null)) {
+			while (rs.next()) {
+				String column = rs.getString("COLUMN_NAME");
+				tableColumns.add(column);
+				lowerCaseColumns.putIfAbsent(column.toLowerCase(Locale.ROOT), column);
+			}
+		}
+		if (tableColumns.isEmpty()) throw new CsvException("Cannot find columns of "+table);
+		String quote = meta.getIdentifierQuoteString();
+		if ((quote == null) || quote.trim().isEmpty()) quote = "";
+		String rc[] = new String[names.length];
+		for (int i=0; i<names.length; i++) {
+			String column = tableColumns.contains(names[i]) ? names[i] : lowerCaseColumns.get(names[i].toLowerCase(Locale.ROOT));
+			if (column == null) throw new CsvException("Unknown column in "+table+": "+names[i]);
+			rc[i] = quote.isEmpty() ? column : quote+column.replace(quote, quote+quote)+quote;
+		}
+		return rc;
+	}
+
+	/**
+	 * Returns the metadata search pattern for an unquoted identifier.
+	 * @param meta the database metadata
+	 * @param identifier the identifier
+	 * @return the identifier in the case stored by the database with wildcards escaped
+	 * @throws SQLException when the metadata cannot be read
+	 */
+	private static String getPattern(DatabaseMetaData meta, String identifier) throws SQLException {
+		if (meta.storesUpperCaseIdentifiers()) identifier = identifier.toUpperCase(Locale.ROOT);
+		else if (meta.storesLowerCaseIdentifiers()) identifier = identifier.toLowerCase(Locale.ROOT);
+		String escape = meta.getSearchStringEscape();
+		if ((escape == null) || escape.isEmpty()) return identifier;
+		return identifier.replace(escape, escape+escape).replace("_", escape+"_").replace("%", escape+"%");
+	}
+
+	/**
+	 * Binds the pending rows to the statement and adds them to the batch.
+	 * @param stmt the statement
+	 * @param rowCount number of pending rows to bind
+	 * @throws SQLException when the rows cannot be bound
+	 */
+	private void addBatch(PreparedStatement stmt, int rowCount) throws SQLException {
+		int parameter = 1;
+		for (int r=0; r<rowCount; r++) {
+			Object row[] = pendingRows[r];
+			for (int i=0; i<row.length; i++) {
+				setValue(stmt, parameter++, row[i]);
+				row[i] = null;
+			}
+		}
+		stmt.addBatch();
+		pendingCount -= rowCount;
+		batchRows += rowCount;
+	}
+
+	/**
+	 * Executes the current batch and commits when the commit interval is reached.
+	 * @throws SQLException when the batch fails
+	 */
+	private void executeBatch() throws SQLException {
+		if (batchRows == 0) return;
+		statement.executeBatch();
+		uncommittedRows += batchRows;
+		batchRows = 0;
+		if ((commitInterval > 0) && (uncommittedRows >= commitInterval)) commit();
+	}
+
+	/**
+	 * Commits the transaction.
+	 * @throws SQLException when the transaction cannot be committed
+	 */
+	private void commit() throws SQLException {
+		connection.commit();
+		uncommittedRows = 0;
+	}
+
+	/**
+	 * Sets a parameter of the statement.
+	 * Dates that are not JDBC types are set as timestamps. Nulls are set with
+	 * the SQL type of the parameter (see {@link #getNullType(PreparedStatement, int)}).
+	 * @param stmt the statement
+	 * @param parameter index of parameter (starting with 1)
+	 * @param value the value
+	 * @throws SQLException when the parameter cannot be set
+	 */
+	protected void setValue(PreparedStatement stmt, int parameter, Object value) throws SQLException {
+		if (value == null) {
+			stmt.setNull(parameter, getNullType(stmt, parameter));
+			return;
+		}
+		if ((value instanceof java.util.Date) && !(value instanceof java.sql.Date) && !(value instanceof java.sql.Time) && !(value instanceof Timestamp)) {
+			value = new Timestamp(((java.util.Date)value).getTime());
+		}
+		stmt.setObject(parameter, value);
+	}
+
+	/**
+	 * Returns the SQL type for setting a parameter to null.
+	 * The type is taken from the parameter metadata once per column,
+	 * {@link Types#NULL} when the driver does not provide it.
+	 * @param stmt the statement
+	 * @param parameter index of parameter (starting with 1)
+	 * @return the SQL type
+	 */
+	protected int getNullType(PreparedStatement stmt, int parameter) {
+		int column = (parameter-1) % nullTypes.length;
+		Integer rc = nullTypes[column];
+		if (rc == null) {
+			try {
+				rc = stmt.getParameterMetaData().getParameterType(parameter);
+			} catch (SQLException e) {
+				rc = Types.NULL;
+			}
+			nullTypes[column] = rc;
+		}
+		return rc;
+	}
+
+	/**
+	 * Inserts all rows written so far into the table.
+	 * The transaction is committed when the writer manages transactions.
+	 * Nothing is inserted after inserting rows failed.
+	 */
+	public void flush() {
+		if ((statement == null) || failed) return;
+		try {
+			if (pendingCount > 0) {
+				// Execute the full rows first to keep the order of rows
+				executeBatch();
+				if (singleStatement == null) singleStatement = connection.prepareStatement(createSql(1));
+				for (int r=0; r<pendingCount; r++) {
+					Object row[] = pendingRows[r];
+					for (int i=0; i<row.length; i++) {
+						setValue(singleStatement, i+1, row[i]);
+						row[i] = null;
+					}
+					singleStatement.addBatch();
+				}
+				batchRows = pendingCount;
+				pendingCount = 0;
+				singleStatement.executeBatch();
+				uncommittedRows += batchRows;
+				batchRows = 0;
+			} else {
+				executeBatch();
+			}
+			if ((commitInterval > 0) && (uncommittedRows > 0)) commit();
+		} catch (SQLException e) {
+			failed = true;
+			throw new CsvException("Cannot insert rows into "+table, e);
+		}
+	}
+
+	/**
+	 * Closes the writer.
+	 * Remaining rows are inserted and the transaction is committed when the writer manages transactions.
+	 * When inserting rows failed, the rows not yet committed are rolled back instead.
+	 * The connection is not closed.
+	 * @see csv.TableWriter#close()
+	 */
+	@Override
+	public void close() {
+		try {
+			flush();
+		} finally {
+			try {
+				if (statement != null) statement.close();
+				if (singleStatement != null) singleStatement.close();
+				if (autoCommit != null) {
+					if (failed) connection.rollback();
+					if (autoCommit) connection.setAutoCommit(true);
+				}
+			} catch (SQLException e) {
+				throw new CsvException("Cannot close statement", e);
+			} finally {
+				statement = null;
+				singleStatement = null;
+				autoCommit = null;
+				failed = false;
+				sourceIndexes = null;
+				targetColumns = null;
+				targetKeyColumns = null;
+				pendingRows = null;
+				nullTypes = null;
+				pendingCount = 0;
+				batchRows = 0;
+				uncommittedRows = 0;
+				super.close();
+			}
+		}
+	}
+
+	/**
+	 * Creates the SQL statement.
+	 * @param rowCount number of rows per statement
+	 * @return the SQL statement
+	 */
+	private String createSql(int rowCount) {
+		return keyColumns != null ? createUpsertSql(rowCount) : createInsertSql(rowCount);
+	}
+
+	/**
+	 * Creates the INSERT statement.
+	 * @param rowCount number of rows per statement
+	 * @return the SQL statement, e.g. <code>INSERT INTO table (a, b) VALUES (?, ?), (?, ?)</code>
+	 */
+	protected String createInsertSql(int rowCount) {
+		StringBuilder rc = new StringBuilder("INSERT INTO ");
+		rc.append(table);
+		if (targetColumns != null) {
+			rc.append(" (");
+			appendList(rc, "", targetColumns, "");
+			rc.append(')');
+		}
+		rc.append(" VALUES ");
+		appendParameters(rc, rowCount);
+		return rc.toString();
+	}
+
+	/**
+	 * Creates the MERGE statement.
+	 * @param rowCount number of rows per statement
+	 * @return the SQL statement, e.g. <code>MERGE INTO table t USING (VALUES (?, ?)) s (a, b) ON (t.a = s.a) WHEN MATCHED THEN UPDATE SET b = s.b WHEN NOT MATCHED THEN INSERT (a, b) VALUES (s.a, s.b)</code>
+	 */
+	protected String createUpsertSql(int rowCount) {
+		StringBuilder rc = new StringBuilder("MERGE INTO ");
+		rc.append(table);
+		rc.append(" t USING (VALUES ");
+		appendParameters(rc, rowCount);
+		rc.append(") s (");
+		appendList(rc, "", targetColumns, "");
+		rc.append(") ON (");
+		for (int i=0; i<targetKeyColumns.length; i++) {
+			if (i > 0) rc.append(" AND ");
+			rc.append("t.").append(targetKeyColumns[i]).append(" = s.").append(targetKeyColumns[i]);
+		}
+		rc.append(')');
+		List<String> keys = Arrays.asList(targetKeyColumns);
+		boolean first = true;
+		for (String column : targetColumns) {
+			if (keys.contains(column)) continue;
+			rc.append(first ? " WHEN MATCHED THEN UPDATE SET " : ", ");
+			rc.append(column).append(" = s.").append(column);
+			first = false;
+		}
+		rc.append(" WHEN NOT MATCHED THEN INSERT (");
+		appendList(rc, "", targetColumns, "");
+		rc.append(") VALUES (");
+		appendList(rc, "s.", targetColumns, "");
+		rc.append(')');
+		return rc.toString();
+	}
+
+	/**
+	 * Appends a comma separated list of names.
+	 * @param s the string to append to
+	 * @param prefix the prefix of each name
+	 * @param names the names
+	 * @param suffix the suffix of each name
+	 */
+	private static void appendList(StringBuilder s, String prefix, String names[], String suffix) {
+		for (int i=0; i<names.length; i++) {
+			if (i > 0) s.append(", ");
+			s.append(prefix).append(names[i]).append(suffix);
+		}
+	}
+
+	/**
+	 * Appends the parameter lists for the given number of rows.
+	 * @param s the string to append to
+	 * @param rowCount the number of rows
+	 */
+	private void appendParameters(StringBuilder s, int rowCount) {
+		for (int r=0; r<rowCount; r++) {
+			if (r > 0) s.append(", ");
+			s.append('(');
+			for (int i=0; i<sourceIndexes.length; i++) {
+				if (i > 0) s.append(", ");
+				s.append('?');
+			}
+			s.append(')');
+		}
+	}
+
+	/**
+	 * Throws an exception when rows were written already.
+	 * @param property name of property to be changed
+	 */
+	private void checkNotStarted(String property) {
+		if (sourceIndexes != null) throw new CsvException(property+" must be set before writing");
+	}
+
+	/**
+	 * Returns the target columns of the statement parameters.
+	 * Available to {@link #createInsertSql(int)} and {@link #createUpsertSql(int)}.
+	 * @return the quoted identifiers of the target columns, <code>null</code> when columns are not named
+	 */
+	protected String[] getTargetColumns() {
+		return targetColumns;
+	}
+
+	/**
+	 * Returns the key columns of the statement.
+	 * Available to {@link #createUpsertSql(int)}.
+	 * @return the quoted identifiers of the key columns, <code>null</code> when rows are inserted
+	 */
+	protected String[] getTargetKeyColumns() {
+		return targetKeyColumns;
+	}
+
+	/**
+	 * Returns the connection.
+	 * @return the connection
+	 */
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Returns the target table.
+	 * @return the table
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * Returns the target columns.
+	 * @return the target column for each column written, <code>null</code> for columns being skipped
+	 */
+	public String[] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Sets the target columns.
+	 * Columns written are mapped to the target columns by their index. Columns
+	 * without a target column (<code>null</code>) are skipped. When no columns are
+	 * set, the first row written defines the columns (see {@link #setHasHeaderRow(boolean)}).
+	 * @param columns the target column for each column written
+	 */
+	public void setColumns(String... columns) {
+		checkNotStarted("Columns");
+		this.columns = columns;
+	}
+
+	/**
+	 * Returns the key columns for upserts.
+	 * @return the key columns, <code>null</code> when rows are inserted
+	 */
+	public String[] getKeyColumns() {
+		return keyColumns;
+	}
+
+	/**
+	 * Sets the key columns for upserts.
+	 * Rows whose key columns match an existing row will update that row,
+	 * other rows are inserted.
+	 * @param keyColumns the key columns, <code>null</code> to insert rows only
+	 */
+	public void setKeyColumns(String... keyColumns) {
+		checkNotStarted("Key columns");
+		this.keyColumns = (keyColumns != null) && (keyColumns.length > 0) ? keyColumns : null;
+	}
+
+	/**
+	 * Returns true if the first row defines the target columns when no columns were set.
+	 * @return the hasHeaderRow
+	 */
+	public boolean isHasHeaderRow() {
+		return hasHeaderRow;
+	}
+
+	/**
+	 * Sets whether the first row defines the target columns when no columns were set.
+	 * Rows are inserted without naming the columns when there is no header row.
+	 * @param hasHeaderRow the hasHeaderRow to set (default is true)
+	 */
+	public void setHasHeaderRow(boolean hasHeaderRow) {
+		checkNotStarted("Header row");
+		this.hasHeaderRow = hasHeaderRow;
+	}
+
+	/**
+	 * Returns the number of rows per batch.
+	 * @return the batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of rows per batch.
+	 * @param batchSize the batch size (default is 1000)
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) throw new CsvException("Batch size must be positive: "+batchSize);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns the number of rows per commit.
+	 * @return the commit interval, 0 when transactions are left to the caller
+	 */
+	public int getCommitInterval() {
+		return commitInterval;
+	}
+
+	/**
+	 * Sets the number of rows per commit.
+	 * The writer disables auto-commit while writing and commits after the batch that
+	 * reached the interval, and when closed. Auto-commit is restored on close.
+	 * @param commitInterval the commit interval, 0 to leave transactions to the caller (default)
+	 */
+	public void setCommitInterval(int commitInterval) {
+		checkNotStarted("Commit interval");
+		if (commitInterval < 0) throw new CsvException("Commit interval must not be negative: "+commitInterval);
+		this.commitInterval = commitInterval;
+	}
+
+	/**
+	 * Returns the number of rows per statement.
+	 * @return the number of rows
+	 */
+	public int getRowsPerStatement() {
+		return rowsPerStatement;
+	}
+
+	/**
+	 * Sets the number of rows per statement.
+	 * Values of several rows will be passed in one statement, e.g. <code>INSERT INTO table VALUES (?, ?), (?, ?)</code>.
+	 * Mind the limit of parameters per statement of your database.
+	 * @param rowsPerStatement the number of rows (default is 1)
+	 */
+	public void setRowsPerStatement(int rowsPerStatement) {
+		checkNotStarted("Rows per statement");
+		if (rowsPerStatement < 1) throw new CsvException("Rows per statement must be positive: "+rowsPerStatement);
+		this.rowsPerStatement = rowsPerStatement;
+	}
+
+}
@@ -0,0 +1,546 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import csv.CsvException;
+import csv.util.CSVUtils;
+
+/**
+ * Reads the result of a query by splitting it into ranges that are queried concurrently.
+ * <p>
+ * The range of the split column (a numeric, date or timestamp column) is divided into
+ * partitions of equal width. Each partition is queried by a worker thread with its own
+ * connection from the data source, e.g. <code>SELECT * FROM (query) q WHERE col &gt;= ? AND col &lt; ?</code>.
+ * Rows with a <code>NULL</code> value in the split column belong to the first partition.
+ * The range is determined by a <code>MIN</code>/<code>MAX</code> query unless set by
+ * {@link #setBounds(Object, Object)}.
+ * </p>
+ * <p>
+ * Rows are delivered as soon as any partition has read them. The rows of an
+ * {@link #setOrdered(boolean) ordered} reader are delivered partition by partition and
+ * sorted by the split column instead. Column names of the query must be unique.
+ * </p>
+ * @author RalphSchuster
+ * @since 4.4
+ */
+public class PartitionedJdbcReader extends AbstractTableReader {
+
+	/** Marks the end of a partition */
+	private static final Object END[][] = new Object[0][];
+	/** Number of rows passed at once from a worker */
+	private static final int BATCH_SIZE = 256;
+	/** Number of batches that can be queued per partition */
+	private static final int QUEUE_CAPACITY = 4;
+
+	/** The data source */
+	private DataSource dataSource;
+	/** The query */
+	private String query;
+	/** The split column */
+	private String splitColumn;
+	/** Number of partitions */
+	private int partitions;
+	/** Number of threads */
+	private int parallelism;
+	/** Whether rows are delivered in order */
+	private boolean ordered = false;
+	/** Number of rows the driver shall fetch per round trip */
+	private int fetchSize = 0;
+	/** Smallest value of split column */
+	private Object minValue = null;
+	/** Largest value of split column */
+	private Object maxValue = null;
+
+	/** The workers */
+	private ExecutorService executor = null;
+	/** Queues of rows read */
+	private List<BlockingQueue<Object[][]>> queues = null;
+	/** Index of queue being read (ordered) */
+	private int queueIndex = 0;
+	/** Number of partitions finished (unordered) */
+	private int finishedPartitions = 0;
+	/** Number of partitions actually queried */
+	private int partitionCount = 0;
+	/** The column names as reported by the first partition */
+	private CompletableFuture<String[]> columnNames = null;
+	/** The first error of a worker */
+	private volatile Throwable failure = null;
+	/** The batch being delivered */
+	private Object batch[][] = null;
+	/** Index of next row in batch */
+	private int batchIndex = 0;
+	/** The next row */
+	private Object nextRow[] = null;
+
+	/**
+	 * Constructor.
+	 * @param dataSource the data source providing the connections
+	 * @param query the SQL query
+	 * @param splitColumn the numeric or date column to split the query by
+	 * @param partitions the number of partitions
+	 */
+	public PartitionedJdbcReader(DataSource dataSource, String query, String splitColumn, int partitions) {
+		if (partitions < 1) throw new CsvException("Number of partitions must be positive: "+partitions);
+		this.dataSource = dataSource;
+		this.query = query;
+		this.splitColumn = splitColumn;
+		this.partitions = partitions;
+		this.parallelism = partitions;
+		setHasHeaderRow(true);
+	}
+
+	/**
+	 * Starts the workers if not done yet.
+	 */
+	protected void start() {
+		if (executor != null) return;
+		Object splitPoints[] = getSplitPoints();
+		partitionCount = splitPoints != null ? splitPoints.length+1 : 1;
+		int queueCount = ordered ? partitionCount : 1;
+		queues = new ArrayList<>(queueCount);
+		for (int i=0; i<queueCount; i++) {
+			queues.add(new ArrayBlockingQueue<>(ordered ? QUEUE_CAPACITY : QUEUE_CAPACITY*Math.min(parallelism, partitionCount)));
+		}
+		queueIndex = 0;
+		finishedPartitions = 0;
+		failure = null;
+		columnNames = new CompletableFuture<>();
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(Math.min(parallelism, partitionCount), r -> {
+			Thread rc = new Thread(r, "PartitionedJdbcReader-"+threadCount.incrementAndGet());
+			rc.setDaemon(true);
+			return rc;
+		});
+		for (int i=0; i<partitionCount; i++) {
+			Object lower = (splitPoints != null) && (i > 0) ? splitPoints[i-1] : null;
+			Object upper = (splitPoints != null) && (i < splitPoints.length) ? splitPoints[i] : null;
+			executor.execute(new PartitionTask(createPartitionSql(i, partitionCount), lower, upper, queues.get(ordered ? i : 0)));
+		}
+		// All partitions are submitted, the workers terminate when they are read
+		executor.shutdown();
+	}
+
+	/**
+	 * Stops the workers.
+	 */
+	protected void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		queues = null;
+		batch = null;
+		batchIndex = 0;
+		nextRow = null;
+	}
+
+	/**
+	 * Returns the values dividing the range of the split column into partitions.
+	 * @return the split points in ascending order or null when the query shall not be split
+	 */
+	private Object[] getSplitPoints() {
+		if (partitions == 1) return null;
+		Object min = minValue;
+		Object max = maxValue;
+		if ((min == null) || (max == null)) {
+			String sql = "SELECT MIN("+splitColumn+"), MAX("+splitColumn+") FROM ("+query+") q";
+			try (Connection con = dataSource.getConnection(); Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+				if (rs.next()) {
+					min = rs.getObject(1);
+					max = rs.getObject(2);
+				}
+			} catch (SQLException e) {
+				throw new CsvException("Cannot determine range of "+splitColumn, e);
+			}
+			// Empty result
+			if ((min == null) || (max == null)) return null;
+		}
+
+		Object rc[] = new Object[partitions-1];
+		if ((min instanceof Date) && (max instanceof Date)) {
+			long lo = ((Date)min).getTime();
+			long hi = ((Date)max).getTime();
+			for (int i=1; i<partitions; i++) {
+				rc[i-1] = new Timestamp(lo + (long)((double)(hi-lo) * i / partitions));
+			}
+		} else if ((min instanceof LocalDate) && (max instanceof LocalDate)) {
+			LocalDate lo = (LocalDate)min;
+			long days = ChronoUnit.DAYS.between(lo, (LocalDate)max);
+			for (int i=1; i<partitions; i++) {
+				rc[i-1] = lo.plusDays(Math.floorDiv(days * i, partitions));
+			}
+		} else if ((min instanceof Temporal) && (min.getClass() == max.getClass()) && ((Temporal)min).isSupported(ChronoUnit.NANOS)) {
+			// LocalDateTime, OffsetDateTime, ZonedDateTime, Instant
+			Temporal lo = (Temporal)min;
+			Duration range = Duration.between(lo, (Temporal)max);
+			for (int i=1; i<partitions; i++) {
+				rc[i-1] = lo.plus(range.multipliedBy(i).dividedBy(partitions));
+			}
+		} else if ((min instanceof Number) && (max instanceof Number)) {
+			BigDecimal lo = toBigDecimal((Number)min);
+			BigDecimal range = toBigDecimal((Number)max).subtract(lo);
+			boolean integral = (lo.stripTrailingZeros().scale() <= 0) && (range.stripTrailingZeros().scale() <= 0);
+			BigDecimal n = BigDecimal.valueOf(partitions);
+			for (int i=1; i<partitions; i++) {
+				BigDecimal offset = range.multiply(BigDecimal.valueOf(i));
+				offset = integral ? offset.divide(n, 0, RoundingMode.FLOOR) : offset.divide(n, MathContext.DECIMAL64);
+				rc[i-1] = lo.add(offset);
+			}
+		} else {
+			throw new CsvException("Cannot split by "+splitColumn+" (not a numeric or date column)");
+		}
+		return rc;
+	}
+
+	/**
+	 * Converts a number.
+	 * @param n the number
+	 * @return the number as BigDecimal
+	 */
+	private static BigDecimal toBigDecimal(Number n) {
+		if (n instanceof BigDecimal) return (BigDecimal)n;
+		if (n instanceof BigInteger) return new BigDecimal((BigInteger)n);
+		if ((n instanceof Double) || (n instanceof Float)) return BigDecimal.valueOf(n.doubleValue());
+		return BigDecimal.valueOf(n.longValue());
+	}
+
+	/**
+	 * Creates the query of a partition.
+	 * The query has a parameter for each bound of the partition: the first partition
+	 * has an upper bound only, the last partition a lower bound only.
+	 * @param partition index of partition
+	 * @param count number of partitions
+	 * @return the SQL query
+	 */
+	protected String createPartitionSql(int partition, int count) {
+		StringBuilder rc = new StringBuilder("SELECT * FROM (");
+		rc.append(query);
+		rc.append(") q");
+		if (count > 1) {
+			if (partition == 0) {
+				rc.append(" WHERE (").append(splitColumn).append(" < ? OR ").append(splitColumn).append(" IS NULL)");
+			} else if (partition == count-1) {
+				rc.append(" WHERE ").append(splitColumn).append(" >= ?");
+			} else {
+				rc.append(" WHERE ").append(splitColumn).append(" >= ? AND ").append(splitColumn).append(" < ?");
+			}
+		}
+		if (ordered) rc.append(" ORDER BY ").append(splitColumn);
+		return rc.toString();
+	}
+
+	/**
+	 * Reads the header row.
+	 * The column names are reported by the first partition executed.
+	 */
+	@Override
+	protected void readHeaderRow() {
+		start();
+		try {
+			setHeaderRow(CSVUtils.extendArray(columnNames.get(), getMinimumColumnCount()));
+		} catch (ExecutionException e) {
+			throw new CsvException("Cannot read column names", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CsvException("Reading column names was interrupted", e);
+		}
+	}
+
+	/**
+	 * Returns true if there are more rows to be delivered.
+	 * @see java.util.Iterator#hasNext()
+	 */
+	@Override
+	public boolean hasNext() {
+		if (nextRow == null) nextRow = readNextRow();
+		return nextRow != null;
+	}
+
+	/**
+	 * Returns the next row.
+	 * @see java.util.Iterator#next()
+	 */
+	@Override
+	public Object[] next() {
+		if (nextRow == null) nextRow = readNextRow();
+		Object rc[] = nextRow;
+		nextRow = null;
+		incrementRowCount();
+		return rc;
+	}
+
+	/**
+	 * Reads the next row from the partitions.
+	 * @return the next row or null when all partitions were read
+	 */
+	protected Object[] readNextRow() {
+		start();
+		while ((batch == null) || (batchIndex >= batch.length)) {
+			batch = nextBatch();
+			batchIndex = 0;
+			if (batch == null) return null;
+		}
+		Object rc[] = batch[batchIndex];
+		batch[batchIndex++] = null;
+		return rc;
+	}
+
+	/**
+	 * Returns the next batch of rows.
+	 * @return the batch or null when all partitions were read
+	 */
+	private Object[][] nextBatch() {
+		try {
+			while (ordered ? queueIndex < queues.size() : finishedPartitions < partitionCount) {
+				Object rc[][] = queues.get(ordered ? queueIndex : 0).take();
+				if (failure != null) throw new CsvException("Cannot read partition", failure);
+				if (rc != END) return rc;
+				if (ordered) queueIndex++;
+				else finishedPartitions++;
+			}
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CsvException("Reading partitions was interrupted", e);
+		}
+	}
+
+	/**
+	 * Not supported.
+	 * @see java.util.Iterator#remove()
+	 */
+	@Override
+	public void remove() {
+		throw new CsvException("Remove is not supported.");
+	}
+
+	/**
+	 * Resets the reader.
+	 * The partitions will be queried again.
+	 * @see csv.TableReader#reset()
+	 */
+	@Override
+	public void reset() {
+		stop();
+		super.reset();
+	}
+
+	/**
+	 * Closes the reader and stops the workers.
+	 * @see csv.TableReader#close()
+	 */
+	@Override
+	public void close() {
+		stop();
+		super.close();
+	}
+
+	/**
+	 * Throws an exception when reading has started already.
+	 * @param property name of property to be changed
+	 */
+	private void checkNotStarted(String property) {
+		if (executor != null) throw new CsvException(property+" must be set before reading");
+	}
+
+	/**
+	 * Returns the number of partitions.
+	 * @return the number of partitions
+	 */
+	public int getPartitions() {
+		return partitions;
+	}
+
+	/**
+	 * Returns the split column.
+	 * @return the split column
+	 */
+	public String getSplitColumn() {
+		return splitColumn;
+	}
+
+	/**
+	 * Returns the number of partitions queried concurrently.
+	 * @return the number of threads
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of partitions queried concurrently.
+	 * Each thread uses its own connection.
+	 * @param parallelism the number of threads (default is the number of partitions)
+	 */
+	public void setParallelism(int parallelism) {
+		checkNotStarted("Parallelism");
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Returns whether rows are delivered in order of the split column.
+	 * @return the ordered
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Sets whether rows are delivered in order of the split column.
+	 * Unordered readers deliver rows as soon as any partition has read them.
+	 * Ordered readers deliver the partitions one after another. A partition that is
+	 * not being delivered yet buffers a few batches of rows only and then waits, so
+	 * partitions larger than that buffer are mostly read one after another.
+	 * @param ordered the ordered to set (default is false)
+	 */
+	public void setOrdered(boolean ordered) {
+		checkNotStarted("Order");
+		this.ordered = ordered;
+	}
+
+	/**
+	 * Returns the number of rows the driver shall fetch per round trip.
+	 * @return the fetch size, 0 when the driver's default is used
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Sets the number of rows the driver shall fetch per round trip.
+	 * @param fetchSize the fetch size, 0 to use the driver's default
+	 */
+	public void setFetchSize(int fetchSize) {
+		checkNotStarted("Fetch size");
+		if (fetchSize < 0) throw new CsvException("Fetch size must not be negative: "+fetchSize);
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Sets the range of the split column.
+	 * The range is queried from the database when not set. Rows outside the range
+	 * are read by the first or last partition.
+	 * @param minValue smallest value of split column (number, {@link Date} or <code>java.time</code> date or timestamp)
+	 * @param maxValue largest value of split column (same type as minValue)
+	 */
+	public void setBounds(Object minValue, Object maxValue) {
+		checkNotStarted("Bounds");
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+	}
+
+	/**
+	 * Queries a partition and passes the rows to the reader.
+	 */
+	private class PartitionTask implements Runnable {
+
+		/** The query */
+		private String sql;
+		/** The lower bound (inclusive) */
+		private Object lower;
+		/** The upper bound (exclusive) */
+		private Object upper;
+		/** The queue to pass rows to */
+		private BlockingQueue<Object[][]> queue;
+
+		/**
+		 * Constructor.
+		 * @param sql the query of the partition
+		 * @param lower the lower bound or null
+		 * @param upper the upper bound or null
+		 * @param queue the queue to pass rows to
+		 */
+		public PartitionTask(String sql, Object lower, Object upper, BlockingQueue<Object[][]> queue) {
+			this.sql = sql;
+			this.lower = lower;
+			this.upper = upper;
+			this.queue = queue;
+		}
+
+		/**
+		 * Queries the partition.
+		 */
+		@Override
+		public void run() {
+			try (Connection con = dataSource.getConnection(); PreparedStatement stmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+				if (fetchSize > 0) stmt.setFetchSize(fetchSize);
+				int parameter = 1;
+				if (lower != null) stmt.setObject(parameter++, lower);
+				if (upper != null) stmt.setObject(parameter++, upper);
+				try (ResultSet rs = stmt.executeQuery()) {
+					JdbcReader reader = new JdbcReader(rs);
+					Object header[] = reader.getHeaderRow();
+					String names[] = new String[header.length];
+					for (int i=0; i<names.length; i++) names[i] = (String)header[i];
+					columnNames.complete(names);
+					Object rows[][] = new Object[BATCH_SIZE][];
+					int count = 0;
+					while (reader.hasNext()) {
+						rows[count++] = reader.next();
+						if (count == rows.length) {
+							queue.put(rows);
+							rows = new Object[BATCH_SIZE][];
+							count = 0;
+						}
+					}
+					if (count > 0) queue.put(Arrays.copyOf(rows, count));
+				}
+			} catch (InterruptedException e) {
+				// Reader was closed
+				return;
+			} catch (Throwable t) {
+				if (failure == null) failure = t;
+				columnNames.completeExceptionally(t);
+			}
+			try {
+				queue.put(END);
+			} catch (InterruptedException e) {
+				// Reader was closed
+			}
+		}
+	}
+
+}
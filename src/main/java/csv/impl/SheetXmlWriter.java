@@ -0,0 +1,248 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+import rs.baselib.type.MonetaryValue;
+
+/**
+ * Writes rows of a SpreadsheetML worksheet as XML.
+ * <p>
+ * Texts are written as inline strings. Numbers and dates refer to one of the
+ * cell styles given at construction time.
+ * </p>
+ * @author RalphSchuster
+ * @since 4.4
+ */
+class SheetXmlWriter {
+
+	/** Index of style for texts and booleans */
+	static final int STYLE_GENERAL  = 0;
+	/** Index of style for dates */
+	static final int STYLE_DATE     = 1;
+	/** Index of style for date/times */
+	static final int STYLE_DATETIME = 2;
+	/** Index of style for integers */
+	static final int STYLE_INTEGER  = 3;
+	/** Index of style for decimal numbers */
+	static final int STYLE_REAL     = 4;
+
+	/** Day 0 of Excel's 1900 date system */
+	private static final LocalDateTime EXCEL_EPOCH = LocalDateTime.of(1899, 12, 30, 0, 0);
+	/** Number of nanoseconds per day */
+	private static final double NANOS_PER_DAY = 24d*60*60*1000000000L;
+
+	/** The writer */
+	private Writer out;
+	/** The cell style indexes, indexed by the style constants */
+	private String styles[];
+	/** Cached column names */
+	private String columnNames[] = new String[0];
+	/** Number of columns */
+	private int maxColumns = 0;
+
+	/**
+	 * Constructor.
+	 * @param out the writer
+	 * @param styles the cell style indexes for the style constants
+	 */
+	public SheetXmlWriter(Writer out, int styles[]) {
+		this.out = out;
+		this.styles = new String[styles.length];
+		for (int i=0; i<styles.length; i++) this.styles[i] = Integer.toString(styles[i]);
+	}
+
+	/**
+	 * Returns the number of columns written.
+	 * @return index of last column plus 1
+	 */
+	public int getMaxColumns() {
+		return maxColumns;
+	}
+
+	/**
+	 * Writes a row.
+	 * @param rowNum index of row
+	 * @param columns the converted values of the row
+	 * @throws IOException when the row cannot be written
+	 */
+	public void writeRow(int rowNum, Object columns[]) throws IOException {
+		String row = Integer.toString(rowNum+1);
+		out.write("<row r=\"");
+		out.write(row);
+		out.write("\">");
+		for (int i=0; i<columns.length; i++) {
+			if (columns[i] != null) {
+				writeCell(getColumnName(i)+row, columns[i]);
+				if (i >= maxColumns) maxColumns = i+1;
+			}
+		}
+		out.write("</row>\n");
+	}
+
+	/**
+	 * Writes a cell.
+	 * @param ref the cell reference
+	 * @param value the value of the cell
+	 * @throws IOException when the cell cannot be written
+	 */
+	protected void writeCell(String ref, Object value) throws IOException {
+		if (value instanceof Date) {
+			writeNumber(ref, getExcelDate(LocalDateTime.ofInstant(((Date)value).toInstant(), ZoneId.systemDefault())), STYLE_DATETIME);
+		} else if (value instanceof LocalDate) {
+			writeNumber(ref, getExcelDate(((LocalDate)value).atStartOfDay()), STYLE_DATE);
+		} else if (value instanceof LocalDateTime) {
+			writeNumber(ref, getExcelDate((LocalDateTime)value), STYLE_DATETIME);
+		} else if (value instanceof ZonedDateTime) {
+			writeNumber(ref, getExcelDate(((ZonedDateTime)value).toLocalDateTime()), STYLE_DATETIME);
+		} else if (value instanceof MonetaryValue) {
+			writeNumber(ref, Double.toString(((MonetaryValue)value).getDouble()), STYLE_REAL);
+		} else if ((value instanceof Integer) || (value instanceof Long) || (value instanceof Short) || (value instanceof Byte) || (value instanceof BigInteger)) {
+			writeNumber(ref, value.toString(), STYLE_INTEGER);
+		} else if (value instanceof BigDecimal) {
+			writeNumber(ref, ((BigDecimal)value).toPlainString(), STYLE_REAL);
+		} else if (value instanceof Number) {
+			double d = ((Number)value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				writeString(ref, value.toString());
+			} else {
+				writeNumber(ref, Double.toString(d), STYLE_REAL);
+			}
+		} else if (value instanceof Boolean) {
+			out.write("<c r=\"");
+			out.write(ref);
+			out.write("\" t=\"b\"><v>");
+			out.write(((Boolean)value).booleanValue() ? "1" : "0");
+			out.write("</v></c>");
+		} else {
+			writeString(ref, value.toString());
+		}
+	}
+
+	/**
+	 * Writes a numeric cell.
+	 * @param ref the cell reference
+	 * @param value the number
+	 * @param style the style constant
+	 * @throws IOException when the cell cannot be written
+	 */
+	protected void writeNumber(String ref, String value, int style) throws IOException {
+		out.write("<c r=\"");
+		out.write(ref);
+		out.write("\" s=\"");
+		out.write(styles[style]);
+		out.write("\"><v>");
+		out.write(value);
+		out.write("</v></c>");
+	}
+
+	/**
+	 * Writes an inline string cell.
+	 * @param ref the cell reference
+	 * @param value the text
+	 * @throws IOException when the cell cannot be written
+	 */
+	protected void writeString(String ref, String value) throws IOException {
+		out.write("<c r=\"");
+		out.write(ref);
+		out.write("\" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+		writeEscaped(value);
+		out.write("</t></is></c>");
+	}
+
+	/**
+	 * Writes a text with XML special characters escaped.
+	 * Characters not allowed in XML are encoded the way Excel does ("_xHHHH_").
+	 * @param s the text
+	 * @throws IOException when the text cannot be written
+	 */
+	protected void writeEscaped(String s) throws IOException {
+		int len = s.length();
+		int start = 0;
+		for (int i=0; i<len; i++) {
+			char c = s.charAt(i);
+			String replacement;
+			switch (c) {
+			case '<': replacement = "&lt;"; break;
+			case '>': replacement = "&gt;"; break;
+			case '&': replacement = "&amp;"; break;
+			case '\r': replacement = "_x000D_"; break;
+			case '_':
+				// Protect text that looks like an encoded character
+				replacement = (i+6 < len) && (s.charAt(i+1) == 'x') && (s.charAt(i+6) == '_') ? "_x005F_" : null;
+				break;
+			default:
+				replacement = (c < 0x20) && (c != '\t') && (c != '\n') ? String.format("_x%04X_", (int)c) : null;
+			}
+			if (replacement != null) {
+				out.write(s, start, i-start);
+				out.write(replacement);
+				start = i+1;
+			}
+		}
+		out.write(s, start, len-start);
+	}
+
+	/**
+	 * Returns the Excel serial number of a date.
+	 * Dates before March 1st, 1900 are not adjusted for Excel's leap year bug.
+	 * @param value the date
+	 * @return the number of days since Excel's epoch
+	 */
+	public static String getExcelDate(LocalDateTime value) {
+		// Whole days and fraction separately as nanoseconds overflow after year 2192
+		long days = EXCEL_EPOCH.toLocalDate().until(value.toLocalDate(), ChronoUnit.DAYS);
+		long nanos = value.toLocalTime().toNanoOfDay();
+		if (nanos == 0) return Long.toString(days);
+		return Double.toString(days + nanos / NANOS_PER_DAY);
+	}
+
+	/**
+	 * Returns the name of the column, e.g. "A", "B", ..., "AA".
+	 * @param column index of column
+	 * @return the name of the column
+	 */
+	public String getColumnName(int column) {
+		if (column >= columnNames.length) {
+			String names[] = new String[Math.max(column+1, columnNames.length*2)];
+			System.arraycopy(columnNames, 0, names, 0, columnNames.length);
+			columnNames = names;
+		}
+		String rc = columnNames[column];
+		if (rc == null) {
+			StringBuilder s = new StringBuilder();
+			for (int i=column+1; i>0; i=(i-1)/26) {
+				s.insert(0, (char)('A'+(i-1)%26));
+			}
+			rc = s.toString();
+			columnNames[column] = rc;
+		}
+		return rc;
+	}
+
+}
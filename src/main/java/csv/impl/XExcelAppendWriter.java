@@ -0,0 +1,766 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import csv.CsvException;
+
+/**
+ * Appends rows to a sheet of an existing Excel 2007+ (.xlsx) file without loading the workbook.
+ * <p>
+ * Rows are written into a temporary file when they are printed. On {@link #close()} the
+ * file is rewritten: unchanged parts are copied as they are (without decompressing them),
+ * the XML of the sheet is streamed through with the new rows added at the end of its data
+ * and its dimension updated. The styles part is extended by the cell styles required for
+ * dates and numbers if the workbook does not contain them yet. Texts are written as inline strings.
+ * Costs are proportional to the size of the file, not to the size of the workbook in memory.
+ * The file can only be read after {@link #close()}, so the writer ignores the
+ * {@link #setFlushInterval(int) flush interval}.
+ * </p>
+ * <p>
+ * Ranges that refer to the sheet, e.g. tables, autofilters or defined names, are not extended.
+ * </p>
+ * <pre>
+XExcelAppendWriter out = new XExcelAppendWriter(new java.io.File("year.xlsx"));
+out.setSheetName("Daily");
+out.printRow(new Object[] { java.time.LocalDate.now(), 17, 3.5d });
+out.close();
+</pre>
+ * @author RalphSchuster
+ * @since 4.4
+ */
+public class XExcelAppendWriter extends AbstractStreamTableWriter {
+
+	/** Namespace of relationships */
+	private static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+	/** Relationship type of the workbook */
+	private static final String REL_OFFICE_DOCUMENT = NS_RELATIONSHIPS+"/officeDocument";
+	/** Relationship type of the styles */
+	private static final String REL_STYLES = NS_RELATIONSHIPS+"/styles";
+	/** Pattern for the row number of a row element */
+	private static final Pattern ROW_NUMBER = Pattern.compile("\\sr\\s*=\\s*[\"'](\\d+)[\"']");
+	/** Pattern for the reference of a dimension element */
+	private static final Pattern DIMENSION_REF = Pattern.compile("(\\sref\\s*=\\s*[\"'])([^\"']*)([\"'])");
+
+	/** The file to append to */
+	private File source;
+	/** The temporary file replacing the source on close, null when writing into a stream */
+	private File target;
+	/** Name of the sheet to append to */
+	private String sheetName;
+	/** Index of the sheet to append to */
+	private int sheetIndex = 0;
+	/** Date format of date cells */
+	private String dateFormat = DefaultExcelFormatter.DEFAULT_DATE_FORMAT;
+	/** Date format of date/time cells */
+	private String dateTimeFormat = DefaultExcelFormatter.DEFAULT_DATETIME_FORMAT;
+	/** The source file */
+	private ZipFile zip;
+	/** Name of the sheet part */
+	private String sheetPart;
+	/** Name of the styles part */
+	private String stylesPart;
+	/** The styles */
+	private Document styles;
+	/** Whether styles were added */
+	private boolean stylesModified;
+	/** The reference of the sheet's dimension */
+	private String dimension;
+	/** Index of the first appended row */
+	private int firstRowNum;
+	/** Index of next row */
+	private int rowNum;
+	/** Temporary file for the appended rows */
+	private File rowsFile;
+	/** Writer for the appended rows */
+	private Writer rowsOut;
+	/** Writes the rows */
+	private SheetXmlWriter sheetWriter;
+
+	/**
+	 * Constructor for appending to a file.
+	 * The file will be replaced on {@link #close()}.
+	 * @param file the file to append to
+	 * @throws IOException when the temporary file cannot be created
+	 */
+	public XExcelAppendWriter(File file) throws IOException {
+		this(file, File.createTempFile("csv-append", ".tmp", file.getAbsoluteFile().getParentFile()));
+	}
+
+	/**
+	 * Constructor for appending to a file.
+	 * The file will be replaced on {@link #close()}.
+	 * @param file the file to append to
+	 * @throws IOException when the temporary file cannot be created
+	 */
+	public XExcelAppendWriter(String file) throws IOException {
+		this(new File(file));
+	}
+
+	/**
+	 * Constructor for writing a copy of a file with rows appended into a stream.
+	 * @param source the file to be copied
+	 * @param out output stream to be used
+	 */
+	public XExcelAppendWriter(File source, OutputStream out) {
+		super(out);
+		this.source = source;
+	}
+
+	/**
+	 * Constructor.
+	 * @param source the file to append to
+	 * @param target the temporary file
+	 * @throws IOException when the temporary file cannot be opened
+	 */
+	private XExcelAppendWriter(File source, File target) throws IOException {
+		super(target);
+		this.source = source;
+		this.target = target;
+	}
+
+	/**
+	 * Prints the values into the next row of the sheet.
+	 * @param columns values to be written
+	 * @throws IOException when the values cannot be written
+	 * @see csv.TableWriter#printRow(java.lang.Object[])
+	 */
+	@Override
+	public void printRow(Object[] columns) throws IOException {
+		ensureStarted();
+		if (rowNum >= SpreadsheetVersion.EXCEL2007.getMaxRows()) throw new CsvException("Maximum number of rows exceeded: "+rowNum);
+		Object values[] = new Object[columns.length];
+		for (int i=0; i<columns.length; i++) values[i] = convert(columns[i]);
+		sheetWriter.writeRow(rowNum, values);
+		rowNum++;
+		incrementRowCount();
+	}
+
+	/**
+	 * Opens the source file and finds the sheet, its last row and the required styles if not done yet.
+	 * @throws IOException when the file cannot be read
+	 */
+	protected void ensureStarted() throws IOException {
+		if (zip != null) return;
+		zip = ZipFile.builder().setFile(source).get();
+		try {
+			String workbookPart = getRelationshipTarget("", REL_OFFICE_DOCUMENT);
+			if (workbookPart == null) throw new CsvException("No workbook found: "+source);
+			Element sheet = findSheet(parse(workbookPart));
+			sheetPart = getRelationshipTarget(workbookPart, sheet.getAttributeNS(NS_RELATIONSHIPS, "id"));
+			stylesPart = getRelationshipTarget(workbookPart, REL_STYLES);
+			if ((sheetPart == null) || (stylesPart == null)) throw new CsvException("Invalid workbook: "+source);
+			try (Reader in = new InputStreamReader(getEntryStream(sheetPart), StandardCharsets.UTF_8)) {
+				firstRowNum = copySheet(in, null)+1;
+				rowNum = firstRowNum;
+			}
+			styles = parse(stylesPart);
+			int styleIndexes[] = new int[] {
+				0,
+				getCellStyle(getNumberFormat(dateFormat)),
+				getCellStyle(getNumberFormat(dateTimeFormat)),
+				getCellStyle(1),
+				getCellStyle(2)
+			};
+			rowsFile = File.createTempFile("csv-rows", ".tmp");
+			rowsOut  = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(rowsFile), StandardCharsets.UTF_8), 65536);
+			sheetWriter = new SheetXmlWriter(rowsOut, styleIndexes);
+		} catch (IOException|RuntimeException e) {
+			discard();
+			throw e;
+		} catch (Exception e) {
+			discard();
+			throw new CsvException("Cannot read workbook: "+source, e);
+		}
+	}
+
+	/**
+	 * Closes the source file, deletes the appended rows and resets the state of {@link #ensureStarted()}.
+	 */
+	private void discard() {
+		try {
+			if (rowsOut != null) rowsOut.close();
+			if (zip != null) zip.close();
+		} catch (IOException e) {
+			// Ignore, the files are not used anymore
+		}
+		if (rowsFile != null) rowsFile.delete();
+		rowsOut = null;
+		rowsFile = null;
+		sheetWriter = null;
+		zip = null;
+		sheetPart = null;
+		stylesPart = null;
+		styles = null;
+		stylesModified = false;
+		dimension = null;
+		firstRowNum = 0;
+		rowNum = 0;
+	}
+
+	/**
+	 * Returns the sheet element to append to.
+	 * @param workbook the workbook part
+	 * @return the sheet element
+	 */
+	protected Element findSheet(Document workbook) {
+		NodeList sheets = workbook.getElementsByTagNameNS("*", "sheet");
+		for (int i=0; i<sheets.getLength(); i++) {
+			Element sheet = (Element)sheets.item(i);
+			if ((sheetName != null) ? sheetName.equals(sheet.getAttribute("name")) : (i == sheetIndex)) return sheet;
+		}
+		throw new CsvException("No such sheet: "+(sheetName != null ? sheetName : sheetIndex));
+	}
+
+	/**
+	 * Returns the index of a number format in the styles, adds the format if required.
+	 * @param format the format code
+	 * @return the format index
+	 */
+	private int getNumberFormat(String format) {
+		Element root = styles.getDocumentElement();
+		Element numFmts = getChild(root, "numFmts");
+		int maxId = 163;
+		if (numFmts != null) {
+			for (Element numFmt : getChildren(numFmts, "numFmt")) {
+				int id = Integer.parseInt(numFmt.getAttribute("numFmtId"));
+				if (format.equals(numFmt.getAttribute("formatCode"))) return id;
+				maxId = Math.max(maxId, id);
+			}
+		} else {
+			numFmts = createElement(root, "numFmts");
+			root.insertBefore(numFmts, root.getFirstChild());
+		}
+		Element numFmt = createElement(root, "numFmt");
+		numFmt.setAttribute("numFmtId", Integer.toString(maxId+1));
+		numFmt.setAttribute("formatCode", format);
+		numFmts.appendChild(numFmt);
+		numFmts.setAttribute("count", Integer.toString(getChildren(numFmts, "numFmt").length));
+		stylesModified = true;
+		return maxId+1;
+	}
+
+	/**
+	 * Returns the index of a plain cell style with given number format, adds the style if required.
+	 * @param numFmtId the format index
+	 * @return the style index
+	 */
+	private int getCellStyle(int numFmtId) {
+		Element root = styles.getDocumentElement();
+		Element cellXfs = getChild(root, "cellXfs");
+		if (cellXfs == null) throw new CsvException("Invalid styles: "+source);
+		Element xfs[] = getChildren(cellXfs, "xf");
+		String id = Integer.toString(numFmtId);
+		for (int i=0; i<xfs.length; i++) {
+			Element xf = xfs[i];
+			if (id.equals(xf.getAttribute("numFmtId")) && isDefault(xf, "fontId") && isDefault(xf, "fillId")
+					&& isDefault(xf, "borderId") && (getChild(xf, "alignment") == null)) return i;
+		}
+		Element xf = createElement(root, "xf");
+		xf.setAttribute("numFmtId", id);
+		xf.setAttribute("fontId", "0");
+		xf.setAttribute("fillId", "0");
+		xf.setAttribute("borderId", "0");
+		xf.setAttribute("xfId", "0");
+		xf.setAttribute("applyNumberFormat", "1");
+		cellXfs.appendChild(xf);
+		cellXfs.setAttribute("count", Integer.toString(xfs.length+1));
+		stylesModified = true;
+		return xfs.length;
+	}
+
+	/**
+	 * Returns whether the attribute is missing or 0.
+	 * @param e the element
+	 * @param name name of attribute
+	 * @return true when the attribute has the default value
+	 */
+	private static boolean isDefault(Element e, String name) {
+		String value = e.getAttribute(name);
+		return value.isEmpty() || "0".equals(value);
+	}
+
+	/**
+	 * Returns the first child element with given local name.
+	 * @param parent the parent element
+	 * @param name local name of child
+	 * @return the child or null
+	 */
+	private static Element getChild(Element parent, String name) {
+		Element children[] = getChildren(parent, name);
+		return children.length > 0 ? children[0] : null;
+	}
+
+	/**
+	 * Returns the child elements with given local name.
+	 * @param parent the parent element
+	 * @param name local name of children
+	 * @return the children
+	 */
+	private static Element[] getChildren(Element parent, String name) {
+		List<Element> rc = new ArrayList<>();
+		for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+			if ((n instanceof Element) && name.equals(n.getLocalName())) rc.add((Element)n);
+		}
+		return rc.toArray(new Element[rc.size()]);
+	}
+
+	/**
+	 * Creates an element in the namespace of the given element.
+	 * @param sibling element providing namespace and prefix
+	 * @param name local name of element
+	 * @return the new element
+	 */
+	private static Element createElement(Element sibling, String name) {
+		String prefix = sibling.getPrefix();
+		return sibling.getOwnerDocument().createElementNS(sibling.getNamespaceURI(), prefix != null ? prefix+":"+name : name);
+	}
+
+	/**
+	 * Returns the target of a relationship of a part.
+	 * @param part name of source part, empty for the package
+	 * @param idOrType the relationship ID or type
+	 * @return the name of the target part or null when no such relationship exists
+	 * @throws Exception when the relationships cannot be read
+	 */
+	private String getRelationshipTarget(String part, String idOrType) throws Exception {
+		int slash = part.lastIndexOf('/');
+		String dir = part.substring(0, slash+1);
+		Document rels = parse(dir+"_rels/"+part.substring(slash+1)+".rels");
+		NodeList list = rels.getElementsByTagNameNS("*", "Relationship");
+		for (int i=0; i<list.getLength(); i++) {
+			Element rel = (Element)list.item(i);
+			if (idOrType.equals(rel.getAttribute("Id")) || idOrType.equals(rel.getAttribute("Type"))) {
+				return URI.create("/"+dir).resolve(rel.getAttribute("Target")).getPath().substring(1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a part of the source file.
+	 * @param part name of part
+	 * @return the XML document
+	 * @throws Exception when the part cannot be read
+	 */
+	private Document parse(String part) throws Exception {
+		try (InputStream in = getEntryStream(part)) {
+			return XMLHelper.newDocumentBuilder().parse(in);
+		}
+	}
+
+	/**
+	 * Returns the uncompressed content of a part of the source file.
+	 * @param part name of part
+	 * @return the stream
+	 * @throws IOException when the part does not exist or cannot be read
+	 */
+	private InputStream getEntryStream(String part) throws IOException {
+		ZipArchiveEntry entry = zip.getEntry(part);
+		if (entry == null) throw new CsvException("Part not found: "+part);
+		return zip.getInputStream(entry);
+	}
+
+	/**
+	 * Copies the XML of a sheet and adds the appended rows.
+	 * Without a writer the XML is only scanned for the dimension and the last row.
+	 * @param in the XML of the sheet
+	 * @param out the writer or null
+	 * @return index of last row in the original sheet, -1 if the sheet has no rows
+	 * @throws IOException when the XML cannot be copied
+	 */
+	protected int copySheet(Reader in, Writer out) throws IOException {
+		TagReader reader = new TagReader(in, out);
+		int lastRow = -1;
+		String tag;
+		while ((tag = reader.nextTag()) != null) {
+			String name = getLocalName(tag);
+			if ("row".equals(name)) {
+				Matcher m = ROW_NUMBER.matcher(tag);
+				lastRow = m.find() ? Integer.parseInt(m.group(1))-1 : lastRow+1;
+			} else if ("dimension".equals(name)) {
+				Matcher m = DIMENSION_REF.matcher(tag);
+				if (m.find()) {
+					dimension = m.group(2);
+					if (out != null) tag = tag.substring(0, m.start(2))+getDimension()+tag.substring(m.end(2));
+				}
+			} else if ("sheetData".equals(name) && tag.endsWith("/>")) {
+				if (out == null) return lastRow;
+				String qname = tag.substring(1, tag.length()-2).trim().split("\\s")[0];
+				out.write(tag.substring(0, tag.length()-2).trim()+">");
+				copyRows(out);
+				tag = "</"+qname+">";
+			} else if ("/sheetData".equals(name)) {
+				if (out == null) return lastRow;
+				copyRows(out);
+			}
+			if (out != null) out.write(tag);
+		}
+		return lastRow;
+	}
+
+	/**
+	 * Copies the appended rows.
+	 * @param out the writer
+	 * @throws IOException when the rows cannot be copied
+	 */
+	private void copyRows(Writer out) throws IOException {
+		try (Reader rows = new InputStreamReader(Files.newInputStream(rowsFile.toPath()), StandardCharsets.UTF_8)) {
+			rows.transferTo(out);
+		}
+	}
+
+	/**
+	 * Returns the new dimension of the sheet.
+	 * @return the dimension reference
+	 */
+	private String getDimension() {
+		if (rowNum == firstRowNum) return dimension;
+		String refs[] = dimension != null ? dimension.split(":") : new String[] { "A1" };
+		CellReference first = new CellReference(refs[0]);
+		CellReference last = new CellReference(refs[refs.length-1]);
+		int lastColumn = Math.max(last.getCol(), sheetWriter.getMaxColumns()-1);
+		int lastRow = Math.max(last.getRow(), rowNum-1);
+		return first.formatAsString(false)+":"+CellReference.convertNumToColString(lastColumn)+(lastRow+1);
+	}
+
+	/**
+	 * Returns the local name of a tag, end tags are prefixed with '/'.
+	 * @param tag the tag
+	 * @return the local name
+	 */
+	private static String getLocalName(String tag) {
+		int start = 1;
+		int end = start;
+		while ((end < tag.length()) && (" \t\r\n/>".indexOf(tag.charAt(end)) < 0 || (end == start))) end++;
+		String qname = tag.substring(start, end);
+		boolean endTag = qname.startsWith("/");
+		int colon = qname.indexOf(':');
+		if (colon >= 0) qname = qname.substring(colon+1);
+		else if (endTag) qname = qname.substring(1);
+		return endTag ? "/"+qname : qname;
+	}
+
+	/**
+	 * Writes the workbook with the appended rows.
+	 * @throws IOException when the workbook cannot be written
+	 */
+	protected void writeWorkbook() throws IOException {
+		rowsOut.close();
+		ZipArchiveOutputStream out = new ZipArchiveOutputStream(getOutputStream());
+		for (ZipArchiveEntry entry : Collections.list(zip.getEntriesInPhysicalOrder())) {
+			String name = entry.getName();
+			if (name.equals(sheetPart)) {
+				out.putArchiveEntry(new ZipArchiveEntry(name));
+				Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 65536);
+				try (Reader in = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)) {
+					copySheet(in, writer);
+				}
+				writer.flush();
+				out.closeArchiveEntry();
+			} else if (name.equals(stylesPart) && stylesModified) {
+				out.putArchiveEntry(new ZipArchiveEntry(name));
+				try {
+					XMLHelper.newTransformer().transform(new DOMSource(styles), new StreamResult(out));
+				} catch (Exception e) {
+					throw new CsvException("Cannot write styles", e);
+				}
+				out.closeArchiveEntry();
+			} else {
+				out.addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+			}
+		}
+		out.finish();
+	}
+
+	/**
+	 * Returns the name of the sheet to append to.
+	 * @return the name of the sheet or null when the sheet is selected by index
+	 */
+	public String getSheetName() {
+		return sheetName;
+	}
+
+	/**
+	 * Sets the name of the sheet to append to.
+	 * The sheet must be set before the first row is written.
+	 * @param sheetName the name of the sheet
+	 */
+	public void setSheetName(String sheetName) {
+		checkNotStarted();
+		this.sheetName = sheetName;
+	}
+
+	/**
+	 * Returns the index of the sheet to append to.
+	 * @return the index of the sheet
+	 */
+	public int getSheetIndex() {
+		return sheetIndex;
+	}
+
+	/**
+	 * Sets the index of the sheet to append to.
+	 * The sheet must be set before the first row is written.
+	 * @param sheetIndex the index of the sheet (default is 0)
+	 */
+	public void setSheetIndex(int sheetIndex) {
+		checkNotStarted();
+		this.sheetIndex = sheetIndex;
+		this.sheetName = null;
+	}
+
+	/**
+	 * Returns the format of date cells.
+	 * @return the format
+	 */
+	public String getDateFormat() {
+		return dateFormat;
+	}
+
+	/**
+	 * Sets the format of date cells ({@link java.time.LocalDate}).
+	 * The format must be set before the first row is written.
+	 * @param dateFormat the Excel format (default is {@link DefaultExcelFormatter#DEFAULT_DATE_FORMAT})
+	 */
+	public void setDateFormat(String dateFormat) {
+		checkNotStarted();
+		this.dateFormat = dateFormat;
+	}
+
+	/**
+	 * Returns the format of date/time cells.
+	 * @return the format
+	 */
+	public String getDateTimeFormat() {
+		return dateTimeFormat;
+	}
+
+	/**
+	 * Sets the format of date/time cells ({@link java.util.Date}, {@link java.time.LocalDateTime} and {@link java.time.ZonedDateTime}).
+	 * The format must be set before the first row is written.
+	 * @param dateTimeFormat the Excel format (default is {@link DefaultExcelFormatter#DEFAULT_DATETIME_FORMAT})
+	 */
+	public void setDateTimeFormat(String dateTimeFormat) {
+		checkNotStarted();
+		this.dateTimeFormat = dateTimeFormat;
+	}
+
+	/**
+	 * Returns the index of the first appended row.
+	 * @return the index of the row following the last row of the sheet
+	 */
+	public int getFirstRowNum() {
+		try {
+			ensureStarted();
+		} catch (IOException e) {
+			throw new CsvException("Cannot read workbook: "+source, e);
+		}
+		return firstRowNum;
+	}
+
+	/**
+	 * Throws an exception when writing started already.
+	 */
+	private void checkNotStarted() {
+		if (zip != null) throw new CsvException("Property must be set before writing");
+	}
+
+	/**
+	 * Writes the workbook with the appended rows and closes the writer.
+	 * When appending to a file, the file is replaced.
+	 * @see csv.impl.AbstractStreamTableWriter#close()
+	 */
+	@Override
+	public void close() {
+		boolean success = false;
+		try {
+			if (target == null) {
+				ensureStarted();
+				writeWorkbook();
+			} else if (zip != null) {
+				if (rowNum > firstRowNum) writeWorkbook();
+			}
+			success = true;
+		} catch (IOException e) {
+			throw new CsvException("Cannot write Excel file", e);
+		} finally {
+			boolean appended = rowNum > firstRowNum;
+			discard();
+			super.close();
+			if (target != null) {
+				try {
+					if (success && appended) {
+						Files.move(target.toPath(), source.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					}
+				} catch (IOException e) {
+					throw new CsvException("Cannot replace file: "+source, e);
+				} finally {
+					target.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads an XML document tag by tag and copies all text in between.
+	 */
+	private static class TagReader {
+
+		/** The reader */
+		private Reader in;
+		/** The writer or null */
+		private Writer out;
+		/** The read buffer */
+		private char buf[] = new char[65536];
+		/** Position in buffer */
+		private int pos = 0;
+		/** Number of characters in buffer */
+		private int len = 0;
+		/** The current tag */
+		private StringBuilder tag = new StringBuilder();
+
+		/**
+		 * Constructor.
+		 * @param in the reader
+		 * @param out the writer or null
+		 */
+		public TagReader(Reader in, Writer out) {
+			this.in = in;
+			this.out = out;
+		}
+
+		/**
+		 * Copies the text up to the next tag and returns the tag.
+		 * Comments, CDATA sections and processing instructions are returned as tags, too.
+		 * @return the next tag or null at the end of the document
+		 * @throws IOException when the document cannot be read
+		 */
+		public String nextTag() throws IOException {
+			// Copy text
+			while (true) {
+				if ((pos >= len) && !fill()) return null;
+				int start = pos;
+				while ((pos < len) && (buf[pos] != '<')) pos++;
+				if ((out != null) && (pos > start)) out.write(buf, start, pos-start);
+				if (pos < len) break;
+			}
+			// Read tag
+			tag.setLength(0);
+			char quote = 0;
+			while (true) {
+				if ((pos >= len) && !fill()) throw new CsvException("Unexpected end of XML");
+				char c = buf[pos++];
+				tag.append(c);
+				if ((tag.length() > 1) && (tag.charAt(1) == '!')) {
+					// Prefixes of comments and CDATA sections do not contain '>'
+					if (startsWith("<!--")) {
+						if ((tag.length() >= 7) && endsWith("-->")) break;
+					} else if (startsWith("<![CDATA[")) {
+						if (endsWith("]]>")) break;
+					} else if (c == '>') {
+						break;
+					}
+				} else if (quote != 0) {
+					if (c == quote) quote = 0;
+				} else if ((c == '"') || (c == '\'')) {
+					quote = c;
+				} else if (c == '>') {
+					break;
+				}
+			}
+			return tag.toString();
+		}
+
+		/**
+		 * Returns whether the current tag ends with given string.
+		 * @param s the string
+		 * @return true when the tag ends with the string
+		 */
+		private boolean endsWith(String s) {
+			int offset = tag.length()-s.length();
+			if (offset < 0) return false;
+			for (int i=0; i<s.length(); i++) {
+				if (tag.charAt(offset+i) != s.charAt(i)) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Returns whether the current tag starts with given string.
+		 * @param s the string
+		 * @return true when the tag starts with the string
+		 */
+		private boolean startsWith(String s) {
+			if (tag.length() < s.length()) return false;
+			for (int i=0; i<s.length(); i++) {
+				if (tag.charAt(i) != s.charAt(i)) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Fills the buffer.
+		 * @return false at the end of the document
+		 * @throws IOException when the document cannot be read
+		 */
+		private boolean fill() throws IOException {
+			len = in.read(buf);
+			pos = 0;
+			if (len <= 0) {
+				len = 0;
+				return false;
+			}
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,489 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.io.File;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+
+import csv.CsvException;
+
+/**
+ * Parses Excel 2007+ (.xlsx) sheets row by row.
+ * <p>
+ * The parser pulls the sheet XML through {@link XSSFReader} with a StAX reader.
+ * Only the selected sheet is parsed and only the current row is kept in memory.
+ * Shared strings and styles are loaded once when the parser is created and
+ * are shared with all parsers created by {@link #createSheetParser()}.
+ * Workbooks with huge numbers of shared strings can be read with a {@link DiskSharedStringsTable}
+ * that keeps a limited number of strings in memory.
+ * </p>
+ * @author RalphSchuster
+ * @since 4.4
+ */
+public class XExcelStreamParser extends AbstractExcelStreamParser {
+
+	/** The package being read */
+	private OPCPackage pkg;
+	/** Whether the package was opened by this parser */
+	private boolean packageOwner;
+	/** The reader for package parts */
+	private XSSFReader reader;
+	/** The shared strings of the workbook */
+	private SharedStrings sharedStrings;
+	/** The shared strings of the workbook when stored on disk */
+	private DiskSharedStringsTable diskSharedStrings;
+	/** The styles of the workbook */
+	private StylesTable styles;
+	/** Relationship IDs of the sheets */
+	private List<String> sheetIds = new ArrayList<>();
+	/** The factory for XML readers */
+	private XMLInputFactory factory = XMLHelper.newXMLInputFactory();
+	/** The stream of the opened sheet */
+	private InputStream sheetStream;
+	/** The XML reader of the opened sheet */
+	private XMLStreamReader xml;
+	/** Last row index as declared by the dimension element */
+	private int lastRowNum;
+	/** Index of next row when the row has no reference */
+	private int nextRowIndex;
+	/** Whether the end of sheet data was reached */
+	private boolean endOfSheet;
+
+	/**
+	 * Constructor.
+	 * @param file the Excel file
+	 */
+	public XExcelStreamParser(File file) {
+		this(file, 0);
+	}
+
+	/**
+	 * Constructor.
+	 * @param file the Excel file
+	 * @param sharedStringsCacheSize number of shared strings kept in memory,
+	 *        0 when all shared strings shall be loaded into memory
+	 * @see DiskSharedStringsTable
+	 */
+	public XExcelStreamParser(File file, int sharedStringsCacheSize) {
+		try {
+			pkg = OPCPackage.open(file, PackageAccess.READ);
+			packageOwner = true;
+			reader = new XSSFReader(pkg);
+			if (sharedStringsCacheSize > 0) {
+				diskSharedStrings = new DiskSharedStringsTable(pkg, sharedStringsCacheSize);
+			} else {
+				sharedStrings = new ReadOnlySharedStringsTable(pkg);
+			}
+			styles = reader.getStylesTable();
+			readWorkbook();
+		} catch (CsvException e) {
+			close();
+			throw e;
+		} catch (Exception e) {
+			close();
+			throw new CsvException("Cannot open Excel workbook", e);
+		}
+	}
+
+	/**
+	 * Constructor for a parser sharing the package of another parser.
+	 * @param workbook the parser that opened the package
+	 * @see #createSheetParser()
+	 */
+	protected XExcelStreamParser(XExcelStreamParser workbook) {
+		super(workbook);
+		pkg = workbook.pkg;
+		packageOwner = false;
+		reader = workbook.reader;
+		sharedStrings = workbook.sharedStrings;
+		diskSharedStrings = workbook.diskSharedStrings;
+		styles = workbook.styles;
+		sheetIds = workbook.sheetIds;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public AbstractExcelStreamParser createSheetParser() {
+		if (pkg == null) throw new CsvException("Parser was closed already");
+		return new XExcelStreamParser(this);
+	}
+
+	/**
+	 * Reads the sheet names and properties from the workbook part.
+	 * @throws Exception when the workbook part cannot be read
+	 */
+	protected void readWorkbook() throws Exception {
+		try (InputStream in = reader.getWorkbookData()) {
+			XMLStreamReader wb = factory.createXMLStreamReader(in);
+			try {
+				while (wb.hasNext()) {
+					if (wb.next() != XMLStreamConstants.START_ELEMENT) continue;
+					String name = wb.getLocalName();
+					if ("workbookPr".equals(name)) {
+						String date1904 = wb.getAttributeValue(null, "date1904");
+						setDate1904("1".equals(date1904) || "true".equalsIgnoreCase(date1904));
+					} else if ("sheet".equals(name)) {
+						addSheetName(wb.getAttributeValue(null, "name"));
+						sheetIds.add(getRelationshipId(wb));
+					}
+				}
+			} finally {
+				wb.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the relationship ID attribute of the current element.
+	 * @param xml the XML reader
+	 * @return the relationship ID
+	 */
+	private static String getRelationshipId(XMLStreamReader xml) {
+		for (int i=0; i<xml.getAttributeCount(); i++) {
+			String ns = xml.getAttributeNamespace(i);
+			if ("id".equals(xml.getAttributeLocalName(i)) && (ns != null) && !ns.isEmpty()) {
+				return xml.getAttributeValue(i);
+			}
+		}
+		throw new CsvException("Invalid workbook: sheet has no relationship ID");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void openSheet(int index) {
+		closeSheet();
+		lastRowNum = -1;
+		nextRowIndex = 0;
+		endOfSheet = true;
+		try {
+			sheetStream = reader.getSheet(sheetIds.get(index));
+			xml = factory.createXMLStreamReader(sheetStream);
+			// Advance to sheet data
+			while (xml.hasNext()) {
+				if (xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+				String name = xml.getLocalName();
+				if ("dimension".equals(name)) {
+					lastRowNum = getLastRowNum(xml.getAttributeValue(null, "ref"));
+				} else if ("sheetData".equals(name)) {
+					endOfSheet = false;
+					break;
+				}
+			}
+		} catch (Exception e) {
+			throw new CsvException("Cannot open sheet "+index, e);
+		}
+	}
+
+	/**
+	 * Returns the last row index from a dimension reference.
+	 * @param ref the reference, e.g. "A1:D20"
+	 * @return the index of last row or -1 if unknown
+	 */
+	private static int getLastRowNum(String ref) {
+		if (ref == null) return -1;
+		int pos = ref.indexOf(':');
+		int rowNum = getRowNum(pos < 0 ? ref : ref.substring(pos+1));
+		return rowNum;
+	}
+
+	/**
+	 * Returns the row index from a cell reference.
+	 * @param ref cell reference, e.g. "B12"
+	 * @return row index or -1
+	 */
+	private static int getRowNum(String ref) {
+		int rc = 0;
+		boolean digits = false;
+		for (int i=0; i<ref.length(); i++) {
+			char c = ref.charAt(i);
+			if ((c >= '0') && (c <= '9')) {
+				rc = rc*10 + (c-'0');
+				digits = true;
+			}
+		}
+		return digits ? rc-1 : -1;
+	}
+
+	/**
+	 * Returns the column index from a cell reference.
+	 * @param ref cell reference, e.g. "B12"
+	 * @return column index
+	 */
+	private static int getColumnNum(String ref) {
+		int rc = 0;
+		for (int i=0; i<ref.length(); i++) {
+			char c = ref.charAt(i);
+			if ((c >= 'A') && (c <= 'Z')) {
+				rc = rc*26 + (c-'A'+1);
+			} else if (c != '$') {
+				break;
+			}
+		}
+		return rc-1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int getDeclaredLastRowNum() {
+		return lastRowNum;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean readRow() {
+		if (endOfSheet) return false;
+		try {
+			while (xml.hasNext()) {
+				int event = xml.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					if ("row".equals(xml.getLocalName())) {
+						String ref = xml.getAttributeValue(null, "r");
+						int rowIndex = ref != null ? Integer.parseInt(ref)-1 : nextRowIndex;
+						if (isAfterRegion(rowIndex)) break;
+						if (isBeforeRegion(rowIndex)) {
+							nextRowIndex = rowIndex+1;
+							skipElement();
+							continue;
+						}
+						startRow(rowIndex);
+						nextRowIndex = rowIndex+1;
+						readCells();
+						return true;
+					}
+					skipElement();
+				} else if ((event == XMLStreamConstants.END_ELEMENT) && "sheetData".equals(xml.getLocalName())) {
+					break;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new CsvException("Cannot read sheet "+getSheetIndex(), e);
+		}
+		endOfSheet = true;
+		return false;
+	}
+
+	/**
+	 * Reads all cells of the current row element.
+	 * @throws XMLStreamException when the XML cannot be read
+	 */
+	protected void readCells() throws XMLStreamException {
+		int column = -1;
+		while (xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if ("c".equals(xml.getLocalName())) {
+					String ref = xml.getAttributeValue(null, "r");
+					column = ref != null ? getColumnNum(ref) : column+1;
+					readCell(column);
+				} else {
+					skipElement();
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				// end of row
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reads the current cell element.
+	 * @param column column index of cell
+	 * @throws XMLStreamException when the XML cannot be read
+	 */
+	protected void readCell(int column) throws XMLStreamException {
+		if (!isColumnSelected(column)) {
+			skipElement();
+			return;
+		}
+		String type  = xml.getAttributeValue(null, "t");
+		String style = xml.getAttributeValue(null, "s");
+		String text  = null;
+		while (xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = xml.getLocalName();
+				if ("v".equals(name)) {
+					text = xml.getElementText();
+				} else if ("is".equals(name)) {
+					text = readInlineString();
+				} else {
+					skipElement();
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				// end of cell
+				break;
+			}
+		}
+		setValue(column, getValue(type, style, text));
+	}
+
+	/**
+	 * Reads the text of an inline string element.
+	 * Phonetic runs are ignored, characters escaped as "_xHHHH_" are decoded.
+	 * @return the string
+	 * @throws XMLStreamException when the XML cannot be read
+	 */
+	protected String readInlineString() throws XMLStreamException {
+		StringBuilder rc = new StringBuilder();
+		while (xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = xml.getLocalName();
+				if ("t".equals(name)) {
+					rc.append(xml.getElementText());
+				} else if ("rPh".equals(name)) {
+					skipElement();
+				}
+			} else if ((event == XMLStreamConstants.END_ELEMENT) && "is".equals(xml.getLocalName())) {
+				break;
+			}
+		}
+		return DiskSharedStringsTable.decode(rc);
+	}
+
+	/**
+	 * Skips the current element including all its children.
+	 * @throws XMLStreamException when the XML cannot be read
+	 */
+	private void skipElement() throws XMLStreamException {
+		int depth = 1;
+		while ((depth > 0) && xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+		}
+	}
+
+	/**
+	 * Returns the Java object for a cell.
+	 * @param type the cell type attribute
+	 * @param style the style index attribute
+	 * @param text the cell value
+	 * @return the value
+	 */
+	protected Object getValue(String type, String style, String text) {
+		if (text == null) return null;
+		if (type == null) type = "n";
+		switch (type) {
+		case "s":
+			return getSharedString(Integer.parseInt(text.trim()));
+		case "inlineStr":
+		case "str":
+			return text;
+		case "b":
+			return getBooleanValue("1".equals(text) || "true".equalsIgnoreCase(text));
+		case "e":
+			try {
+				return getErrorValue(FormulaError.forString(text).getCode());
+			} catch (IllegalArgumentException e) {
+				return text;
+			}
+		case "d":
+			return getDateValue(text.indexOf('T') < 0 ? LocalDate.parse(text).atStartOfDay() : LocalDateTime.parse(text));
+		default:
+			if (text.isEmpty()) return null;
+			return getNumericValue(Double.parseDouble(text), style != null ? Integer.parseInt(style) : 0);
+		}
+	}
+
+	/**
+	 * Returns a shared string.
+	 * @param index index of string
+	 * @return the string
+	 */
+	protected String getSharedString(int index) {
+		if (diskSharedStrings != null) return diskSharedStrings.getString(index);
+		return sharedStrings.getItemAt(index).getString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean isDateFormat(int styleIndex) {
+		if (styles == null) return false;
+		// Styles table is shared with other parsers
+		synchronized (styles) {
+			if (styleIndex >= styles.getNumCellStyles()) return false;
+			XSSFCellStyle style = styles.getStyleAt(styleIndex);
+			return (style != null) && DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+		}
+	}
+
+	/**
+	 * Closes the opened sheet.
+	 */
+	protected void closeSheet() {
+		try {
+			if (xml != null) xml.close();
+			if (sheetStream != null) sheetStream.close();
+		} catch (Exception e) {
+			throw new CsvException("Cannot close sheet", e);
+		} finally {
+			xml = null;
+			sheetStream = null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		try {
+			closeSheet();
+		} finally {
+			try {
+				if ((diskSharedStrings != null) && packageOwner) diskSharedStrings.close();
+			} finally {
+				if ((pkg != null) && packageOwner) pkg.revert();
+				pkg = null;
+				diskSharedStrings = null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,326 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import csv.CsvException;
+
+/**
+ * Writes Excel 2007+ (.xlsx) files in a single streaming pass without Apache POI.
+ * <p>
+ * The SpreadsheetML parts are written directly into a ZIP stream. Rows are written
+ * when they are printed and not kept in memory, texts are written as inline strings.
+ * A minimal set of styles is provided for dates, date/times, integers and decimal numbers.
+ * The writer is intended for plain data dumps. Use {@link XExcelWriter} when cells
+ * shall be formatted or modified after they were written.
+ * The file can only be read after {@link #close()}, so the writer ignores the
+ * {@link #setFlushInterval(int) flush interval}.
+ * </p>
+ * <pre>
+java.io.File f = new java.io.File("excel-test.xlsx");
+XExcelStreamWriter out = new XExcelStreamWriter(f);
+out.printRow(new Object[] { "0:0", 3, new Date() });
+out.printRow(new Object[] { "1:0", 1.5d, "another String value" });
+out.close();
+</pre>
+ * <p>
+ * The writer can replace the default writer for .xlsx files in the {@link csv.CSVFactory}
+ * by registering {@link csv.MimeTypeInfo#X_EXCEL_STREAM_INFO}.
+ * </p>
+ * @author RalphSchuster
+ * @since 4.4
+ */
+public class XExcelStreamWriter extends AbstractStreamTableWriter {
+
+	/** The ZIP stream */
+	private ZipOutputStream zip;
+	/** The writer for the current ZIP entry */
+	private Writer out;
+	/** Name of the sheet */
+	private String sheetName = "Sheet1";
+	/** Date format of date cells */
+	private String dateFormat = DefaultExcelFormatter.DEFAULT_DATE_FORMAT;
+	/** Date format of date/time cells */
+	private String dateTimeFormat = DefaultExcelFormatter.DEFAULT_DATETIME_FORMAT;
+	/** ZIP compression level */
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	/** Writes the rows */
+	private SheetXmlWriter sheetWriter;
+	/** Index of next row */
+	private int rowNum = 0;
+
+	/**
+	 * Default constructor.
+	 * Please, notice that you are required to set the output stream
+	 * before writing.
+	 * @see #setOutputStream(OutputStream)
+	 */
+	public XExcelStreamWriter() {
+	}
+
+	/**
+	 * Constructor for writing into a stream.
+	 * @param out output stream to be used
+	 */
+	public XExcelStreamWriter(OutputStream out) {
+		super(out);
+	}
+
+	/**
+	 * Constructor for writing into a file.
+	 * @param file output file to be used
+	 * @throws IOException when the file cannot be written to
+	 */
+	public XExcelStreamWriter(File file) throws IOException {
+		super(file);
+	}
+
+	/**
+	 * Constructor for writing into a file.
+	 * @param file output file to be used
+	 * @throws IOException when the file cannot be written to
+	 */
+	public XExcelStreamWriter(String file) throws IOException {
+		super(file);
+	}
+
+	/**
+	 * Prints the values into the next row of the sheet.
+	 * @param columns values to be written
+	 * @throws IOException when the values cannot be written
+	 * @see csv.TableWriter#printRow(java.lang.Object[])
+	 */
+	@Override
+	public void printRow(Object[] columns) throws IOException {
+		ensureStarted();
+		Object values[] = new Object[columns.length];
+		for (int i=0; i<columns.length; i++) values[i] = convert(columns[i]);
+		sheetWriter.writeRow(rowNum, values);
+		rowNum++;
+		incrementRowCount();
+	}
+
+	/**
+	 * Writes the workbook parts and starts the sheet if not done yet.
+	 * @throws IOException when the parts cannot be written
+	 */
+	protected void ensureStarted() throws IOException {
+		if (zip != null) return;
+		if (getOutputStream() == null) throw new CsvException("No output stream set");
+		zip = new ZipOutputStream(getOutputStream(), StandardCharsets.UTF_8);
+		zip.setLevel(compressionLevel);
+		out = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 65536);
+		sheetWriter = new SheetXmlWriter(out, new int[] { 0, 1, 2, 3, 4 });
+		writeEntry("[Content_Types].xml",
+				"<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"+
+				"<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"+
+				"<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"+
+				"<Default Extension=\"xml\" ContentType=\"application/xml\"/>"+
+				"<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"+
+				"<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"+
+				"<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"+
+				"</Types>");
+		writeEntry("_rels/.rels",
+				"<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"+
+				"<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"+
+				"<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>"+
+				"</Relationships>");
+		writeEntry("xl/_rels/workbook.xml.rels",
+				"<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"+
+				"<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"+
+				"<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet1.xml\"/>"+
+				"<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>"+
+				"</Relationships>");
+		zip.putNextEntry(new ZipEntry("xl/workbook.xml"));
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"+
+				"<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"+
+				"<sheets><sheet name=\"");
+		writeAttribute(sheetName);
+		out.write("\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>");
+		closeEntry();
+		zip.putNextEntry(new ZipEntry("xl/styles.xml"));
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"+
+				"<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"+
+				"<numFmts count=\"2\"><numFmt numFmtId=\"164\" formatCode=\"");
+		writeAttribute(dateFormat);
+		out.write("\"/><numFmt numFmtId=\"165\" formatCode=\"");
+		writeAttribute(dateTimeFormat);
+		out.write("\"/></numFmts>"+
+				"<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/><family val=\"2\"/></font></fonts>"+
+				"<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>"+
+				"<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"+
+				"<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"+
+				"<cellXfs count=\"5\">"+
+				"<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"+
+				"<xf numFmtId=\"164\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"+
+				"<xf numFmtId=\"165\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"+
+				"<xf numFmtId=\"1\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"+
+				"<xf numFmtId=\"2\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"+
+				"</cellXfs>"+
+				"<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>"+
+				"</styleSheet>");
+		closeEntry();
+		zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"+
+				"<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>\n");
+	}
+
+	/**
+	 * Writes a complete ZIP entry.
+	 * @param name name of entry
+	 * @param content content of entry
+	 * @throws IOException when the entry cannot be written
+	 */
+	private void writeEntry(String name, String content) throws IOException {
+		zip.putNextEntry(new ZipEntry(name));
+		out.write(content);
+		closeEntry();
+	}
+
+	/**
+	 * Closes the current ZIP entry.
+	 * @throws IOException when the entry cannot be closed
+	 */
+	private void closeEntry() throws IOException {
+		out.flush();
+		zip.closeEntry();
+	}
+
+	/**
+	 * Writes an attribute value with XML special characters escaped.
+	 * @param s the value
+	 * @throws IOException when the value cannot be written
+	 */
+	private void writeAttribute(String s) throws IOException {
+		out.write(s.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;"));
+	}
+
+	/**
+	 * Returns the name of the sheet.
+	 * @return the name of the sheet
+	 */
+	public String getSheetName() {
+		return sheetName;
+	}
+
+	/**
+	 * Sets the name of the sheet.
+	 * The name must be set before the first row is written.
+	 * @param sheetName the name of the sheet (default is "Sheet1")
+	 */
+	public void setSheetName(String sheetName) {
+		checkNotStarted();
+		this.sheetName = sheetName;
+	}
+
+	/**
+	 * Returns the format of date cells.
+	 * @return the format
+	 */
+	public String getDateFormat() {
+		return dateFormat;
+	}
+
+	/**
+	 * Sets the format of date cells ({@link java.time.LocalDate}).
+	 * The format must be set before the first row is written.
+	 * @param dateFormat the Excel format (default is {@link DefaultExcelFormatter#DEFAULT_DATE_FORMAT})
+	 */
+	public void setDateFormat(String dateFormat) {
+		checkNotStarted();
+		this.dateFormat = dateFormat;
+	}
+
+	/**
+	 * Returns the format of date/time cells.
+	 * @return the format
+	 */
+	public String getDateTimeFormat() {
+		return dateTimeFormat;
+	}
+
+	/**
+	 * Sets the format of date/time cells ({@link Date}, {@link java.time.LocalDateTime} and {@link java.time.ZonedDateTime}).
+	 * The format must be set before the first row is written.
+	 * @param dateTimeFormat the Excel format (default is {@link DefaultExcelFormatter#DEFAULT_DATETIME_FORMAT})
+	 */
+	public void setDateTimeFormat(String dateTimeFormat) {
+		checkNotStarted();
+		this.dateTimeFormat = dateTimeFormat;
+	}
+
+	/**
+	 * Returns the ZIP compression level.
+	 * @return the compression level
+	 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Sets the ZIP compression level.
+	 * Lower levels increase throughput at the cost of file size.
+	 * @param compressionLevel the compression level (0-9, default is {@link Deflater#DEFAULT_COMPRESSION})
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+		if (zip != null) zip.setLevel(compressionLevel);
+	}
+
+	/**
+	 * Throws an exception when writing started already.
+	 */
+	private void checkNotStarted() {
+		if (zip != null) throw new CsvException("Property must be set before writing");
+	}
+
+	/**
+	 * Completes the sheet and the ZIP stream and closes the writer.
+	 * @see csv.impl.AbstractStreamTableWriter#close()
+	 */
+	@Override
+	public void close() {
+		try {
+			if (getOutputStream() != null) {
+				ensureStarted();
+				out.write("</sheetData></worksheet>");
+				closeEntry();
+				zip.finish();
+			}
+		} catch (IOException e) {
+			throw new CsvException("Cannot write Excel file", e);
+		} finally {
+			zip = null;
+			out = null;
+			sheetWriter = null;
+		}
+		super.close();
+	}
+
+}
@@ -21,9 +21,15 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import csv.CsvException;
+
 /**
  * Provides ability to write XML-based Excel files.
  * <p>
@@ -38,6 +44,32 @@ ExcelWriter out = new XExcelWriter(f);
 out.printRow(new Object[] { "0:0", new Integer(3), new Date() });
 out.printRow(new Object[] { "1:0", new Double(), "another String value" });
 out.close();
+</pre>
+ * <p>
+ * Large exports can be written in streaming mode (see {@link #setStreaming(boolean)}).
+ * The writer then uses a {@link SXSSFWorkbook} that keeps only the last 
+ * {@link #getRowAccessWindowSize()} rows in memory and flushes older rows into
+ * (compressed) temporary files. Heap usage is bounded by the window size instead of
+ * the number of rows. <strong>Beware</strong> that rows which were flushed already
+ * cannot be accessed anymore. This affects all features that require random row access:
+ * </p>
+ * <ul>
+ * <li>{@link #printRow(Object[], int)}, {@link #setValue(int, int, Object)} and {@link #getOrCreateCell(int, int)}
+ *     fail with a {@link CsvException} when the row is outside the window,</li>
+ * <li>{@link ExcelListener}s and {@link ExcelFormatter}s can only modify the row they were notified about,</li>
+ * <li>{@link ExcelFormatter#finalize(ExcelWriter)} cannot modify cells of flushed rows, e.g. the header row.</li>
+ * </ul>
+ * <p>
+ * Combined with {@link #setRollover(boolean)}, exports exceeding the row limit of a sheet
+ * are split into multiple sheets at bounded memory.
+ * </p>
+<pre>
+XExcelWriter out = new XExcelWriter(f);
+out.setStreaming(true);
+out.setRowAccessWindowSize(500);
+out.setFormatter(new DefaultExcelFormatter(true, true));
+// print rows as usual
+out.close();
 </pre>
  * @see #close()
  * @author RalphSchuster
@@ -45,6 +77,13 @@ out.close();
  */
 public class XExcelWriter extends ExcelWriter {
 
+	/** Whether rows will be streamed into temporary files (default is <code>false</code>) */
+	private boolean streaming = false;
+	/** Number of rows kept in memory when streaming */
+	private int rowAccessWindowSize = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+	/** Whether temporary files shall be compressed when streaming (default is <code>true</code>) */
+	private boolean compressTempFiles = true;
+
 	/**
 	 * Default constructor.
 	 * Please, notice that you are required to set the output stream
@@ -136,9 +175,133 @@ public class XExcelWriter extends ExcelWriter {
 	 */
 	@Override
 	public Workbook getWorkbook() {
-		if (workbook == null) workbook = new XSSFWorkbook();
+		if (workbook == null) {
+			if (isStreaming()) workbook = new SXSSFWorkbook(null, getRowAccessWindowSize(), isCompressTempFiles());
+			else workbook = new XSSFWorkbook();
+		} else if (isStreaming() && (workbook instanceof XSSFWorkbook)) {
+			// Use the given workbook as template, new rows will be streamed
+			workbook = new SXSSFWorkbook((XSSFWorkbook)workbook, getRowAccessWindowSize(), isCompressTempFiles());
+		}
 		return workbook;
 	}
 
+	/**
+	 * Returns an existing row or creates one.
+	 * In streaming mode, the method fails when the row was already flushed to disk.
+	 * @param row row index
+	 * @return row object
+	 * @throws CsvException when the row is not accessible anymore (streaming mode only)
+	 */
+	@Override
+	public Row getOrCreateRow(int row) {
+		Sheet sheet = getSheet();
+		if ((sheet instanceof SXSSFSheet) && (row <= ((SXSSFSheet)sheet).getLastFlushedRowNum())) {
+			throw new CsvException("Row "+row+" was already flushed to disk and cannot be accessed anymore (streaming mode keeps the last "+getRowAccessWindowSize()+" rows only)");
+		}
+		return super.getOrCreateRow(row);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * In streaming mode, the remaining rows of the full sheet are flushed to disk.
+	 */
+	@Override
+	protected Sheet rolloverSheet() throws IOException {
+		Sheet full = getSheet();
+		Sheet rc = super.rolloverSheet();
+		if (full instanceof SXSSFSheet) ((SXSSFSheet)full).flushRows();
+		return rc;
+	}
+
+	/**
+	 * Closes the writer and writes the Excel to the underlying stream.
+	 * Temporary files will be deleted in streaming mode.
+	 * @see csv.impl.ExcelWriter#close()
+	 */
+	@Override
+	public void close() {
+		try {
+			super.close();
+		} finally {
+			// Closing the streaming workbook deletes its temporary files
+			if (workbook instanceof SXSSFWorkbook) {
+				try {
+					workbook.close();
+				} catch (IOException e) {
+					throw new CsvException("Cannot delete temporary files", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns whether rows will be streamed into temporary files (default is <code>false</code>).
+	 * @return <code>true</code> when the writer works in streaming mode
+	 * @since 4.4
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Sets whether rows will be streamed into temporary files (default is <code>false</code>).
+	 * The mode must be set before the first row is written.
+	 * @param streaming <code>true</code> when the writer shall work in streaming mode
+	 * @throws CsvException when the workbook was already created
+	 * @since 4.4
+	 */
+	public void setStreaming(boolean streaming) {
+		checkWorkbookNotCreated();
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Returns the number of rows that are kept in memory in streaming mode.
+	 * @return the window size (default is {@link SXSSFWorkbook#DEFAULT_WINDOW_SIZE})
+	 * @since 4.4
+	 */
+	public int getRowAccessWindowSize() {
+		return rowAccessWindowSize;
+	}
+
+	/**
+	 * Sets the number of rows that are kept in memory in streaming mode.
+	 * The size must be set before the first row is written.
+	 * @param rowAccessWindowSize the window size
+	 * @throws CsvException when the workbook was already created
+	 * @since 4.4
+	 */
+	public void setRowAccessWindowSize(int rowAccessWindowSize) {
+		checkWorkbookNotCreated();
+		this.rowAccessWindowSize = rowAccessWindowSize;
+	}
+
+	/**
+	 * Returns whether temporary files will be compressed in streaming mode (default is <code>true</code>).
+	 * @return <code>true</code> when temporary files will be compressed
+	 * @since 4.4
+	 */
+	public boolean isCompressTempFiles() {
+		return compressTempFiles;
+	}
+
+	/**
+	 * Sets whether temporary files will be compressed in streaming mode (default is <code>true</code>).
+	 * The property must be set before the first row is written.
+	 * @param compressTempFiles <code>true</code> when temporary files shall be compressed
+	 * @throws CsvException when the workbook was already created
+	 * @since 4.4
+	 */
+	public void setCompressTempFiles(boolean compressTempFiles) {
+		checkWorkbookNotCreated();
+		this.compressTempFiles = compressTempFiles;
+	}
+
+	/**
+	 * Ensures that no streaming workbook was created yet.
+	 */
+	private void checkWorkbookNotCreated() {
+		if ((workbook instanceof SXSSFWorkbook) || (getRowCount() > 0)) throw new CsvException("Streaming properties must be set before the first row is written");
+	}
 	
 }
@@ -0,0 +1,454 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import csv.CsvException;
+
+/**
+ * Splits a XML stream of the flat table/record shape into chunks of complete records.
+ * <p>
+ * The stream is scanned on byte level for row tags. Comments, CDATA sections and
+ * processing instructions are skipped so that row tags inside them are not mistaken
+ * for rows. Each chunk starts with a row tag and ends with the end tag of a row.
+ * Comments between chunks are collected with the index of the row following them.
+ * </p>
+ * <p>
+ * Only encodings that are ASCII compatible are supported, and the stream must not
+ * contain a document type declaration (see {@link #readPrologue()}).
+ * </p>
+ * @author ralph
+ * @since 4.4
+ */
+class XmlChunkSplitter {
+
+	private static final byte LT = '<';
+	private static final byte COMMENT_START[] = ascii("<!--");
+	private static final byte COMMENT_END[] = ascii("-->");
+	private static final byte CDATA_START[] = ascii("<![CDATA[");
+	private static final byte CDATA_END[] = ascii("]]>");
+	private static final byte PI_START[] = ascii("<?");
+	private static final byte PI_END[] = ascii("?>");
+	private static final byte DECLARATION_START[] = ascii("<!");
+	private static final byte XML_DECLARATION_START[] = ascii("<?xml");
+	private static final byte UTF8_BOM[] = new byte[] { (byte)0xEF, (byte)0xBB, (byte)0xBF };
+	private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']+)[\"']");
+
+	/** Scan result: a row starts at the current position */
+	private static final int ROW = 1;
+	/** Scan result: end of stream was reached */
+	private static final int END = 0;
+	/** Scan result: a declaration was found */
+	private static final int DECLARATION = -1;
+
+	private InputStream in;
+	private String rowTagName;
+	private int chunkSize;
+	private byte rowStart[];
+	private byte rowEnd[];
+	private byte buf[] = new byte[64*1024];
+	/** Stream position of first byte in buffer */
+	private long bufOffset = 0;
+	/** Number of bytes in buffer */
+	private int length = 0;
+	private boolean eof = false;
+	/** Stream position of first byte that must be kept in buffer */
+	private long keep = 0;
+	/** Stream position of the scanner */
+	private long pos = 0;
+	/** Stream position of current chunk, -1 when no chunk is being scanned */
+	private long chunkStart = -1;
+	private boolean prologue = true;
+	private boolean done = false;
+	private String encoding = "UTF-8";
+	private Charset charset = StandardCharsets.UTF_8;
+	private int rowCount = 0;
+	private int chunkFirstRow = 0;
+	private List<Integer> commentRows = new ArrayList<>();
+	private List<String> commentTexts = new ArrayList<>();
+
+	/**
+	 * Constructor.
+	 * @param in stream to split
+	 * @param rowTagName name of row tag
+	 * @param chunkSize minimum number of bytes in a chunk
+	 */
+	public XmlChunkSplitter(InputStream in, String rowTagName, int chunkSize) {
+		this.in = in;
+		this.rowTagName = rowTagName;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Reads the stream until the first row.
+	 * No data is discarded before this method has finished so that the stream
+	 * can be replayed by {@link #getReplayStream()} when it cannot be split.
+	 * @return <code>true</code> when the stream can be split, <code>false</code> when encoding or declarations are not supported
+	 * @throws IOException when the stream cannot be read
+	 */
+	public boolean readPrologue() throws IOException {
+		if (matches(UTF8_BOM, pos)) pos += UTF8_BOM.length;
+		if (matches(XML_DECLARATION_START, pos)) {
+			long end = find(PI_END, pos);
+			if (end < 0) return false;
+			Matcher m = ENCODING.matcher(decode(pos, end, StandardCharsets.ISO_8859_1));
+			if (m.find()) {
+				encoding = m.group(1);
+				try {
+					charset = Charset.forName(encoding);
+				} catch (IllegalArgumentException e) {
+					return false;
+				}
+			}
+			pos = end+PI_END.length;
+		} else if (available(pos) && ((at(pos) == 0) || (at(pos) == (byte)0xFE) || (at(pos) == (byte)0xFF))) {
+			// Byte order marks of other encodings or UTF-16 without BOM
+			return false;
+		}
+		if (!Arrays.equals(ascii("<?!-/>\"'[]"), "<?!-/>\"'[]".getBytes(charset))) return false;
+		rowStart = ("<"+rowTagName).getBytes(charset);
+		rowEnd = ("</"+rowTagName).getBytes(charset);
+		int commentCount = commentRows.size();
+		int rc = scanGap();
+		if (rc == DECLARATION) {
+			commentRows.subList(commentCount, commentRows.size()).clear();
+			commentTexts.subList(commentCount, commentTexts.size()).clear();
+			return false;
+		}
+		if (rc == END) done = true;
+		prologue = false;
+		keep = pos;
+		return true;
+	}
+
+	/**
+	 * Returns the stream including all data read by {@link #readPrologue()}.
+	 * @return the stream to be parsed instead of the original stream
+	 */
+	public InputStream getReplayStream() {
+		return new SequenceInputStream(new ByteArrayInputStream(buf, 0, length), in);
+	}
+
+	/**
+	 * Returns the encoding of the stream.
+	 * @return the encoding as declared
+	 */
+	public String getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Returns the charset of the stream.
+	 * @return the charset
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Returns the index of the first row in the chunk returned last.
+	 * @return the row index
+	 */
+	public int getChunkFirstRow() {
+		return chunkFirstRow;
+	}
+
+	/**
+	 * Returns the next chunk.
+	 * The chunk contains complete rows and the markup between them.
+	 * @return the chunk or <code>null</code> when no more rows are available
+	 * @throws IOException when the stream cannot be read
+	 */
+	public byte[] nextChunk() throws IOException {
+		if (done) return null;
+		int rc = scanGap();
+		if (rc == DECLARATION) throw new CsvException("Unexpected declaration in XML stream");
+		if (rc == END) {
+			done = true;
+			return null;
+		}
+		chunkStart = pos;
+		chunkFirstRow = rowCount;
+		long chunkEnd;
+		while (true) {
+			if (!scanRecord()) {
+				// Incomplete row, the parser will report the error
+				available(Long.MAX_VALUE);
+				chunkEnd = bufOffset+length;
+				done = true;
+				break;
+			}
+			rowCount++;
+			chunkEnd = pos;
+			if (chunkEnd - chunkStart >= chunkSize) break;
+			// Comments between rows of the chunk are delivered by the parser
+			int commentCount = commentRows.size();
+			rc = scanGap();
+			if (rc != ROW) {
+				if (rc == DECLARATION) throw new CsvException("Unexpected declaration in XML stream");
+				done = true;
+				break;
+			}
+			commentRows.subList(commentCount, commentRows.size()).clear();
+			commentTexts.subList(commentCount, commentTexts.size()).clear();
+		}
+		byte chunk[] = Arrays.copyOfRange(buf, (int)(chunkStart-bufOffset), (int)(chunkEnd-bufOffset));
+		chunkStart = -1;
+		keep = pos;
+		return chunk;
+	}
+
+	/**
+	 * Passes all comments found outside of chunks to the consumer and forgets them.
+	 * @param consumer consumer of row index and comment
+	 */
+	public void drainComments(BiConsumer<Integer, String> consumer) {
+		for (int i=0; i<commentRows.size(); i++) {
+			consumer.accept(commentRows.get(i), commentTexts.get(i));
+		}
+		commentRows.clear();
+		commentTexts.clear();
+	}
+
+	/**
+	 * Scans the markup outside of rows until the next row starts.
+	 * @return {@link #ROW} when a row starts at current position, {@link #END} at end of stream, {@link #DECLARATION} when a declaration was found
+	 * @throws IOException when the stream cannot be read
+	 */
+	private int scanGap() throws IOException {
+		while (true) {
+			long p = find(LT, pos);
+			if (p < 0) return END;
+			mark(p);
+			pos = p;
+			long end;
+			if (matches(COMMENT_START, p)) {
+				end = find(COMMENT_END, p+COMMENT_START.length);
+				if (end < 0) return END;
+				commentRows.add(rowCount);
+				commentTexts.add(decode(p+COMMENT_START.length, end, charset));
+				pos = end+COMMENT_END.length;
+			} else if (matches(CDATA_START, p)) {
+				end = find(CDATA_END, p+CDATA_START.length);
+				if (end < 0) return END;
+				pos = end+CDATA_END.length;
+			} else if (matches(PI_START, p)) {
+				end = find(PI_END, p+PI_START.length);
+				if (end < 0) return END;
+				pos = end+PI_END.length;
+			} else if (matches(DECLARATION_START, p)) {
+				return DECLARATION;
+			} else if (matches(rowStart, p) && isNameEnd(p+rowStart.length)) {
+				return ROW;
+			} else {
+				end = findTagEnd(p+1);
+				if (end < 0) return END;
+				pos = end+1;
+			}
+		}
+	}
+
+	/**
+	 * Scans the row starting at current position.
+	 * @return <code>true</code> when the row was complete
+	 * @throws IOException when the stream cannot be read
+	 */
+	private boolean scanRecord() throws IOException {
+		long end = findTagEnd(pos+1);
+		if (end < 0) return false;
+		pos = end+1;
+		if (at(end-1) == '/') return true;
+		while (true) {
+			long p = find(LT, pos);
+			if (p < 0) return false;
+			if (matches(COMMENT_START, p)) {
+				end = find(COMMENT_END, p+COMMENT_START.length);
+				if (end < 0) return false;
+				pos = end+COMMENT_END.length;
+			} else if (matches(CDATA_START, p)) {
+				end = find(CDATA_END, p+CDATA_START.length);
+				if (end < 0) return false;
+				pos = end+CDATA_END.length;
+			} else {
+				boolean isRowEnd = matches(rowEnd, p) && isNameEnd(p+rowEnd.length);
+				end = findTagEnd(p+1);
+				if (end < 0) return false;
+				pos = end+1;
+				if (isRowEnd) return true;
+			}
+		}
+	}
+
+	/**
+	 * Marks the position as the first byte to be kept when no chunk is being scanned.
+	 * @param p stream position
+	 */
+	private void mark(long p) {
+		if (!prologue && (chunkStart < 0)) keep = p;
+	}
+
+	/**
+	 * Finds the end of a tag.
+	 * @param p stream position to start at
+	 * @return stream position of closing '&gt;', -1 when end of stream was reached
+	 * @throws IOException when the stream cannot be read
+	 */
+	private long findTagEnd(long p) throws IOException {
+		byte quote = 0;
+		while (available(p)) {
+			byte b = at(p);
+			if (quote != 0) {
+				if (b == quote) quote = 0;
+			} else if ((b == '"') || (b == '\'')) {
+				quote = b;
+			} else if (b == '>') {
+				return p;
+			}
+			p++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns whether the byte terminates a tag name.
+	 * @param p stream position
+	 * @return <code>true</code> when a whitespace, '/' or '&gt;' is at the position
+	 * @throws IOException when the stream cannot be read
+	 */
+	private boolean isNameEnd(long p) throws IOException {
+		if (!available(p)) return false;
+		byte b = at(p);
+		return (b == '>') || (b == '/') || (b == ' ') || (b == '\t') || (b == '\r') || (b == '\n');
+	}
+
+	/**
+	 * Finds a byte.
+	 * @param b the byte
+	 * @param from stream position to start at
+	 * @return stream position of byte, -1 when end of stream was reached
+	 * @throws IOException when the stream cannot be read
+	 */
+	private long find(byte b, long from) throws IOException {
+		long p = from;
+		while (available(p)) {
+			int i = (int)(p-bufOffset);
+			while ((i < length) && (buf[i] != b)) i++;
+			if (i < length) return bufOffset+i;
+			p = bufOffset+length;
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds a byte sequence.
+	 * @param pattern the bytes
+	 * @param from stream position to start at
+	 * @return stream position of sequence, -1 when end of stream was reached
+	 * @throws IOException when the stream cannot be read
+	 */
+	private long find(byte pattern[], long from) throws IOException {
+		long p = find(pattern[0], from);
+		while ((p >= 0) && !matches(pattern, p)) {
+			p = find(pattern[0], p+1);
+		}
+		return p;
+	}
+
+	/**
+	 * Returns whether the byte sequence is at the position.
+	 * @param pattern the bytes
+	 * @param p stream position
+	 * @return <code>true</code> when the stream contains the sequence at the position
+	 * @throws IOException when the stream cannot be read
+	 */
+	private boolean matches(byte pattern[], long p) throws IOException {
+		for (int i=0; i<pattern.length; i++) {
+			if (!available(p+i) || (at(p+i) != pattern[i])) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the byte at a position that is available.
+	 * @param p stream position
+	 * @return the byte
+	 */
+	private byte at(long p) {
+		return buf[(int)(p-bufOffset)];
+	}
+
+	/**
+	 * Decodes a text.
+	 * @param from stream position of first byte
+	 * @param to stream position after last byte
+	 * @param charset charset of text
+	 * @return the text
+	 */
+	private String decode(long from, long to, Charset charset) {
+		return new String(buf, (int)(from-bufOffset), (int)(to-from), charset);
+	}
+
+	/**
+	 * Ensures that the byte at the position was read.
+	 * Bytes before {@link #keep} are discarded when the buffer is full.
+	 * @param p stream position
+	 * @return <code>false</code> when end of stream was reached before the position
+	 * @throws IOException when the stream cannot be read
+	 */
+	private boolean available(long p) throws IOException {
+		while (p >= bufOffset+length) {
+			if (eof) return false;
+			if (length == buf.length) {
+				int discard = (int)(keep-bufOffset);
+				if (discard >= buf.length/2) {
+					System.arraycopy(buf, discard, buf, 0, length-discard);
+					length -= discard;
+					bufOffset += discard;
+				} else {
+					buf = Arrays.copyOf(buf, buf.length*2);
+				}
+			}
+			int n = in.read(buf, length, buf.length-length);
+			if (n < 0) eof = true;
+			else length += n;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the ASCII bytes of a string.
+	 * @param s the string
+	 * @return the bytes
+	 */
+	private static byte[] ascii(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+}
@@ -17,20 +17,31 @@
  */
 package csv.impl;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.ext.DefaultHandler2;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import csv.CsvException;
 import csv.mapper.StreamMapper;
@@ -39,6 +50,12 @@ import rs.baselib.util.CommonUtils;
 
 /**
  * Reads from a XML file.
+ * The XML is parsed on the caller's thread while rows are read.
+ * <p>
+ * Files of the flat table/record shape as written by {@link XmlWriter} can be parsed
+ * concurrently (see {@link #setParallelism(int)}). The stream is then split into chunks
+ * of rows which are parsed by worker threads. Rows are still delivered in sequence.
+ * </p>
  * @author ralph
  *
  */
@@ -46,7 +63,9 @@ public class XmlReader extends AbstractStreamTableReader {
 
 	protected static final int END_OF_FILE_INDEX = -1;
 	
-	private ParserThread parserThread = null;
+	private XmlParser parser = null;
+	private int parallelism = 1;
+	private int chunkSize = 1024*1024;
 	private Object nextRow[] = null;
 	private String rowTagName = "record";
 	private String columnTagName = "column";
@@ -100,30 +119,44 @@ public class XmlReader extends AbstractStreamTableReader {
 	
 	/**
 	 * Closes the stream.
+	 * Parsing is stopped and all buffered rows and comments are released.
 	 * @see csv.impl.AbstractStreamTableReader#close()
 	 */
 	@Override
 	public void close() {
-		// deliver remaining comments
-		if (parserThread != null) {
-			deliverComments(END_OF_FILE_INDEX);
+		try {
+			// deliver remaining comments
+			if (parser != null) deliverComments(END_OF_FILE_INDEX);
+		} finally {
+			stopParsing();
+			super.close();
 		}
-		super.close();
 	}
 
 	/**
 	 * Resets the reader. 
+	 * Parsing is stopped and will restart at the beginning of the stream.
 	 * @see csv.impl.AbstractStreamTableReader#reset()
 	 */
 	@Override
 	public void reset() {
-		if (parserThread != null) {
-			parserThread.stopParsing();
-			parserThread = null;
-		}
+		stopParsing();
 		super.reset();
 	}
 
+	/**
+	 * Stops parsing the XML stream.
+	 * The parser and the row read in advance are released. The underlying
+	 * input stream is not closed.
+	 * @since 4.4
+	 */
+	protected void stopParsing() {
+		XmlParser p = parser;
+		parser = null;
+		nextRow = null;
+		if (p != null) p.close();
+	}
+
 	/**
 	 * Returns true if there are more rows.
 	 * @see java.util.Iterator#hasNext()
@@ -160,10 +193,10 @@ public class XmlReader extends AbstractStreamTableReader {
 		if (nextRow != null) return;
 		
 		// Initialize parser
-		if (parserThread == null) initParser();
+		if (parser == null) initParser();
 		
 		// Read the next row 
-		nextRow = parserThread.next();
+		nextRow = parser.next();
 	}
 	
 	/**
@@ -172,21 +205,36 @@ public class XmlReader extends AbstractStreamTableReader {
 	 */
 	@Override
 	protected void readHeaderRow() {
-		if (parserThread == null) initParser();
+		if (parser == null) initParser();
 		if (isHeaderRowRead()) return;
 		
-		// Parsing thread has information about column names
-		setHeaderRow(parserThread.getColumnNames());
+		// Column names are known when the first row was read
+		readNextRow();
+		setHeaderRow(parser.getColumnNames());
 		return;
 	}
 
 	/**
-	 * Initializes the XML parser thread.
+	 * Initializes the XML parser.
+	 * The parallel parser is used when requested and the stream can be split.
 	 */
 	protected void initParser() {
-		if (parserThread == null) {
-			parserThread = new ParserThread();
-			parserThread.start();
+		if (parser == null) {
+			try {
+				InputStream in = getInputStream();
+				if (getParallelism() > 1) {
+					XmlChunkSplitter splitter = new XmlChunkSplitter(in, getRowTagName(), getChunkSize());
+					if (splitter.readPrologue()) {
+						parser = new ParallelXmlParser(splitter);
+						return;
+					}
+					in = splitter.getReplayStream();
+				}
+				XMLInputFactory factory = XMLInputFactory.newInstance();
+				parser = new XmlHandler(factory.createXMLStreamReader(in));
+			} catch (XMLStreamException | IOException e) {
+				throw new CsvException(e);
+			}
 		}
 	}
 	
@@ -202,7 +250,7 @@ public class XmlReader extends AbstractStreamTableReader {
 	 * @param rowIndex the index of the row to be processed
 	 */
 	protected void deliverComments(int rowIndex) {
-		List<String> comments = parserThread.deliverComments(rowIndex);
+		List<String> comments = parser.deliverComments(rowIndex);
 		if (comments != null) {
 			for (String comment : comments) {
 				notifyComment(comment, rowIndex, 0);
@@ -210,6 +258,54 @@ public class XmlReader extends AbstractStreamTableReader {
 		}
 	}
 	
+	/**
+	 * Returns the number of threads parsing the XML stream.
+	 * @return the number of threads, 1 when the stream is parsed on the caller's thread
+	 * @since 4.4
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads parsing the XML stream.
+	 * <p>
+	 * Parallel parsing requires the flat table/record shape: rows are elements with the
+	 * {@link #getRowTagName() row tag name} that do not contain other rows. The stream must
+	 * use an ASCII compatible encoding and must not declare a document type, otherwise it
+	 * is parsed on the caller's thread. The mapper must be thread-safe as values are
+	 * converted by the worker threads.
+	 * </p>
+	 * @param parallelism the number of threads (default is 1 = parse on the caller's thread)
+	 * @throws CsvException when parsing has started already
+	 * @since 4.4
+	 */
+	public void setParallelism(int parallelism) {
+		if (parser != null) throw new CsvException("Parallelism must be set before reading");
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Returns the minimum size of chunks for parallel parsing.
+	 * @return the size in bytes
+	 * @since 4.4
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Sets the minimum size of chunks for parallel parsing.
+	 * The stream is split after the first row that completes a chunk of this size.
+	 * @param chunkSize the size in bytes (default is 1 MB)
+	 * @throws CsvException when parsing has started already
+	 * @since 4.4
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (parser != null) throw new CsvException("Chunk size must be set before reading");
+		this.chunkSize = chunkSize;
+	}
+
 	/**
 	 * Returns the row tag name.
 	 * @return the rowTagName
@@ -297,68 +393,62 @@ public class XmlReader extends AbstractStreamTableReader {
 
 
 	/**
-	 * The thread doing the XML parse (pushes the handler).
-	 * We use reader/writer synchronization pattern to enable pull pattern
-	 * for main class.
+	 * Base class of the XML parsers.
+	 * Keeps the column names and the comments found.
 	 * @author ralph
 	 *
 	 */
-	private class ParserThread extends Thread {
-		
-		private SAXParser parser = null;
-		private CsvException parsingError = null;
-		private List<Object[]> availableObjects = new ArrayList<Object[]>();
-		private String columnNames[] = null;
-		private boolean parsingStopped = false;
-		private XmlHandler handler = null;
+	private abstract class XmlParser {
+
+		private List<String> columnNames = new ArrayList<String>();
+		private Map<String, Integer> columnSlots = new HashMap<String, Integer>();
 		private Map<Integer, List<String>> comments = new HashMap<Integer, List<String>>();
 		
-		public ParserThread() {
-		}
+		/**
+		 * Delivers the next row.
+		 * Used by the {@link XmlReader#readNextRow()}.
+		 * @return the next row or null when end of stream was reached
+		 */
+		public abstract Object[] next();
 		
 		/**
-		 * Runs the parser.
+		 * Stops parsing and releases all buffers.
+		 * The underlying input stream is not closed.
 		 */
-		public void run() {
-			try {
-				SAXParserFactory factory   = SAXParserFactory.newInstance();
-				parser = factory.newSAXParser();
-				handler = new XmlHandler(this);
-				parser.setProperty ("http://xml.org/sax/properties/lexical-handler", handler);
-				parser.parse(getInputStream(), handler);
-			} catch (Exception e) {
-				parsingError = new CsvException(e);
-			}
-
-		}
+		public abstract void close();
 		
 		/**
-		 * Stops the parser.
+		 * Returns the index of a column in the rows.
+		 * Unknown columns are appended to the list of known columns.
+		 * @param columnName name of column
+		 * @return index of column
 		 */
-		public void stopParsing() {
-			// Actually, the parser cannot be stopped (no way of interacting with SAX)
+		protected int getColumnSlot(String columnName) {
+			Integer rc = columnSlots.get(columnName);
+			if (rc == null) {
+				rc = columnNames.size();
+				columnNames.add(columnName);
+				columnSlots.put(columnName, rc);
+			}
+			return rc;
 		}
 		
 		/**
-		 * Returns the column names.
-		 * @return array of names
+		 * Returns the number of columns known.
+		 * @return number of columns
 		 */
-		public String[] getColumnNames() {
-			if (columnNames == null) {
-				// get at least one row (but do not remove from queue)
-				next(false);
-			
-				columnNames = handler.getColumnNames();
-			}
-			return columnNames;
+		protected int getColumnCount() {
+			return columnNames.size();
 		}
 		
 		/**
-		 * Returns the parsing exception that occurred.
-		 * @return parsing exception
+		 * Returns the column names from XML
+		 * @return names of columns
 		 */
-		public CsvException getParsingError() {
-			return parsingError;
+		public String[] getColumnNames() {
+			String rc[] = new String[columnNames.size()];
+			columnNames.toArray(rc);
+			return rc;
 		}
 		
 		/**
@@ -380,6 +470,14 @@ public class XmlReader extends AbstractStreamTableReader {
 			return comments.remove(rowIndex);
 		}
 		
+		/**
+		 * Returns the comments registered by row index.
+		 * @return the comments
+		 */
+		protected Map<Integer, List<String>> getComments() {
+			return comments;
+		}
+		
 		/**
 		 * Registers a comment for given row index.
 		 * @param rowIndex index of row
@@ -393,228 +491,373 @@ public class XmlReader extends AbstractStreamTableReader {
 			}
 			l.add(comment);
 		}
-		
-		/**
-		 * Delivers the next row.
-		 * Used by the {@link XmlReader#readNextRow()}. Method blocks if rows need to be read from stream.
-		 */
-		public Object[] next() {
-			return next(true);
-		}
-		
-		/**
-		 * Delivers the next row.
-		 * Used by the {@link XmlReader#readNextRow()}. Method blocks if rows need to be read from stream.
-		 */
-		private synchronized Object[] next(boolean doRemove) {
-			Object[] rc = null;
-		 
-			if (getParsingError() != null) throw getParsingError();
-			
-			// Return null if parsing was done and no more objects available
-			
-			while (availableObjects.isEmpty() && !parsingStopped) {
-				try {
-					wait();
-				} catch (InterruptedException e) { }
-			}
-			if (!availableObjects.isEmpty()) {
-				rc = doRemove ? availableObjects.remove(0) : availableObjects.get(0);
-			}
-			
-			notify();
-			return rc;
-		}
-
-		/**
-		 * Adds a new object to the list of available objects.
-		 * Used by the {@link XmlHandler}.
-		 * @param o Row to be added (null if parsing stopped)
-		 */
-		public synchronized void addObject(Object o[]) {
-
-			while (availableObjects.size() >= 20) {
-				try {
-					wait();
-				} catch (InterruptedException e) {}
-			}
-			if (o != null) {
-				availableObjects.add(o);
-			} else {
-				// Parsing stopped
-				parsingStopped = true;
-			}
-			notify();
-		}
 	}
 	
 	/**
-	 * SAXParser handler.
-	 * Handling class for XML tags.
+	 * Pull parser for the XML stream.
+	 * Rows are parsed on the caller's thread when they are requested.
 	 * @author ralph
 	 *
 	 */
-	private class XmlHandler extends DefaultHandler2 {
+	private class XmlHandler extends XmlParser {
 
-		private ParserThread thread = null;
+		private XMLStreamReader xml = null;
 		private boolean isRow = false;
 		private boolean isCollectingChars = false;
 		private StringBuilder charBuf = new StringBuilder();
-		private String columnName = null;
+		private int columnSlot = -1;
 		private Class<?> columnType = null;
-		private List<String> columnNames;
-		private Map<String, Object> columnValues;
-		private int rowCount;
+		private Map<String, Class<?>> typeCache = new HashMap<String, Class<?>>();
+		private Object rowValues[] = null;
+		private int rowCount = 0;
 		
-		public XmlHandler(ParserThread thread) {
-			this.thread = thread;
+		/**
+		 * Constructor.
+		 * @param xml the XML stream
+		 */
+		public XmlHandler(XMLStreamReader xml) {
+			this.xml = xml;
 		}
 		
 		/**
-		 * @see org.xml.sax.helpers.DefaultHandler#startDocument()
+		 * Parses the XML stream until the next row was read.
+		 * @return the next row or null when end of stream was reached
 		 */
 		@Override
-		public void startDocument() throws SAXException {
-			columnNames = new ArrayList<String>();
-			columnValues = new HashMap<String, Object>();
-			rowCount = 0;
+		public Object[] next() {
+			try {
+				while (xml.hasNext()) {
+					switch (xml.next()) {
+					case XMLStreamConstants.START_ELEMENT:
+						startElement(getQName());
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.SPACE:
+						if (isCollectingChars) {
+							charBuf.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+						}
+						break;
+					case XMLStreamConstants.END_ELEMENT:
+						Object row[] = endElement();
+						if (row != null) return row;
+						break;
+					case XMLStreamConstants.COMMENT:
+						registerComment(rowCount, xml.getText());
+						break;
+					default:
+						break;
+					}
+				}
+				return null;
+			} catch (XMLStreamException e) {
+				throw new CsvException(e);
+			}
 		}
-
+		
 		/**
-		 * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String, java.lang.String, java.lang.String, org.xml.sax.Attributes)
+		 * Returns the qualified name of the current element.
+		 * @return the name including the prefix
 		 */
-		@Override
-		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+		private String getQName() {
+			String prefix = xml.getPrefix();
+			if (CommonUtils.isEmpty(prefix)) return xml.getLocalName();
+			return prefix+":"+xml.getLocalName();
+		}
+		
+		/**
+		 * Handles the start of an element.
+		 * @param qName name of element
+		 */
+		protected void startElement(String qName) {
 			if (isRow) {
-				// Column starts, save column name and type
-				columnName = getColumnName(qName, attributes);
-				columnType = getColumnType(attributes);
+				// Column starts, save column slot and type
+				columnSlot = getColumnSlot(getColumnName(qName));
+				columnType = getColumnType();
 				
 				// start collecting chars 
 				isCollectingChars = true;
-				charBuf = new StringBuilder();
+				charBuf.setLength(0);
 			} else if (qName.equals(getRowTagName())){
 				// Row starts
 				isRow = true;
-				columnValues.clear();
+				rowValues = new Object[getColumnCount()];
 			}
 		}
 		
 		/**
 		 * Returns the correct column name according to configuration
 		 * @param tagName tag name being evaluated
-		 * @param attr attributes being evaluated
 		 * @return correct column name
 		 */
-		protected String getColumnName(String tagName, Attributes attr) {
+		protected String getColumnName(String tagName) {
 			if (isUseColumnNameTags()) return tagName;
-			return attr.getValue(getColumnNameAttribute());
+			return xml.getAttributeValue(null, getColumnNameAttribute());
 		}
 		
 		/**
-		 * Returns the correct column type
-		 * @param attr attributes being evaluated
+		 * Returns the correct column type.
+		 * Type names are resolved only once.
 		 * @return correct column type
 		 */
-		protected Class<?> getColumnType(Attributes attr) throws SAXException {
-			try {
-				String name = attr.getValue(getColumnTypeAttribute());
-				if (CommonUtils.isEmpty(name)) name = "java.lang.String";
-				return Class.forName(name);
-			} catch (ClassNotFoundException e) {
-				throw new SAXException("Cannot find target class", e);
+		protected Class<?> getColumnType() {
+			String name = xml.getAttributeValue(null, getColumnTypeAttribute());
+			if (CommonUtils.isEmpty(name)) name = "java.lang.String";
+			Class<?> rc = typeCache.get(name);
+			if (rc == null) {
+				try {
+					rc = Class.forName(name);
+				} catch (ClassNotFoundException e) {
+					throw new CsvException("Cannot find target class", e);
+				}
+				typeCache.put(name, rc);
 			}
+			return rc;
 		}
 		
 		/**
-		 * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
-		 */
-		@Override
-		public void characters(char[] ch, int start, int length) throws SAXException {
-			if (isCollectingChars) {
-				charBuf.append(ch, start, length);
-			}
-		}
-
-		/**
-		 * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String, java.lang.String, java.lang.String)
+		 * Handles the end of an element.
+		 * @return the row when the element ended a row, null otherwise
 		 */
-		@Override
-		public void endElement(String uri, String localName, String qName) throws SAXException {
+		protected Object[] endElement() {
 			// stop collecting chars when column starts
 			if (isCollectingChars) {
 				isCollectingChars = false;
-				addColumnValue(columnName, columnType, charBuf.toString());
+				addColumnValue(columnSlot, columnType, charBuf.toString());
 			} else if (isRow) {
 				isRow = false;
-				thread.addObject(getValueArray());
 				rowCount++;
+				return getValueArray();
 			}
+			return null;
 		}
 		
 		/**
 		 * Returns the array for columns to be delivered.
-		 * This method ensures that columns are always delievered in same sequence
-		 * regardless how they appear in XML stream.
+		 * Columns are always delivered in same sequence regardless how they
+		 * appear in XML stream as each column name has a fixed slot.
 		 * @return array of values for current row
 		 */
 		protected Object[] getValueArray() {
-			Object rc[] = new Object[columnNames.size()];
-			
-			for (int i=0; i<rc.length; i++) {
-				rc[i] = columnValues.get(columnNames.get(i));
-			}
-			
+			Object rc[] = rowValues;
+			rowValues = null;
+			if (rc.length != getColumnCount()) rc = Arrays.copyOf(rc, getColumnCount());
 			return rc;
 		}
 		
 		/**
 		 * Adds the value for given column for current row.
-		 * @param columnName name of column
+		 * @param columnSlot index of column
 		 * @param value value in column
 		 */
-		protected void addColumnValue(String columnName, Class<?> columnType, String value) {
+		protected void addColumnValue(int columnSlot, Class<?> columnType, String value) {
 			Object v = null;
 			
-			// add the column name to list of known columns
-			if (!columnNames.contains(columnName)) columnNames.add(columnName);
-			
 			// convert the value
 			if ((columnType == null) && ((value == null) || (value.length() == 0))) v = null;
 			else v = convert(columnType, value);
 			
-			// Add the value
-			columnValues.put(columnName, v);
+			// Add the value, the row grows when a new column was found
+			if (columnSlot >= rowValues.length) rowValues = Arrays.copyOf(rowValues, Math.max(columnSlot+1, getColumnCount()));
+			rowValues[columnSlot] = v;
 		}
 		
 		/**
-		 * @see org.xml.sax.helpers.DefaultHandler#endDocument()
+		 * Closes the XML stream and releases all buffers.
+		 * The underlying input stream is not closed.
 		 */
 		@Override
-		public void endDocument() throws SAXException {
-			// Signal end of parsing
-			thread.addObject(null);
+		public void close() {
+			rowValues = null;
+			getComments().clear();
+			try {
+				xml.close();
+			} catch (XMLStreamException e) {
+				throw new CsvException(e);
+			}
 		}
-
+	}
+	
+	/**
+	 * Rows and comments parsed from a chunk of the XML stream.
+	 */
+	private static class XmlChunk {
+		private int firstRow;
+		private List<Object[]> rows = new ArrayList<Object[]>();
+		private String columnNames[];
+		private Map<Integer, List<String>> comments;
+	}
+	
+	/**
+	 * Parser that parses chunks of rows concurrently.
+	 * The stream is split into chunks by a {@link XmlChunkSplitter} on the caller's thread.
+	 * Each chunk is parsed by a {@link XmlHandler} on a worker thread. The rows are delivered
+	 * in sequence of the stream with their columns mapped to the slots of the whole stream.
+	 * @author ralph
+	 *
+	 */
+	private class ParallelXmlParser extends XmlParser {
+
+		private XmlChunkSplitter splitter;
+		private ExecutorService executor;
+		private Deque<Future<XmlChunk>> pendingChunks = new ArrayDeque<Future<XmlChunk>>();
+		private boolean splitterDone = false;
+		private XmlChunk chunk = null;
+		private int chunkRowIndex = 0;
+		/** Slot of each column of the current chunk */
+		private int chunkSlots[];
+		/** Length of rows by number of chunk columns */
+		private int chunkRowLengths[];
+		/** Number of leading columns that have the same slot in chunk and stream */
+		private int chunkIdentityColumns;
+		
 		/**
-		 * Returns the column names from XML
-		 * @return names of columns
+		 * Constructor.
+		 * @param splitter the splitter that has read the prologue
 		 */
-		public String[] getColumnNames() {
-			String rc[] = new String[columnNames.size()];
-			columnNames.toArray(rc);
-			return rc;
+		public ParallelXmlParser(XmlChunkSplitter splitter) {
+			this.splitter = splitter;
+			AtomicInteger threadCount = new AtomicInteger();
+			this.executor = Executors.newFixedThreadPool(getParallelism(), r -> {
+				Thread rc = new Thread(r, "XmlReader-"+threadCount.incrementAndGet());
+				rc.setDaemon(true);
+				return rc;
+			});
+			splitter.drainComments(this::registerComment);
 		}
 		
 		/**
-		 * @see org.xml.sax.ext.DefaultHandler2#comment(char[], int, int)
+		 * Delivers the next row in sequence of the stream.
+		 * @return the next row or null when end of stream was reached
 		 */
 		@Override
-		public void comment(char[] ch, int start, int length) throws SAXException {
-			thread.registerComment(rowCount, new String(ch, start, length));
+		public Object[] next() {
+			while ((chunk == null) || (chunkRowIndex >= chunk.rows.size())) {
+				chunk = nextChunk();
+				if (chunk == null) return null;
+				startChunk();
+			}
+			Object row[] = chunk.rows.get(chunkRowIndex);
+			chunk.rows.set(chunkRowIndex++, null);
+			return mapRow(row);
 		}
-
-
 		
+		/**
+		 * Returns the next parsed chunk and submits more chunks for parsing.
+		 * @return the chunk or null when end of stream was reached
+		 */
+		private XmlChunk nextChunk() {
+			try {
+				submitChunks();
+				Future<XmlChunk> next = pendingChunks.poll();
+				if (next == null) return null;
+				XmlChunk rc = next.get();
+				submitChunks();
+				return rc;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof CsvException) throw (CsvException)e.getCause();
+				throw new CsvException("Cannot parse XML", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CsvException("XML parsing was interrupted", e);
+			} catch (IOException e) {
+				throw new CsvException("Cannot read XML", e);
+			}
+		}
+		
+		/**
+		 * Splits the stream until enough chunks are being parsed.
+		 * @throws IOException when the stream cannot be read
+		 */
+		private void submitChunks() throws IOException {
+			while (!splitterDone && (pendingChunks.size() < 2*getParallelism())) {
+				byte data[] = splitter.nextChunk();
+				splitter.drainComments(this::registerComment);
+				if (data == null) {
+					splitterDone = true;
+					// No more chunks, the workers terminate when the pending chunks are parsed
+					executor.shutdown();
+				} else {
+					int firstRow = splitter.getChunkFirstRow();
+					pendingChunks.add(executor.submit(() -> parseChunk(data, firstRow)));
+				}
+			}
+		}
+		
+		/**
+		 * Parses a chunk.
+		 * This method is called on a worker thread.
+		 * @param data the chunk
+		 * @param firstRow the index of the first row in the chunk
+		 * @return the parsed chunk
+		 * @throws XMLStreamException when the chunk cannot be parsed
+		 */
+		private XmlChunk parseChunk(byte data[], int firstRow) throws XMLStreamException {
+			Charset charset = splitter.getCharset();
+			List<InputStream> streams = Arrays.asList(
+					new ByteArrayInputStream(("<?xml version=\"1.0\" encoding=\""+splitter.getEncoding()+"\"?><xml-chunk>").getBytes(charset)),
+					new ByteArrayInputStream(data),
+					new ByteArrayInputStream("</xml-chunk>".getBytes(charset)));
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			// Prefixes are declared outside of the chunk
+			factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+			XmlHandler handler = new XmlHandler(factory.createXMLStreamReader(new SequenceInputStream(Collections.enumeration(streams))));
+			XmlChunk rc = new XmlChunk();
+			rc.firstRow = firstRow;
+			Object row[];
+			while ((row = handler.next()) != null) rc.rows.add(row);
+			rc.columnNames = handler.getColumnNames();
+			rc.comments = handler.getComments();
+			handler.xml.close();
+			return rc;
+		}
+		
+		/**
+		 * Registers the columns and comments of the current chunk.
+		 */
+		private void startChunk() {
+			chunkRowIndex = 0;
+			int columnCount = getColumnCount();
+			chunkSlots = new int[chunk.columnNames.length];
+			chunkRowLengths = new int[chunkSlots.length+1];
+			chunkRowLengths[0] = columnCount;
+			chunkIdentityColumns = -1;
+			for (int i=0; i<chunkSlots.length; i++) {
+				chunkSlots[i] = getColumnSlot(chunk.columnNames[i]);
+				chunkRowLengths[i+1] = Math.max(chunkRowLengths[i], chunkSlots[i]+1);
+				if ((chunkIdentityColumns < 0) && (chunkSlots[i] != i)) chunkIdentityColumns = i;
+			}
+			if (chunkIdentityColumns < 0) chunkIdentityColumns = chunkSlots.length;
+			for (Map.Entry<Integer, List<String>> entry : chunk.comments.entrySet()) {
+				for (String comment : entry.getValue()) {
+					registerComment(chunk.firstRow+entry.getKey(), comment);
+				}
+			}
+		}
+		
+		/**
+		 * Maps the columns of a row from the chunk to the slots of the stream.
+		 * @param row row as parsed from the chunk
+		 * @return row as delivered
+		 */
+		private Object[] mapRow(Object row[]) {
+			int length = chunkRowLengths[row.length];
+			if ((row.length <= chunkIdentityColumns) && (length == row.length)) return row;
+			Object rc[] = new Object[length];
+			for (int i=0; i<row.length; i++) rc[chunkSlots[i]] = row[i];
+			return rc;
+		}
+		
+		/**
+		 * Stops all workers and releases all chunks.
+		 * The underlying input stream is not closed.
+		 */
+		@Override
+		public void close() {
+			executor.shutdownNow();
+			for (Future<XmlChunk> f : pendingChunks) f.cancel(true);
+			pendingChunks.clear();
+			chunk = null;
+		}
 	}
 }
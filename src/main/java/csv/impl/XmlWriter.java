@@ -20,14 +20,27 @@ package csv.impl;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-
-import org.apache.commons.text.StringEscapeUtils;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import csv.mapper.StreamMapper;
 import csv.mapper.StringMappings;
 
 /**
  * Writer implementation for XML streams.
+ * <p>
+ * Column tags are computed once per column and value class by {@link #getColumnStartTag(int, Object)}
+ * and {@link #getColumnEndTag(int)}. Each row is assembled in a buffer and written at once.
+ * Subclasses that override one of the tag methods ({@link #getColumnStartTag(int, Object)},
+ * {@link #getColumnEndTag(int)}, {@link #getColumnTagAttributes(int, Object)} or
+ * {@link #getColumnType(Object)}) get their tags computed for each cell instead.
+ * Values are escaped by {@link #encode(String, StringBuilder)} unless a subclass
+ * overrides {@link #encode(Object)}.
+ * The writer is flushed on close only unless a {@link #setFlushInterval(int) flush interval}
+ * is set.
+ * </p>
  * @author ralph
  *
  */
@@ -43,6 +56,24 @@ public class XmlWriter extends AbstractStreamTableWriter {
 	private String encoding = "UTF-8";
 	private Object headerColumns[] = null;
 	private boolean writeHeaderRow = false;
+	private boolean compact = false;
+	/** Tags of each column, computed when required */
+	private ColumnTags columnTags[] = new ColumnTags[0];
+	/** Start tag of rows including indentation */
+	private String rowStartTag = null;
+	/** End tag of rows including indentation */
+	private String rowEndTag = null;
+	/** Buffer for the current row */
+	private StringBuilder rowBuffer = new StringBuilder();
+	/** Characters of the current row */
+	private char rowChars[] = new char[0];
+	/** Whether tags can be computed once per column and value class */
+	private final boolean tagsCached = !overrides(getClass(), "getColumnStartTag", int.class, Object.class)
+			&& !overrides(getClass(), "getColumnEndTag", int.class)
+			&& !overrides(getClass(), "getColumnTagAttributes", int.class, Object.class)
+			&& !overrides(getClass(), "getColumnType", Object.class);
+	/** Whether values must be escaped by {@link #encode(Object)} */
+	private final boolean encodeOverridden = overrides(getClass(), "encode", Object.class);
 	
 	/**
 	 * Constructor.
@@ -127,13 +158,16 @@ public class XmlWriter extends AbstractStreamTableWriter {
 		super.init();
 		headerWritten = false;
 		headerColumns = null;
+		resetTags();
 		setMapper(new StreamMapper(new StringMappings()));
+		setFlushInterval(0);
 	}
 
 	/**
 	 * Prints the row into the stream.
 	 * The first row must contain the column names if {@link #setWriteHeaderRow(boolean)} was set.
 	 * @see csv.TableWriter#printRow(java.lang.Object[])
+	 * @see #setFlushInterval(int)
 	 */
 	@Override
 	public void printRow(Object[] columns) throws IOException {
@@ -142,17 +176,86 @@ public class XmlWriter extends AbstractStreamTableWriter {
 		if (isWriteHeaderRow() && (getRowCount() == 0)) {
 			setHeaderColumns(columns);
 		} else {
-			getWriter().println("\t<"+getRowTagName()+">");
+			if (rowStartTag == null) {
+				rowStartTag = compact ? "<"+getRowTagName()+">" : "\t<"+getRowTagName()+">"+System.lineSeparator();
+				rowEndTag = compact ? "</"+getRowTagName()+">"+System.lineSeparator() : "\t</"+getRowTagName()+">"+System.lineSeparator();
+			}
+			StringBuilder out = rowBuffer;
+			out.setLength(0);
+			out.append(rowStartTag);
 			for (int i=0; i<columns.length; i++) {
-				getWriter().print("\t\t"+getColumnStartTag(i, columns[i]));
-				if (columns[i] != null) {
-					getWriter().print(encode(convert(columns[i])));
-					getWriter().println(getColumnEndTag(i));
+				Object value = columns[i];
+				ColumnTags tags = tagsCached ? getColumnTags(i) : null;
+				if (!compact) out.append("\t\t");
+				out.append(tags != null ? tags.getStartTag(value) : getColumnStartTag(i, value));
+				if (value != null) {
+					if (encodeOverridden) out.append(encode(convert(value)));
+					else encode(convert(value).toString(), out);
+					out.append(tags != null ? tags.endTag : getColumnEndTag(i));
+					if (!compact) out.append(System.lineSeparator());
 				}
 			}
-			getWriter().println("\t</"+getRowTagName()+">");
+			out.append(rowEndTag);
+			write(out);
 		}
 		incrementRowCount();
+		checkFlush();
+	}
+
+	/**
+	 * Writes the buffer to the stream.
+	 * @param buffer the buffer
+	 */
+	private void write(StringBuilder buffer) {
+		int length = buffer.length();
+		if (rowChars.length < length) rowChars = new char[Math.max(length, rowChars.length*2)];
+		buffer.getChars(0, length, rowChars, 0);
+		getWriter().write(rowChars, 0, length);
+	}
+
+	/**
+	 * Returns the tags of a column.
+	 * @param column index of column
+	 * @return the tags
+	 */
+	private ColumnTags getColumnTags(int column) {
+		if (column >= columnTags.length) {
+			ColumnTags tags[] = new ColumnTags[Math.max(column+1, columnTags.length*2)];
+			System.arraycopy(columnTags, 0, tags, 0, columnTags.length);
+			columnTags = tags;
+		}
+		ColumnTags rc = columnTags[column];
+		if (rc == null) {
+			rc = new ColumnTags(column);
+			columnTags[column] = rc;
+		}
+		return rc;
+	}
+
+	/**
+	 * Returns whether the class overrides a method of this class.
+	 * @param clazz the class
+	 * @param name name of method
+	 * @param parameterTypes parameter types of method
+	 * @return <code>true</code> when the method is overridden
+	 */
+	private static boolean overrides(Class<?> clazz, String name, Class<?>... parameterTypes) {
+		for (Class<?> c = clazz; c != XmlWriter.class; c = c.getSuperclass()) {
+			for (Method m : c.getDeclaredMethods()) {
+				if (m.getName().equals(name) && Arrays.equals(m.getParameterTypes(), parameterTypes)) return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Forgets all computed tags.
+	 * Called when a property changes that the tags depend on.
+	 */
+	protected void resetTags() {
+		columnTags = new ColumnTags[0];
+		rowStartTag = null;
+		rowEndTag = null;
 	}
 
 	/**
@@ -280,7 +383,54 @@ public class XmlWriter extends AbstractStreamTableWriter {
 	 * @return XML encoded string
 	 */
 	protected String encode(Object s) {
-		return StringEscapeUtils.escapeXml11(s.toString());
+		StringBuilder rc = new StringBuilder();
+		encode(s.toString(), rc);
+		return rc.toString();
+	}
+	
+	/**
+	 * Encodes a text for usage in XML file.
+	 * Special characters are replaced by entities and control characters by character
+	 * references as for XML 1.1. Characters that are not allowed are removed.
+	 * @param s text to encode
+	 * @param out buffer receiving the encoded text
+	 * @since 4.4
+	 */
+	protected void encode(String s, StringBuilder out) {
+		int length = s.length();
+		int start = 0;
+		for (int i=0; i<length; i++) {
+			char c = s.charAt(i);
+			String replacement;
+			switch (c) {
+			case '"':  replacement = "&quot;"; break;
+			case '&':  replacement = "&amp;"; break;
+			case '<':  replacement = "&lt;"; break;
+			case '>':  replacement = "&gt;"; break;
+			case '\'': replacement = "&apos;"; break;
+			case '\t':
+			case '\n':
+			case '\r':
+			case '\u0085':
+				continue;
+			default:
+				if ((c >= ' ') && (c < 0x7f)) continue;
+				if (((c < ' ') && (c != 0)) || ((c >= 0x7f) && (c <= 0x9f))) {
+					replacement = "&#"+(int)c+";";
+				} else if (Character.isHighSurrogate(c) && (i+1 < length) && Character.isLowSurrogate(s.charAt(i+1))) {
+					i++;
+					continue;
+				} else if ((c == 0) || Character.isSurrogate(c) || (c == 0xfffe) || (c == 0xffff)) {
+					replacement = "";
+				} else {
+					continue;
+				}
+			}
+			out.append(s, start, i);
+			out.append(replacement);
+			start = i+1;
+		}
+		out.append(s, start, length);
 	}
 	
 	/**
@@ -334,6 +484,7 @@ public class XmlWriter extends AbstractStreamTableWriter {
 	 */
 	public void setRowTagName(String rowTagName) {
 		this.rowTagName = rowTagName;
+		resetTags();
 	}
 
 	/**
@@ -352,6 +503,7 @@ public class XmlWriter extends AbstractStreamTableWriter {
 	 */
 	public void setColumnTagName(String columnTagName) {
 		this.columnTagName = columnTagName;
+		resetTags();
 	}
 
 	/**
@@ -368,6 +520,7 @@ public class XmlWriter extends AbstractStreamTableWriter {
 	 */
 	public void setUseColumnNameTags(boolean useColumnNameTags) {
 		this.useColumnNameTags = useColumnNameTags;
+		resetTags();
 	}
 
 	/**
@@ -386,6 +539,7 @@ public class XmlWriter extends AbstractStreamTableWriter {
 	 */
 	public void setColumnNameAttribute(String columnNameAttribute) {
 		this.columnNameAttribute = columnNameAttribute;
+		resetTags();
 	}
 
 	
@@ -403,6 +557,7 @@ public class XmlWriter extends AbstractStreamTableWriter {
 	 */
 	public void setColumnTypeAttribute(String columnTypeAttribute) {
 		this.columnTypeAttribute = columnTypeAttribute;
+		resetTags();
 	}
 
 	/**
@@ -435,6 +590,7 @@ public class XmlWriter extends AbstractStreamTableWriter {
 	 */
 	public void setHeaderColumns(Object[] headerColumns) {
 		this.headerColumns = headerColumns;
+		resetTags();
 	}
 
 	/**
@@ -453,5 +609,67 @@ public class XmlWriter extends AbstractStreamTableWriter {
 		this.writeHeaderRow = writeHeaderRow;
 	}
 
-	
+	/**
+	 * Returns whether rows are written without indentation.
+	 * @return <code>true</code> when each row is written in a single line
+	 * @since 4.4
+	 */
+	public boolean isCompact() {
+		return compact;
+	}
+
+	/**
+	 * Sets whether rows are written without indentation.
+	 * @param compact <code>true</code> when each row shall be written in a single line (default is <code>false</code>)
+	 * @since 4.4
+	 */
+	public void setCompact(boolean compact) {
+		this.compact = compact;
+		resetTags();
+	}
+
+	/**
+	 * The tags of a column.
+	 * Start tags are computed once per value class.
+	 */
+	private class ColumnTags {
+		
+		private int column;
+		private String endTag;
+		private String nullStartTag = null;
+		private Map<Class<?>, String> startTags = new HashMap<>();
+		private Class<?> lastType = null;
+		private String lastStartTag = null;
+		
+		/**
+		 * Constructor.
+		 * @param column index of column
+		 */
+		public ColumnTags(int column) {
+			this.column = column;
+			this.endTag = getColumnEndTag(column);
+		}
+		
+		/**
+		 * Returns the start tag for a value.
+		 * @param value the value
+		 * @return the start tag
+		 */
+		public String getStartTag(Object value) {
+			if (value == null) {
+				if (nullStartTag == null) nullStartTag = getColumnStartTag(column, null);
+				return nullStartTag;
+			}
+			Class<?> type = value.getClass();
+			if (type != lastType) {
+				lastStartTag = startTags.get(type);
+				if (lastStartTag == null) {
+					lastStartTag = getColumnStartTag(column, value);
+					startTags.put(type, lastStartTag);
+				}
+				lastType = type;
+			}
+			return lastStartTag;
+		}
+	}
 }
@@ -22,6 +22,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -221,6 +222,21 @@ public class CSVWriterReaderTest {
 		}
 	}
 
+	/**
+	 * Tests that printed texts are flushed according to the flush interval.
+	 */
+	@Test
+	public void testPrintTextsFlush() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CSVWriter out = new CSVWriter(bytes);
+		out.setFlushInterval(2);
+		out.printTexts(new Object[] { "a", null, "b" }, 3);
+		assertEquals(0, bytes.size(), "Writer was flushed");
+		out.printTexts(new Object[] { "c" }, 1);
+		assertEquals("a;;b\nc\n", new String(bytes.toByteArray(), CSVUtils.getDefaultCharset()));
+		out.close();
+	}
+
 	/**
 	 * Internal class for testing the comment callback.
 	 */
@@ -24,11 +24,23 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
 
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -231,4 +243,398 @@ public class ExcelWriterReaderTest {
 		testRow(new Double[]{99945.0}, in.next());
 		assertFalse(in.hasNext());
 	}
+	/**
+	 * This method checks that streaming mode delivers the same rows as the workbook mode.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testStreamingRead() throws IOException {
+		ExcelWriter out = new ExcelWriter(fFile);
+		out.printRow(TEST_HEADER);
+		for (int row= 0; row < TEST_VALUES.length; row++) {
+			out.printRow(TEST_VALUES[row]);
+		}
+		out.printRow(new Object[] { 1.5d, new java.util.Date(1296432000000L), Boolean.TRUE, null, "" });
+		out.close();
+
+		ExcelReader expected = new ExcelReader(fFile);
+		ExcelReader in = new ExcelReader(fFile);
+		in.setStreaming(true);
+		assertEquals(expected.getNumRows(), in.getNumRows());
+		assertEquals(expected.computeMaxColumnCount(), in.computeMaxColumnCount());
+		testStreamedRows(expected, in);
+		expected.close();
+		in.close();
+	}
+
+	/**
+	 * This method checks that all sheets of a workbook can be read in streaming mode.
+	 * @throws IOException - when the file cannot be opened/read
+	 */
+	@Test
+	public void testStreamingMultisheet() throws IOException {
+		ExcelReader expected = new ExcelReader(multisheetUrl.openStream());
+		ExcelReader in = new ExcelReader(multisheetUrl.openStream());
+		in.setStreaming(true);
+		for (int i=0; i<expected.getWorkbook().getNumberOfSheets(); i++) {
+			expected.selectSheet(i);
+			in.selectSheet(expected.getWorkbook().getSheetName(i));
+			testStreamedRows(expected, in);
+		}
+		in.close();
+
+		ExcelWorkbookReader workbook = new ExcelWorkbookReader(multisheetUrl.openStream());
+		assertEquals(expected.getWorkbook().getNumberOfSheets(), workbook.getSheetNames().size());
+		List<ExcelReader> sheetReaders = workbook.getSheetReaders();
+		for (int i=0; i<sheetReaders.size(); i++) {
+			expected.selectSheet(i);
+			testStreamedRows(expected, sheetReaders.get(i));
+			sheetReaders.get(i).close();
+		}
+		workbook.close();
+		expected.close();
+
+		in = new ExcelReader(externalSheetRefUrl.openStream());
+		in.setStreaming(true);
+		assertTrue(in.hasNext()); 
+		testRow(new Double[]{99945.0}, in.next());
+		assertFalse(in.hasNext());
+		in.close();
+	}
+
+	/**
+	 * Checks that a reader in streaming mode delivers the same rows as the master reader.
+	 * @param master reader in workbook mode
+	 * @param copy reader in streaming mode
+	 */
+	protected void testStreamedRows(ExcelReader master, ExcelReader copy) {
+		while (master.hasNext()) {
+			assertTrue(copy.hasNext());
+			testRow(master.next(), copy.next());
+		}
+		assertFalse(copy.hasNext());
+	}
+	/**
+	 * This method checks that planned styles are shared between cells of a column.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testStylePlan() throws IOException {
+		ExcelWriter out = new ExcelWriter(fFile);
+		out.setFormatter(new DefaultExcelFormatter(true));
+		out.printRow(TEST_HEADER);
+		for (int row= 0; row < 100; row++) {
+			out.printRow(new Object[] { "Row "+row, row, row * 1.5d, new java.util.Date() });
+		}
+		Sheet sheet = out.getWorkbook().getSheetAt(0);
+		assertTrue(out.getWorkbook().getFontAt(sheet.getRow(0).getCell(0).getCellStyle().getFontIndex()).getBold());
+		assertFalse(out.getWorkbook().getFontAt(sheet.getRow(1).getCell(0).getCellStyle().getFontIndex()).getBold());
+		for (int col=0; col<4; col++) {
+			assertEquals(sheet.getRow(1).getCell(col).getCellStyle(), sheet.getRow(99).getCell(col).getCellStyle());
+		}
+		out.close();
+
+		// Styles depending on the value are not planned by default
+		out = new ExcelWriter(fFile);
+		DefaultExcelFormatter formatter = new DefaultExcelFormatter(true) {
+			@Override
+			public Short getForegroundColor(ExcelWriter writer, int row, int column, Object value) {
+				if ((value instanceof Integer) && ((Integer)value < 0)) return IndexedColors.RED.getIndex();
+				return null;
+			}
+		};
+		assertFalse(formatter.isStylePlanEnabled());
+		out.setFormatter(formatter);
+		out.printRow(TEST_HEADER);
+		out.printRow(new Object[] { "Row 1", 1 });
+		out.printRow(new Object[] { "Row 2", 2 });
+		out.printRow(new Object[] { "Row 3", -3 });
+		sheet = out.getWorkbook().getSheetAt(0);
+		assertEquals(IndexedColors.RED.getIndex(), sheet.getRow(3).getCell(1).getCellStyle().getFillForegroundColor());
+		assertFalse(sheet.getRow(1).getCell(1).getCellStyle().getFillForegroundColor() == IndexedColors.RED.getIndex());
+		out.close();
+
+		// Formats and fonts depending on the row are not planned either
+		out = new ExcelWriter(fFile);
+		formatter = new DefaultExcelFormatter(true) {
+			@Override
+			public String getIntegerFormat(int row, int column, Object value) {
+				return row > 2 ? "0.0" : super.getIntegerFormat(row, column, value);
+			}
+		};
+		assertFalse(formatter.isStylePlanEnabled());
+		out.setFormatter(formatter);
+		out.printRow(TEST_HEADER);
+		out.printRow(new Object[] { "Row 1", 1 });
+		out.printRow(new Object[] { "Row 2", 2 });
+		out.printRow(new Object[] { "Row 3", 3 });
+		sheet = out.getWorkbook().getSheetAt(0);
+		assertEquals("0", sheet.getRow(1).getCell(1).getCellStyle().getDataFormatString());
+		assertEquals("0.0", sheet.getRow(3).getCell(1).getCellStyle().getDataFormatString());
+		out.close();
+		assertFalse(new DefaultExcelFormatter(true) {
+			@Override
+			public Font getPlainFont(Workbook workbook, int row, int column, Object value) {
+				return super.getPlainFont(workbook, row, column, value);
+			}
+		}.isStylePlanEnabled());
+
+		// Changing properties discards the planned styles
+		out = new ExcelWriter(fFile);
+		formatter = new DefaultExcelFormatter(true);
+		out.setFormatter(formatter);
+		out.printRow(TEST_HEADER);
+		out.printRow(new Object[] { "Row 1", 1 });
+		formatter.setDefaultBorderThickness(BorderStyle.THIN);
+		out.printRow(new Object[] { "Row 2", 2 });
+		sheet = out.getWorkbook().getSheetAt(0);
+		assertEquals(BorderStyle.NONE, sheet.getRow(1).getCell(1).getCellStyle().getBorderTop());
+		assertEquals(BorderStyle.THIN, sheet.getRow(2).getCell(1).getCellStyle().getBorderTop());
+		out.close();
+	}
+	/**
+	 * This method checks the formula strategies.
+	 * @throws IOException - when the workbook cannot be closed
+	 */
+	@Test
+	public void testFormulaStrategy() throws IOException {
+		for (ExcelReader.FormulaStrategy strategy : ExcelReader.FormulaStrategy.values()) {
+			HSSFWorkbook workbook = new HSSFWorkbook();
+			Row row = workbook.createSheet().createRow(0);
+			row.createCell(0).setCellValue(2d);
+			row.createCell(1).setCellValue(3d);
+			row.createCell(2).setCellFormula("A1*B1");
+
+			ExcelReader in = new ExcelReader(workbook);
+			in.setFormulaStrategy(strategy);
+			in.selectSheet(0);
+			assertTrue(in.hasNext());
+			Object values[] = in.next();
+			if (strategy == ExcelReader.FormulaStrategy.CACHED) {
+				assertFalse(in.isEvaluateFormulas());
+				assertEquals(0L, in.getFormulaEvaluationCount());
+				testRow(new Double[]{2d, 3d, 0d}, values);
+			} else {
+				assertTrue(in.isEvaluateFormulas());
+				assertEquals(1L, in.getFormulaEvaluationCount());
+				testRow(new Double[]{2d, 3d, 6d}, values);
+				in.getValues(0);
+				assertEquals(1L, in.getFormulaEvaluationCount());
+				if (strategy == ExcelReader.FormulaStrategy.LAZY) {
+					// Remembered results are released on reset
+					in.reset();
+					testRow(new Double[]{2d, 3d, 6d}, in.next());
+					assertEquals(2L, in.getFormulaEvaluationCount());
+				}
+			}
+			in.close();
+			workbook.close();
+		}
+	}
+
+	/**
+	 * This method checks that column widths are set from the estimates of the writer.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testColumnWidthEstimate() throws IOException {
+		ExcelWriter out = new ExcelWriter(fFile);
+		out.setFormatter(new DefaultExcelFormatter(true));
+		out.printRow(new Object[] { "A", "Short", 1 });
+		out.printRow(new Object[] { "A much longer text value\nwith two lines", null, 123456789 });
+		Sheet sheet = out.getSheet();
+		ColumnWidthEstimator estimator = out.getColumnWidthEstimator(sheet);
+		assertEquals(3, estimator.getColumnCount());
+		out.close();
+		assertEquals(estimator.getColumnWidth(0, 0), sheet.getColumnWidth(0));
+		assertTrue(sheet.getColumnWidth(0) > sheet.getColumnWidth(1));
+		assertEquals(ColumnWidthEstimator.getTextWidth("A much longer text value"), ColumnWidthEstimator.getValueWidth("A much longer text value\nwith two lines"));
+		assertEquals(9f, ColumnWidthEstimator.getValueWidth(123456789));
+	}
+
+	/**
+	 * This method checks that declared column styles are used instead of the formatter.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testColumnStyle() throws IOException {
+		ExcelWriter out = new ExcelWriter(fFile);
+		out.setFormatter(new DefaultExcelFormatter(true));
+		CellStyle style = out.getWorkbook().createCellStyle();
+		style.setDataFormat(out.getWorkbook().createDataFormat().getFormat("0.000"));
+		out.setColumnStyle(1, style, Number.class);
+		out.setRowBanding(IndexedColors.GREY_25_PERCENT.getIndex());
+		out.printRow(TEST_HEADER);
+		for (int row= 0; row < 10; row++) {
+			out.printRow(new Object[] { "Row "+row, row * 1.5d });
+		}
+		out.close();
+
+		ExcelReader in = new ExcelReader(fFile);
+		Sheet sheet = in.getSheet();
+		assertTrue(in.getWorkbook().getFontAt(sheet.getRow(0).getCell(1).getCellStyle().getFontIndex()).getBold());
+		for (int row= 1; row <= 10; row++) {
+			assertEquals("0.000", sheet.getRow(row).getCell(1).getCellStyle().getDataFormatString());
+		}
+		assertEquals("0.000", sheet.getColumnStyle(1).getDataFormatString());
+		assertEquals(1, sheet.getSheetConditionalFormatting().getNumConditionalFormattings());
+		in.setHasHeaderRow(true);
+		testRow(TEST_HEADER, in.getHeaderRow());
+		assertEquals(13.5d, in.getValues(10)[1]);
+		in.close();
+	}
+
+	/**
+	 * This method checks that only the rows and columns of a region are read.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testRegion() throws IOException {
+		ExcelWriter out = new ExcelWriter(fFile);
+		for (int row= 0; row < 100; row++) {
+			out.printRow(new Object[] { "A"+row, "B"+row, "C"+row, "D"+row });
+		}
+		out.close();
+
+		for (boolean streaming : new boolean[] { false, true }) {
+			ExcelReader in = new ExcelReader(fFile);
+			in.setStreaming(streaming);
+			in.setRegion(10, 19, 3, 1);
+			for (int row= 10; row < 20; row++) {
+				assertTrue(in.hasNext());
+				testRow(new String[] { "D"+row, "B"+row }, in.next());
+			}
+			assertFalse(in.hasNext());
+			in.setRegion(98, -1);
+			assertTrue(in.hasNext());
+			testRow(new String[] { "A98", "B98", "C98", "D98" }, in.next());
+			assertTrue(in.hasNext());
+			in.next();
+			assertFalse(in.hasNext());
+			in.close();
+		}
+
+		// Region starting before the first row of the sheet
+		HSSFWorkbook workbook = new HSSFWorkbook();
+		Sheet sheet = workbook.createSheet();
+		for (int row= 5; row < 8; row++) {
+			sheet.createRow(row).createCell(0).setCellValue("A"+row);
+		}
+		ExcelReader in = new ExcelReader(workbook);
+		in.setSkipBlankRows(false);
+		in.selectSheet(0);
+		in.setRegion(2, -1);
+		for (int row= 5; row < 8; row++) {
+			assertTrue(in.hasNext());
+			testRow(new String[] { "A"+row }, in.next());
+		}
+		assertFalse(in.hasNext());
+		in.close();
+		workbook.close();
+	}
+
+	/**
+	 * This method checks that new sheets are created when the row count is reached.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testRollover() throws IOException {
+		ExcelWriter out = new ExcelWriter(fFile);
+		out.setFormatter(new DefaultExcelFormatter(true, true));
+		assertEquals(65536, out.getMaxRowsPerSheet());
+		out.setRollover(true);
+		out.setRolloverRowCount(10);
+		out.setRepeatHeaderRow(true);
+		out.printRow(TEST_HEADER);
+		for (int row= 0; row < 25; row++) {
+			out.printRow(new Object[] { "Row "+row, row });
+		}
+		out.close();
+
+		ExcelReader in = new ExcelReader(fFile);
+		assertEquals(3, in.getWorkbook().getNumberOfSheets());
+		assertEquals("Sheet1 (2)", in.getWorkbook().getSheetName(1));
+		assertEquals("Sheet1 (3)", in.getWorkbook().getSheetName(2));
+		int row = 0;
+		for (int sheet=0; sheet<3; sheet++) {
+			in.selectSheet(sheet);
+			testRow(TEST_HEADER, in.next());
+			while (in.hasNext()) {
+				Object values[] = in.next();
+				assertEquals("Row "+row, values[0]);
+				row++;
+			}
+			assertTrue(in.getWorkbook().getFontAt(in.getSheet().getRow(0).getCell(0).getCellStyle().getFontIndex()).getBold());
+		}
+		assertEquals(25, row);
+		in.close();
+	}
+
+	/**
+	 * This method checks that files written without a workbook can be read.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testStreamWriter() throws IOException {
+		LocalDate date = LocalDate.of(2024, 2, 29);
+		LocalDateTime dateTime = LocalDateTime.of(2024, 3, 1, 13, 45);
+		String longText = "\u0416\u00e4".repeat(6000);
+		Object typed[] = new Object[] { 42, 2.5d, date, dateTime, Boolean.TRUE, 1e12, null, longText };
+		ExcelStreamWriter out = new ExcelStreamWriter(fFile);
+		out.setSheetName("Data");
+		out.printRow(TEST_HEADER);
+		for (int row= 0; row < TEST_VALUES.length; row++) {
+			out.printRow(TEST_VALUES[row]);
+		}
+		out.printRow(typed);
+		out.printRow(new Object[0]);
+		out.printRow(new Object[] { null, "last" });
+		out.close();
+
+		for (boolean streaming : new boolean[] { false, true }) {
+			ExcelReader in = new ExcelReader(fFile);
+			in.setStreaming(streaming);
+			in.setJavaTimeEnabled(true);
+			in.setHasHeaderRow(true);
+			testRow(TEST_HEADER, in.getHeaderRow());
+			for (int row= 0; row < TEST_VALUES.length; row++) {
+				testRow(TEST_VALUES[row], in.next());
+			}
+			Object columns[] = in.next();
+			assertEquals(42d, ((Number)columns[0]).doubleValue());
+			assertEquals(2.5d, ((Number)columns[1]).doubleValue());
+			assertEquals(date.atStartOfDay(), columns[2]);
+			assertEquals(dateTime, columns[3]);
+			assertEquals(Boolean.TRUE, columns[4]);
+			assertEquals(1e12, ((Number)columns[5]).doubleValue());
+			assertEquals(null, columns[6]);
+			assertEquals(longText, columns[7]);
+			assertEquals("last", in.next()[1]);
+			assertFalse(in.hasNext());
+			in.close();
+		}
+
+		// Large file with more than 109 FAT sectors
+		String text = "abcdefghij".repeat(3000);
+		out = new ExcelStreamWriter(fFile);
+		for (int row= 0; row < 300; row++) {
+			out.printRow(new Object[] { row, text });
+		}
+		out.close();
+		assertTrue(fFile.length() > 9000000);
+		ExcelReader in = new ExcelReader(fFile);
+		in.setStreaming(true);
+		int row = 0;
+		while (in.hasNext()) {
+			Object values[] = in.next();
+			assertEquals(row, ((Number)values[0]).intValue());
+			assertEquals(text, values[1]);
+			row++;
+		}
+		assertEquals(300, row);
+		in.close();
+		try (FileInputStream fin = new FileInputStream(fFile); HSSFWorkbook workbook = new HSSFWorkbook(fin)) {
+			assertEquals(299, workbook.getSheetAt(0).getLastRowNum());
+		}
+	}
 }
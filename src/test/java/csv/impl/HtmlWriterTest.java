@@ -0,0 +1,113 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.junit.jupiter.api.Test;
+
+/**
+ * JUnit Test for HTML output.
+ * @author RalphSchuster
+ *
+ */
+public class HtmlWriterTest {
+
+	/**
+	 * Tests the templates and the flush interval.
+	 * @throws IOException when the table cannot be written
+	 */
+	@Test
+	public void testTemplates() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		HtmlWriter writer = new HtmlWriter(out);
+		writer.setCharset(StandardCharsets.UTF_8);
+		writer.setFlushInterval(0);
+		writer.setTbodyTdTemplate("<td>|</td>");
+		writer.setTbodyTdTemplate2("<td class=\"x\">|</td>");
+		writer.setTbodyTrTemplate2("<tr class=\"odd\">|</tr>\n");
+		writer.printRow(new Object[] { "A", "B" });
+		writer.printRow(new Object[] { "a<b", null, "c" });
+		writer.printRow(new Object[] { "é", "&" });
+		assertEquals(0, out.size(), "Writer was flushed");
+		writer.close();
+		
+		String expected = "<table>\n"+
+			"\t<thead>\n"+
+			"\t\t<tr>\n"+
+			"\t\t\t<th class=\"even\">A</th>\n"+
+			"\t\t\t<th class=\"odd\">B</th>\n"+
+			"\t\t</tr>\n"+
+			"\t</thead>\n"+
+			"\t<tbody>\n"+
+			"\t\t<tr class=\"even\">\n"+
+			"<td>a&lt;b</td><td class=\"x\">&nbsp;</td><td>c</td>"+
+			"\t\t</tr>\n"+
+			"<tr class=\"odd\"><td>&eacute;</td><td class=\"x\">&amp;</td></tr>\n"+
+			"\t</tbody>\n"+
+			"</table>\n";
+		assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Tests that overridden template getters are used.
+	 * @throws IOException when the table cannot be written
+	 */
+	@Test
+	public void testTemplateGetters() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		HtmlWriter writer = new HtmlWriter(out) {
+			@Override
+			public String getTableTemplate() {
+				return "<table class=\"data\">|</table>";
+			}
+			@Override
+			public String getTbodyTdTemplate() {
+				return "<td>"+getCurrentRowIndex()+":|</td>";
+			}
+		};
+		writer.setCharset(StandardCharsets.UTF_8);
+		writer.setHasHeaderRow(false);
+		writer.setTbodyTemplate("<tbody>|</tbody>");
+		writer.setTbodyTrTemplate("<tr>|</tr>");
+		writer.setTbodyTrTemplate2("<tr>|</tr>");
+		writer.setTbodyTdTemplate2("<td>|</td>");
+		writer.printRow(new Object[] { "a", "b" });
+		writer.printRow(new Object[] { "c", "d" });
+		writer.close();
+		assertEquals("<table class=\"data\"><tbody><tr><td>0:a</td><td>b</td></tr><tr><td>1:c</td><td>d</td></tr></tbody></table>", new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Tests the HTML encoding.
+	 */
+	@Test
+	public void testEncodeHtml() {
+		StringBuilder s = new StringBuilder();
+		for (char c=1; c<0xFFFF; c++) s.append(c);
+		String text = "Text with <tags> & \"quotes\" © α ♦ 😀 "+s;
+		assertEquals(StringEscapeUtils.escapeHtml4(text), HtmlWriter.encodeHtml(text));
+		assertEquals("plain", HtmlWriter.encodeHtml("plain"));
+	}
+
+}
@@ -0,0 +1,397 @@
+/*
+ * This file is part of CSV package.
+ *
+ *  CSV is free software: you can redistribute it 
+ *  and/or modify it under the terms of version 3 of the GNU 
+ *  Lesser General Public  License as published by the Free Software 
+ *  Foundation.
+ *  
+ *  CSV is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public 
+ *  License along with CSV.  If not, see 
+ *  <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ */
+package csv.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import csv.CsvException;
+import csv.util.CSVUtils;
+
+/**
+ * JUnit Test for writing and reading JDBC tables.
+ * @author RalphSchuster
+ *
+ */
+public class JdbcWriterReaderTest {
+
+	private static final String QUERY = "SELECT * FROM test ORDER BY id";
+	private static final int ROW_COUNT = 100;
+	private static final String TARGET_QUERY = "SELECT id, name, amount FROM target ORDER BY id";
+
+	private Connection connection;
+
+	/**
+	 * Creates the test tables.
+	 * @throws SQLException when the tables cannot be created
+	 */
+	@BeforeEach
+	public void init() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:JdbcWriterReaderTest");
+		try (Statement stmt = connection.createStatement()) {
+			stmt.execute("CREATE TABLE test (id INTEGER, big BIGINT, small SMALLINT, name VARCHAR(50), amount DECIMAL(10,2), ratio DOUBLE, rate REAL, flag BOOLEAN, birthday DATE, stamp TIMESTAMP)");
+			stmt.execute("CREATE TABLE target (id INTEGER PRIMARY KEY, name VARCHAR(50), amount DECIMAL(10,2))");
+		}
+		try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO test VALUES (?,?,?,?,?,?,?,?,?,?)")) {
+			for (int i=0; i<ROW_COUNT; i++) {
+				boolean nulls = i % 10 == 9;
+				stmt.setInt(1, i);
+				stmt.setObject(2, nulls ? null : Long.valueOf(i * 1000000000L));
+				stmt.setObject(3, nulls ? null : Short.valueOf((short)i));
+				stmt.setString(4, nulls ? null : "Name "+i);
+				stmt.setBigDecimal(5, nulls ? null : new BigDecimal(i+".25"));
+				stmt.setObject(6, nulls ? null : Double.valueOf(i / 3d));
+				stmt.setObject(7, nulls ? null : Float.valueOf(i / 4f));
+				stmt.setObject(8, nulls ? null : Boolean.valueOf(i % 2 == 0));
+				stmt.setDate(9, nulls ? null : Date.valueOf("2024-01-01"));
+				stmt.setTimestamp(10, nulls ? null : new Timestamp(1700000000000L + i*1000L));
+				stmt.executeUpdate();
+			}
+		}
+	}
+
+	/**
+	 * Drops the test tables.
+	 * @throws SQLException when the tables cannot be dropped
+	 */
+	@AfterEach
+	public void done() throws SQLException {
+		try (Statement stmt = connection.createStatement()) {
+			stmt.execute("DROP TABLE test");
+			stmt.execute("DROP TABLE target");
+		}
+		connection.close();
+	}
+
+	/**
+	 * Tests that typed getters and prefetching deliver the same values as getObject().
+	 * @throws SQLException when the query fails
+	 */
+	@Test
+	public void testTypedRead() throws SQLException {
+		List<Object[]> expected = new ArrayList<>();
+		try (Statement stmt = connection.createStatement()) {
+			stmt.execute(QUERY);
+			JdbcReader reader = new JdbcReader(stmt);
+			reader.setTypedGetters(false);
+			for (Object row[] : reader) expected.add(row);
+			reader.close();
+		}
+		assertEquals(ROW_COUNT, expected.size(), "Invalid row count");
+
+		JdbcReader reader = new JdbcReader(connection, QUERY);
+		// Resetting before the query was executed
+		reader.reset();
+		reader.setFetchSize(50);
+		reader.setPrefetchSize(7);
+		assertArrayEquals(new Object[] { "ID", "BIG", "SMALL", "NAME", "AMOUNT", "RATIO", "RATE", "FLAG", "BIRTHDAY", "STAMP" }, reader.getHeaderRow(), "Invalid header row");
+		for (int pass=0; pass<2; pass++) {
+			int rowCount = 0;
+			while (reader.hasNext()) {
+				Object row[] = reader.next();
+				Object values[] = expected.get(rowCount);
+				assertArrayEquals(values, row, "Invalid row "+rowCount);
+				for (int i=0; i<row.length; i++) {
+					if (values[i] == null) assertNull(row[i], "Invalid value in row "+rowCount);
+					else assertEquals(values[i].getClass(), row[i].getClass(), "Invalid type in row "+rowCount+" column "+i);
+				}
+				rowCount++;
+			}
+			assertEquals(ROW_COUNT, rowCount, "Invalid row count");
+			reader.reset();
+		}
+		reader.close();
+		// Resetting a closed reader executes the query again
+		reader.reset();
+		assertArrayEquals(expected.get(0), reader.next(), "Invalid row after reset");
+		reader.close();
+	}
+
+	/**
+	 * Tests copying a CSV stream into a table.
+	 * @throws Exception when the test fails
+	 */
+	@Test
+	public void testCopy() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CSVWriter csvWriter = new CSVWriter(out);
+		csvWriter.printRow(new Object[] { "id", "name", "amount" });
+		for (int i=0; i<25; i++) csvWriter.printRow(new Object[] { i, "Name "+i, i+".50" });
+		csvWriter.close();
+
+		CSVReader csvReader = new CSVReader(new ByteArrayInputStream(out.toByteArray()));
+		csvReader.setHasHeaderRow(true);
+		JdbcWriter writer = new JdbcWriter(connection, "target");
+		writer.setBatchSize(4);
+		writer.setRowsPerStatement(3);
+		writer.setCommitInterval(10);
+		CSVUtils.copy(csvReader, writer, true);
+		writer.close();
+		csvReader.close();
+		assertEquals(25, writer.getRowCount(), "Invalid row count");
+		assertTrue(connection.getAutoCommit(), "Auto-commit was not restored");
+
+		JdbcReader reader = new JdbcReader(connection, TARGET_QUERY);
+		int rowCount = 0;
+		for (Object row[] : reader) {
+			assertArrayEquals(new Object[] { rowCount, "Name "+rowCount, new BigDecimal(rowCount+".50") }, row, "Invalid row "+rowCount);
+			rowCount++;
+		}
+		reader.close();
+		assertEquals(25, rowCount, "Invalid row count");
+	}
+
+	/**
+	 * Tests that column names are matched against the table and quoted.
+	 * @throws Exception when the test fails
+	 */
+	@Test
+	public void testColumnNames() throws Exception {
+		JdbcWriter writer = new JdbcWriter(connection, "target");
+		writer.printRow(new Object[] { "Id", "NAME) VALUES (1, 'x'); DROP TABLE test; --" });
+		assertThrows(CsvException.class, () -> writer.printRow(new Object[] { 1, "a" }));
+		writer.close();
+
+		JdbcWriter quoted = new JdbcWriter(connection, "target");
+		quoted.printRow(new Object[] { "Id", "NAME" });
+		quoted.printRow(new Object[] { 1, "a" });
+		quoted.printRow(new Object[] { 2, null });
+		quoted.close();
+		JdbcReader reader = new JdbcReader(connection, TARGET_QUERY);
+		assertArrayEquals(new Object[] { 1, "a", null }, reader.next(), "Invalid row");
+		assertArrayEquals(new Object[] { 2, null, null }, reader.next(), "Invalid row");
+		reader.close();
+		reader = new JdbcReader(connection, QUERY);
+		assertTrue(reader.hasNext(), "Table was dropped");
+		reader.close();
+	}
+
+	/**
+	 * Tests that rows not yet committed are rolled back when inserting rows failed.
+	 * @throws Exception when the test fails
+	 */
+	@Test
+	public void testRollback() throws Exception {
+		JdbcWriter writer = new JdbcWriter(connection, "target");
+		writer.setColumns("id", "name");
+		writer.setBatchSize(2);
+		writer.setCommitInterval(4);
+		for (int i=0; i<6; i++) writer.printRow(new Object[] { i, "Name "+i });
+		// Duplicate key fails the next batch
+		writer.printRow(new Object[] { 6, "Name 6" });
+		assertThrows(CsvException.class, () -> writer.printRow(new Object[] { 0, "Duplicate" }));
+		assertThrows(CsvException.class, () -> writer.printRow(new Object[] { 7, "Name 7" }));
+		writer.close();
+		assertTrue(connection.getAutoCommit(), "Auto-commit was not restored");
+
+		JdbcReader reader = new JdbcReader(connection, TARGET_QUERY);
+		int rowCount = 0;
+		for (Object row[] : reader) {
+			assertArrayEquals(new Object[] { rowCount, "Name "+rowCount, null }, row, "Invalid row "+rowCount);
+			rowCount++;
+		}
+		reader.close();
+		assertEquals(4, rowCount, "Uncommitted rows were not rolled back");
+	}
+
+	/**
+	 * Tests that a row that cannot be converted is not inserted.
+	 * @throws Exception when the test fails
+	 */
+	@Test
+	public void testConversionFailure() throws Exception {
+		JdbcWriter writer = new JdbcWriter(connection, "target") {
+			@Override
+			protected Object convert(Object value) {
+				if ("invalid".equals(value)) throw new CsvException("Cannot convert: "+value);
+				return super.convert(value);
+			}
+		};
+		writer.setColumns("id", "name");
+		writer.setRowsPerStatement(2);
+		writer.printRow(new Object[] { 0, "Name 0" });
+		assertThrows(CsvException.class, () -> writer.printRow(new Object[] { 1, "invalid" }));
+		writer.printRow(new Object[] { 2, "Name 2" });
+		writer.close();
+		assertEquals(2, writer.getRowCount(), "Invalid row count");
+
+		JdbcReader reader = new JdbcReader(connection, TARGET_QUERY);
+		assertArrayEquals(new Object[] { 0, "Name 0", null }, reader.next(), "Invalid row");
+		assertArrayEquals(new Object[] { 2, "Name 2", null }, reader.next(), "Invalid row");
+		assertFalse(reader.hasNext(), "Invalid row count");
+		reader.close();
+	}
+
+	/**
+	 * Tests merging rows into a table.
+	 * @throws IOException when the rows cannot be written
+	 */
+	@Test
+	public void testUpsert() throws IOException {
+		for (int pass=0; pass<2; pass++) {
+			JdbcWriter writer = new JdbcWriter(connection, "target");
+			writer.setColumns("id", null, "name");
+			writer.setKeyColumns("id");
+			writer.setRowsPerStatement(2);
+			for (int i=3*pass; i<5+2*pass; i++) {
+				writer.printRow(new Object[] { i, "skipped", (pass == 0 ? "a" : "b")+i });
+			}
+			writer.close();
+		}
+
+		JdbcReader reader = new JdbcReader(connection, TARGET_QUERY);
+		int rowCount = 0;
+		for (Object row[] : reader) {
+			assertArrayEquals(new Object[] { rowCount, (rowCount < 3 ? "a" : "b")+rowCount, null }, row, "Invalid row "+rowCount);
+			rowCount++;
+		}
+		reader.close();
+		assertEquals(7, rowCount, "Invalid row count");
+	}
+
+	/**
+	 * Tests reading partitions concurrently.
+	 * @throws SQLException when the query fails
+	 */
+	@Test
+	public void testPartitioned() throws SQLException {
+		List<Object[]> expected = new ArrayList<>();
+		JdbcReader jdbcReader = new JdbcReader(connection, QUERY);
+		for (Object row[] : jdbcReader) expected.add(row);
+		jdbcReader.close();
+
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:JdbcWriterReaderTest");
+
+		// Ordered by numeric column
+		PartitionedJdbcReader reader = new PartitionedJdbcReader(dataSource, "SELECT * FROM test", "id", 4);
+		reader.setOrdered(true);
+		reader.setParallelism(2);
+		assertArrayEquals(new Object[] { "ID", "BIG", "SMALL", "NAME", "AMOUNT", "RATIO", "RATE", "FLAG", "BIRTHDAY", "STAMP" }, reader.getHeaderRow(), "Invalid header row");
+		for (int pass=0; pass<2; pass++) {
+			int rowCount = 0;
+			for (Object row[] : reader) {
+				assertArrayEquals(expected.get(rowCount), row, "Invalid row "+rowCount);
+				rowCount++;
+			}
+			assertEquals(ROW_COUNT, rowCount, "Invalid row count");
+			reader.reset();
+		}
+		reader.close();
+
+		// Unordered by date column and by decimal column with NULL values
+		for (String column : new String[] { "stamp", "amount" }) {
+			reader = new PartitionedJdbcReader(dataSource, "SELECT * FROM test WHERE id < 90", column, 3);
+			reader.setFetchSize(10);
+			Set<Integer> ids = new TreeSet<>();
+			for (Object row[] : reader) {
+				assertArrayEquals(expected.get((Integer)row[0]), row, "Invalid row "+row[0]);
+				assertTrue(ids.add((Integer)row[0]), "Duplicate row "+row[0]);
+			}
+			reader.close();
+			assertEquals(90, ids.size(), "Invalid row count when split by "+column);
+		}
+	}
+
+	/**
+	 * Tests reading partitions larger than the rows buffered per partition
+	 * and splitting by java.time bounds.
+	 * @throws SQLException when the query fails
+	 */
+	@Test
+	public void testPartitionedLarge() throws SQLException {
+		int rowCount = 5000;
+		LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+		try (Statement stmt = connection.createStatement()) {
+			stmt.execute("CREATE TABLE large (id INTEGER, created DATE, stamp TIMESTAMP, stamp_tz TIMESTAMP WITH TIME ZONE)");
+		}
+		try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO large VALUES (?,?,?,?)")) {
+			for (int i=0; i<rowCount; i++) {
+				LocalDateTime stamp = start.plusMinutes(i);
+				stmt.setInt(1, i);
+				stmt.setObject(2, stamp.toLocalDate());
+				stmt.setObject(3, stamp);
+				stmt.setObject(4, stamp.atOffset(ZoneOffset.UTC));
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		}
+
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:JdbcWriterReaderTest");
+		LocalDateTime end = start.plusMinutes(rowCount-1);
+		Object bounds[][] = new Object[][] {
+			{ "id", null, null },
+			{ "created", start.toLocalDate(), end.toLocalDate() },
+			{ "stamp", start, end },
+			{ "stamp_tz", start.atOffset(ZoneOffset.UTC), end.atOffset(ZoneOffset.UTC) },
+		};
+		try {
+			for (Object bound[] : bounds) {
+				for (boolean ordered : new boolean[] { true, false }) {
+					PartitionedJdbcReader reader = new PartitionedJdbcReader(dataSource, "SELECT * FROM large", (String)bound[0], 3);
+					reader.setOrdered(ordered);
+					if (bound[1] != null) reader.setBounds(bound[1], bound[2]);
+					Set<Integer> ids = new TreeSet<>();
+					int last = -1;
+					for (Object row[] : reader) {
+						int id = (Integer)row[0];
+						assertTrue(ids.add(id), "Duplicate row "+id);
+						if (ordered && !"created".equals(bound[0])) assertTrue(id > last, "Rows not in order when split by "+bound[0]);
+						last = id;
+					}
+					reader.close();
+					assertEquals(rowCount, ids.size(), "Invalid row count when split by "+bound[0]);
+				}
+			}
+		} finally {
+			try (Statement stmt = connection.createStatement()) {
+				stmt.execute("DROP TABLE large");
+			}
+		}
+	}
+
+}
@@ -20,19 +20,35 @@ package csv.impl;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import csv.CsvException;
+import csv.util.CSVUtils;
+
 import rs.baselib.io.FileFinder;
 
 /**
@@ -42,6 +58,8 @@ import rs.baselib.io.FileFinder;
  */
 public class XExcelWriterReaderTest {
 	private static final String FILE_NAME= "excel-test.xlsx";
+	private static final String FILE_APPEND_NAME= "excel-append-test.xlsx";
+	private static final String FILE_TRANSCODE_NAME= "excel-transcode-test.xls";
 	private static final String FILE_MULTISHEET_XLS = "multisheet.xls";
 	private static final String FILE_SKIPPEDLINES_XLSX = "skippedlines.xlsx";
 	private static final String FILE_EXTERNAL_SHEET_REF = "external_sheet_ref.xls";
@@ -64,6 +82,8 @@ public class XExcelWriterReaderTest {
 			"абвгдеёжзийклмно прстуфхцчшчьыъэюя АБВГДЕЁЖЗИЙ КЛМНОПРСТУФ ХЦЧШЩЬЫЪЭЮЯ", "Ў ў Є є Ґ ґ", "Ђ Љ Њ Ћ Џ ђ љ њ ћ џ"}};
 
 	private File fFile;
+	private File fAppendFile;
+	private File fTranscodeFile;
 	private URL multisheetUrl;
 	private URL skippedLinesUrl;
 	private URL externalSheetRefUrl;
@@ -74,6 +94,8 @@ public class XExcelWriterReaderTest {
 	@BeforeEach
 	public void init() {
 		fFile= new File(FILE_NAME);
+		fAppendFile= new File(FILE_APPEND_NAME);
+		fTranscodeFile= new File(FILE_TRANSCODE_NAME);
 		multisheetUrl = FileFinder.find(FILE_MULTISHEET_XLS);
 		skippedLinesUrl = FileFinder.find(FILE_SKIPPEDLINES_XLSX);
 		externalSheetRefUrl = FileFinder.find(FILE_EXTERNAL_SHEET_REF);
@@ -85,6 +107,8 @@ public class XExcelWriterReaderTest {
 	@AfterEach
 	public void done() {
 		if ((fFile != null) && fFile.exists()) fFile.deleteOnExit();
+		if ((fAppendFile != null) && fAppendFile.exists()) fAppendFile.delete();
+		if ((fTranscodeFile != null) && fTranscodeFile.exists()) fTranscodeFile.delete();
 	}
 
 	/**
@@ -231,4 +255,436 @@ public class XExcelWriterReaderTest {
 		testRow(new Double[]{99945.0}, in.next());
 		assertFalse(in.hasNext());
 	}
+
+	/**
+	 * This method checks that a streamed file can be written and read.
+	 * The window is smaller than the number of rows so that rows are flushed during writing.
+	 */
+	@Test
+	public void testStreamingReadWrite() {
+		XExcelWriter out = null;
+		try {
+			out = new XExcelWriter(fFile);
+			out.setStreaming(true);
+			out.setRowAccessWindowSize(2);
+			out.setFormatter(new DefaultExcelFormatter(true, true));
+			out.printRow(TEST_HEADER);
+			for (int row= 0; row < TEST_VALUES.length; row++) {
+				out.printRow(TEST_VALUES[row]);
+			}
+			out.close();
+			assertTrue(fFile.exists());
+		} catch (Exception e) {
+			fail("Exception: " + e.getMessage());
+		}
+		testWrittenValues(true);
+	}
+
+	/**
+	 * This method checks that rows already flushed to disk cannot be accessed anymore.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testStreamingFlushedRowAccess() throws IOException {
+		XExcelWriter out = new XExcelWriter(fFile);
+		out.setStreaming(true);
+		out.setRowAccessWindowSize(2);
+		for (int row= 0; row < TEST_VALUES.length; row++) {
+			out.printRow(TEST_VALUES[row]);
+		}
+		assertThrows(CsvException.class, () -> out.setValue(0, 0, "overwritten"));
+		out.close();
+	}
+
+	/**
+	 * This method checks that streaming mode delivers the same rows as the workbook mode.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testStreamingRead() throws IOException {
+		XExcelWriter out = new XExcelWriter(fFile);
+		out.printRow(TEST_HEADER);
+		for (int row= 0; row < TEST_VALUES.length; row++) {
+			out.printRow(TEST_VALUES[row]);
+		}
+		out.printRow(new Object[] { 1.5d, new java.util.Date(1296432000000L), Boolean.TRUE, null, "" });
+		out.close();
+
+		ExcelReader expected = new ExcelReader(fFile);
+		ExcelReader in = new ExcelReader(fFile);
+		in.setStreaming(true);
+		assertEquals(expected.getNumRows(), in.getNumRows());
+		assertEquals(expected.computeMaxColumnCount(), in.computeMaxColumnCount());
+		while (expected.hasNext()) {
+			assertTrue(in.hasNext());
+			testRow(expected.next(), in.next());
+		}
+		assertFalse(in.hasNext());
+		expected.close();
+		in.close();
+	}
+
+	/**
+	 * This method checks that a sheet with blank lines can be read in streaming mode.
+	 * 
+	 * @throws IOException - when the file cannot be opened/read
+	 */
+	@Test
+	public void testStreamingBlankLines() throws IOException {
+		ExcelReader in = new ExcelReader(skippedLinesUrl.openStream());
+		in.setStreaming(true);
+		in.setSkipBlankRows(false);
+		in.setMinimumColumnCount(in.computeMaxColumnCount());
+		assertEquals(in.getMinimumColumnCount(), 2);
+
+		assertTrue(in.hasNext()); testRow(new String[]{"header", "header2"}, in.next());
+		assertTrue(in.hasNext()); testRow(new String[]{null,      null    }, in.next());
+		assertTrue(in.hasNext()); testRow(new String[]{null,      null    }, in.next());
+		assertTrue(in.hasNext()); testRow(new String[]{"val1",    null    }, in.next());
+		assertTrue(in.hasNext()); testRow(new String[]{"val2",    "val2-2"}, in.next());
+		assertFalse(in.hasNext());
+		assertThrows(CsvException.class, () -> in.getWorkbook());
+		in.close();
+	}
+
+	/**
+	 * This method checks that all sheets of a workbook can be read concurrently.
+	 * @throws Exception - when the file cannot be written or read
+	 */
+	@Test
+	public void testConcurrentSheets() throws Exception {
+		XExcelWriter out = new XExcelWriter(fFile);
+		for (int sheet=0; sheet<3; sheet++) {
+			if (sheet > 0) {
+				out.createSheet();
+				out.selectSheet(sheet);
+			}
+			for (int row= 0; row < 200; row++) {
+				out.printRow(new Object[] { "Sheet "+sheet, row, TEST_VALUES[row % TEST_VALUES.length][0] });
+			}
+		}
+		out.close();
+
+		ExcelWorkbookReader workbook = new ExcelWorkbookReader(fFile);
+		assertEquals(3, workbook.getSheetNames().size());
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		List<Future<List<Object[]>>> results = new ArrayList<>();
+		for (ExcelReader sheetReader : workbook.getSheetReaders()) {
+			results.add(executor.submit(() -> {
+				List<Object[]> rc = new ArrayList<>();
+				while (sheetReader.hasNext()) rc.add(sheetReader.next());
+				sheetReader.close();
+				return rc;
+			}));
+		}
+		executor.shutdown();
+
+		ExcelReader expected = new ExcelReader(fFile);
+		for (int sheet=0; sheet<3; sheet++) {
+			expected.selectSheet(sheet);
+			List<Object[]> rows = results.get(sheet).get();
+			assertEquals(200, rows.size());
+			for (Object row[] : rows) {
+				assertTrue(expected.hasNext());
+				testRow(expected.next(), row);
+			}
+		}
+		expected.close();
+		List<ExcelReader> selected = workbook.getSheetReaders(workbook.getSheetNames().get(1));
+		assertEquals(1, selected.size());
+		selected.get(0).close();
+		workbook.close();
+		assertThrows(CsvException.class, () -> workbook.getSheetReader(0));
+	}
+
+	/**
+	 * This method checks that declared column styles are written in streaming mode.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testStreamingColumnStyle() throws IOException {
+		XExcelWriter out = new XExcelWriter(fFile);
+		out.setStreaming(true);
+		out.setRowAccessWindowSize(2);
+		out.setFormatter(new DefaultExcelFormatter(true));
+		CellStyle style = out.getWorkbook().createCellStyle();
+		style.setDataFormat(out.getWorkbook().createDataFormat().getFormat("0.000"));
+		out.setColumnStyle(0, style);
+		for (int row= 0; row < 10; row++) {
+			out.printRow(new Object[] { row * 1.5d });
+		}
+		out.close();
+
+		ExcelReader in = new ExcelReader(fFile);
+		for (int row= 0; row < 10; row++) {
+			assertEquals("0.000", in.getSheet().getRow(row).getCell(0).getCellStyle().getDataFormatString());
+			assertEquals(row * 1.5d, in.next()[0]);
+		}
+		in.close();
+	}
+
+	/**
+	 * This method checks that a header-only region can be read in streaming mode.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testStreamingRegion() throws IOException {
+		XExcelWriter out = new XExcelWriter(fFile);
+		out.printRow(TEST_HEADER);
+		for (int row= 0; row < 100; row++) {
+			out.printRow(new Object[] { "A"+row, row, "C"+row });
+		}
+		out.close();
+
+		ExcelReader in = new ExcelReader(fFile);
+		in.setStreaming(true);
+		in.setHasHeaderRow(true);
+		in.setRegion(0, 0);
+		testRow(TEST_HEADER, in.getHeaderRow());
+		assertFalse(in.hasNext());
+		in.setRegion(50, 51, 2, 0);
+		testRow(new String[] { "C49", "A49" }, in.next());
+		testRow(new String[] { "C50", "A50" }, in.next());
+		assertFalse(in.hasNext());
+		in.close();
+	}
+
+	/**
+	 * This method checks that shared strings can be read from disk with a small cache.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testDiskSharedStrings() throws IOException {
+		XExcelWriter out = new XExcelWriter(fFile);
+		for (int row= 0; row < TEST_VALUES.length; row++) {
+			out.printRow(TEST_VALUES[row]);
+		}
+		for (int row= 0; row < 100; row++) {
+			out.printRow(new Object[] { "Text "+row, "Text "+(row % 7), TEST_VALUES[0][row % 4] });
+		}
+		out.close();
+
+		ExcelReader expected = new ExcelReader(fFile);
+		ExcelReader in = new ExcelReader(fFile);
+		in.setStreaming(true);
+		in.setSharedStringsCacheSize(3);
+		while (expected.hasNext()) {
+			assertTrue(in.hasNext());
+			testRow(expected.next(), in.next());
+		}
+		assertFalse(in.hasNext());
+		assertThrows(CsvException.class, () -> in.setSharedStringsCacheSize(0));
+		expected.close();
+		in.close();
+	}
+
+	/**
+	 * This method checks that new sheets are created in streaming mode when the row count is reached.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testStreamingRollover() throws IOException {
+		XExcelWriter out = new XExcelWriter(fFile);
+		assertEquals(1048576, out.getMaxRowsPerSheet());
+		out.setStreaming(true);
+		out.setRowAccessWindowSize(5);
+		out.setRollover(true);
+		out.setRolloverRowCount(50);
+		out.setRepeatHeaderRow(true);
+		out.printRow(TEST_HEADER);
+		for (int row= 0; row < 200; row++) {
+			out.printRow(new Object[] { "Row "+row, row });
+		}
+		out.close();
+
+		ExcelWorkbookReader workbook = new ExcelWorkbookReader(fFile);
+		assertEquals(5, workbook.getSheetNames().size());
+		int row = 0;
+		for (ExcelReader in : workbook.getSheetReaders()) {
+			testRow(TEST_HEADER, in.next());
+			while (in.hasNext()) {
+				assertEquals("Row "+row, in.next()[0]);
+				row++;
+			}
+			in.close();
+		}
+		assertEquals(200, row);
+		workbook.close();
+	}
+
+	/**
+	 * This method checks that files written without POI can be read.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testStreamWriter() throws IOException {
+		LocalDate date = LocalDate.of(2024, 2, 29);
+		LocalDateTime dateTime = LocalDateTime.of(2024, 3, 1, 13, 45);
+		LocalDateTime farFuture = LocalDateTime.of(9999, 12, 31, 12, 0);
+		Object typed[] = new Object[] { 42, 2.5d, date, dateTime, Boolean.TRUE, "<a & b>", "_x0041_", null, "last", farFuture };
+		XExcelStreamWriter out = new XExcelStreamWriter(fFile);
+		out.setSheetName("Data & more");
+		out.printRow(TEST_HEADER);
+		for (int row= 0; row < TEST_VALUES.length; row++) {
+			out.printRow(TEST_VALUES[row]);
+		}
+		out.printRow(typed);
+		assertThrows(CsvException.class, () -> out.setSheetName("Other"));
+		out.close();
+
+		for (boolean streaming : new boolean[] { false, true }) {
+			ExcelReader in = new ExcelReader(fFile);
+			in.setStreaming(streaming);
+			in.setJavaTimeEnabled(true);
+			in.setHasHeaderRow(true);
+			testRow(TEST_HEADER, in.getHeaderRow());
+			for (int row= 0; row < TEST_VALUES.length; row++) {
+				testRow(TEST_VALUES[row], in.next());
+			}
+			Object columns[] = in.next();
+			assertEquals(42d, ((Number)columns[0]).doubleValue());
+			assertEquals(2.5d, ((Number)columns[1]).doubleValue());
+			assertEquals(date.atStartOfDay(), columns[2]);
+			assertEquals(dateTime, columns[3]);
+			assertEquals(Boolean.TRUE, columns[4]);
+			assertEquals("<a & b>", columns[5]);
+			assertEquals("_x0041_", columns[6]);
+			assertEquals(null, columns[7]);
+			assertEquals("last", columns[8]);
+			assertEquals(farFuture, columns[9]);
+			assertFalse(in.hasNext());
+			in.close();
+		}
+		ExcelWorkbookReader workbook = new ExcelWorkbookReader(fFile);
+		assertEquals("Data & more", workbook.getSheetNames().get(0));
+		workbook.close();
+	}
+
+	/**
+	 * This method checks that rows can be appended to an existing file.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testAppend() throws IOException {
+		testWriteFile(true);
+		LocalDate date = LocalDate.of(2024, 2, 29);
+		for (int day=0; day<2; day++) {
+			XExcelAppendWriter out = new XExcelAppendWriter(fFile);
+			// A missing sheet leaves the writer unstarted
+			out.setSheetName("Missing");
+			assertThrows(CsvException.class, () -> out.printRow(new Object[] { "missing" }));
+			out.setSheetName("Sheet1");
+			assertEquals(TEST_VALUES.length+1+2*day, out.getFirstRowNum());
+			assertThrows(CsvException.class, () -> out.setSheetIndex(0));
+			out.printRow(new Object[] { date.plusDays(day), day, 2.5d, "Day <"+day+">" });
+			out.printRow(new Object[] { null, null, null, null, "extra" });
+			out.close();
+		}
+
+		ExcelReader in = new ExcelReader(fFile);
+		in.setJavaTimeEnabled(true);
+		XSSFSheet sheet = (XSSFSheet)in.getWorkbook().getSheetAt(0);
+		assertEquals("A1:I"+(TEST_VALUES.length+5), sheet.getCTWorksheet().getDimension().getRef());
+		int styles = in.getWorkbook().getNumCellStyles();
+		in.close();
+		for (boolean streaming : new boolean[] { false, true }) {
+			in = new ExcelReader(fFile);
+			in.setStreaming(streaming);
+			in.setJavaTimeEnabled(true);
+			in.setHasHeaderRow(true);
+			testRow(TEST_HEADER, in.getHeaderRow());
+			for (int row= 0; row < TEST_VALUES.length; row++) {
+				Object columns[] = in.next();
+				for (int col=0; col<TEST_VALUES[row].length; col++) assertEquals(TEST_VALUES[row][col], columns[col]);
+			}
+			for (int day=0; day<2; day++) {
+				Object columns[] = in.next();
+				assertEquals(date.plusDays(day).atStartOfDay(), columns[0]);
+				assertEquals(day, ((Number)columns[1]).intValue());
+				assertEquals(2.5d, ((Number)columns[2]).doubleValue());
+				assertEquals("Day <"+day+">", columns[3]);
+				assertEquals("extra", in.next()[4]);
+			}
+			assertFalse(in.hasNext());
+			in.close();
+		}
+
+		// Appending again does not add styles, appending to a streamed file into a stream
+		File copy = fAppendFile;
+		XExcelAppendWriter out = new XExcelAppendWriter(fFile, new FileOutputStream(copy));
+		out.printRow(new Object[] { date });
+		out.close();
+		in = new ExcelReader(copy);
+		assertEquals(styles, in.getWorkbook().getNumCellStyles());
+		in.close();
+		XExcelStreamWriter streamOut = new XExcelStreamWriter(fFile);
+		streamOut.printRow(TEST_HEADER);
+		streamOut.close();
+		out = new XExcelAppendWriter(fFile, new FileOutputStream(copy));
+		out.printRow(new Object[] { date, "new" });
+		out.close();
+		in = new ExcelReader(copy);
+		in.setStreaming(true);
+		in.setJavaTimeEnabled(true);
+		testRow(TEST_HEADER, in.next());
+		Object columns[] = in.next();
+		assertEquals(date.atStartOfDay(), columns[0]);
+		assertEquals("new", columns[1]);
+		assertFalse(in.hasNext());
+		in.close();
+
+		// A failed start does not leave a closed source behind when writing into a stream
+		out = new XExcelAppendWriter(fFile, new FileOutputStream(copy));
+		out.setSheetIndex(1);
+		XExcelAppendWriter failed = out;
+		assertThrows(CsvException.class, () -> failed.printRow(new Object[] { date }));
+		out.setSheetIndex(0);
+		out.printRow(new Object[] { date, "retry" });
+		out.close();
+		in = new ExcelReader(copy);
+		in.setStreaming(true);
+		testRow(TEST_HEADER, in.next());
+		assertEquals("retry", in.next()[1]);
+		in.close();
+	}
+
+	/**
+	 * This method checks that streamed sheets are transcoded into CSV.
+	 * @throws Exception - when the files cannot be written
+	 */
+	@Test
+	public void testTranscode() throws Exception {
+		Object typed[] = new Object[] { 42, 2.5d, LocalDate.of(2024, 2, 29), LocalDateTime.of(2024, 3, 1, 13, 45), Boolean.TRUE, null, "last" };
+		String texts[] = new String[] { "42", "2.5", "2024-02-29", "2024-03-01 13:45:00", "true", null, "last" };
+		CSVWriter expected = new CSVWriter(new ByteArrayOutputStream());
+		StringBuilder csv = new StringBuilder(expected.prepareRow(TEST_HEADER));
+		for (int row= 0; row < TEST_VALUES.length; row++) {
+			csv.append(expected.prepareRow(TEST_VALUES[row]));
+		}
+		csv.append(expected.prepareRow(texts));
+		expected.close();
+
+		File xls = fTranscodeFile;
+		for (AbstractStreamTableWriter out : new AbstractStreamTableWriter[] { new XExcelStreamWriter(fFile), new ExcelStreamWriter(xls) }) {
+			out.printRow(TEST_HEADER);
+			for (int row= 0; row < TEST_VALUES.length; row++) {
+				out.printRow(TEST_VALUES[row]);
+			}
+			out.printRow(typed);
+			out.close();
+		}
+		for (File file : new File[] { fFile, xls }) {
+			ExcelReader in = new ExcelReader(file);
+			in.setStreaming(true);
+			in.setHasHeaderRow(true);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			CSVWriter out = new CSVWriter(bytes);
+			assertEquals(TEST_VALUES.length+1, in.transcode(out, true));
+			assertEquals(TEST_VALUES.length+2, out.getRowCount());
+			assertNull(in.getTextFormat());
+			out.close();
+			in.close();
+			assertEquals(csv.toString(), new String(bytes.toByteArray(), CSVUtils.getDefaultCharset()));
+		}
+	}
 }
@@ -18,13 +18,20 @@
 package csv.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -212,6 +219,231 @@ public class XmlWriterReaderTest {
 		}
 	}
 
+	/**
+	 * Tests that comments are delivered with the row they precede.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testCommentRow() throws IOException {
+		XmlWriter out = new XmlWriter(fFile);
+		out.setHeaderColumns(TEST_HEADER);
+		for (int row= 0; row < TEST_VALUES.length; row++) {
+			if (row == 2) out.printComment(COMMENT_VALUE);
+			out.printRow(TEST_VALUES[row]);
+		}
+		out.close();
+
+		List<Integer> commentRows = new ArrayList<>();
+		XmlReader in = new XmlReader(fFile);
+		in.registerCommentCallBack((reader, comment, row, cell) -> commentRows.add(row));
+		testRow(TEST_HEADER, in.getHeaderRow());
+		for (int row= 0; row < TEST_VALUES.length; row++) {
+			testRow(TEST_VALUES[row], in.next());
+			assertEquals(row < 2 ? 0 : 1, commentRows.size());
+		}
+		assertFalse(in.hasNext());
+		in.close();
+		assertEquals(List.of(2), commentRows);
+	}
+
+	/**
+	 * Tests that columns are delivered in the sequence they were found first.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testColumnOrder() throws IOException {
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<table>"
+				+ "<record><column name=\"a\" type=\"java.lang.Integer\">1</column><column name=\"b\">x</column></record>"
+				+ "<record><column name=\"b\"><![CDATA[<y>]]></column><column name=\"c\">z</column><column name=\"a\" type=\"java.lang.Integer\">2</column></record>"
+				+ "<record><column name=\"c\"></column></record>"
+				+ "</table>";
+		Files.write(fFile.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+		for (int parallelism : new int[] { 1, 3 }) {
+			XmlReader in = new XmlReader(fFile);
+			in.setParallelism(parallelism);
+			in.setChunkSize(1);
+			testRow(new Object[] { "a", "b" }, in.getHeaderRow());
+			testRow(new Object[] { 1, "x" }, in.next());
+			testRow(new Object[] { 2, "<y>", "z" }, in.next());
+			testRow(new Object[] { null, null, "" }, in.next());
+			assertFalse(in.hasNext());
+			in.close();
+		}
+	}
+
+	/**
+	 * Tests the indented and the compact output.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testCompact() throws IOException {
+		String nl = System.lineSeparator();
+		for (boolean compact : new boolean[] { false, true }) {
+			XmlWriter out = new XmlWriter(fFile);
+			out.setCompact(compact);
+			out.setHeaderColumns(new String[] { "a", "b" });
+			out.printRow(new Object[] { "x & 'y'", null });
+			for (int row= 0; row < TEST_VALUES.length; row++) {
+				out.printRow(TEST_VALUES[row]);
+			}
+			out.close();
+			String xml = new String(Files.readAllBytes(fFile.toPath()), StandardCharsets.UTF_8);
+			if (compact) {
+				assertTrue(xml.contains(nl+"<record><column name=\"a\" type=\"java.lang.String\">x &amp; &apos;y&apos;</column><column name=\"b\"/></record>"+nl));
+				assertFalse(xml.contains("\t"));
+			} else {
+				assertTrue(xml.contains(nl+"\t<record>"+nl+"\t\t<column name=\"a\" type=\"java.lang.String\">x &amp; &apos;y&apos;</column>"+nl+"\t\t<column name=\"b\"/>\t</record>"+nl));
+			}
+
+			XmlReader in = new XmlReader(fFile);
+			testRow(new Object[] { "x & 'y'", "" }, in.next());
+			for (int row= 0; row < TEST_VALUES.length; row++) {
+				Object columns[] = in.next();
+				for (int col=0; col<TEST_VALUES[row].length; col++) assertEquals(TEST_VALUES[row][col], columns[col]);
+			}
+			assertFalse(in.hasNext());
+			in.close();
+		}
+	}
+
+	/**
+	 * Tests that rows are flushed on close or according to the flush interval.
+	 * @throws IOException - when the rows cannot be written
+	 */
+	@Test
+	public void testFlushInterval() throws IOException {
+		int flushes[] = new int[1];
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream() {
+			@Override
+			public void flush() {
+				flushes[0]++;
+			}
+		};
+		XmlWriter out = new XmlWriter(bytes);
+		out.printRow(TEST_VALUES[0]);
+		out.printRow(TEST_VALUES[1]);
+		assertEquals(0, flushes[0], "Writer was flushed");
+		out.setFlushInterval(3);
+		out.printRow(TEST_VALUES[2]);
+		assertEquals(1, flushes[0], "Writer was not flushed");
+		out.printRow(TEST_VALUES[0]);
+		assertEquals(1, flushes[0], "Writer was flushed");
+		out.close();
+		assertTrue(flushes[0] > 1, "Writer was not flushed");
+	}
+
+	/**
+	 * Tests that overridden tag and encoding methods are used for each cell.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testOverrides() throws IOException {
+		XmlWriter out = new XmlWriter(fFile) {
+			@Override
+			protected String getColumnStartTag(int column, Object value) {
+				if ((value instanceof Integer) && ((Integer)value < 0)) return "<negative>";
+				return super.getColumnStartTag(column, value);
+			}
+			@Override
+			protected String getColumnEndTag(int column) {
+				return "</column>";
+			}
+			@Override
+			protected String encode(Object s) {
+				return super.encode(s).toUpperCase();
+			}
+		};
+		out.setCompact(true);
+		out.setHeaderColumns(new String[] { "a" });
+		out.printRow(new Object[] { 1 });
+		out.printRow(new Object[] { -1 });
+		out.printRow(new Object[] { "x & y" });
+		out.close();
+		String xml = new String(Files.readAllBytes(fFile.toPath()), StandardCharsets.UTF_8);
+		assertTrue(xml.contains("<record><column name=\"A\" type=\"JAVA.LANG.INTEGER\">1</column></record>"));
+		assertTrue(xml.contains("<record><negative>-1</column></record>"));
+		assertTrue(xml.contains("<record><column name=\"A\" type=\"JAVA.LANG.STRING\">X &AMP; Y</column></record>"));
+	}
+
+	/**
+	 * Tests that chunks parsed concurrently deliver the same rows and comments.
+	 * @throws IOException - when the file cannot be written
+	 */
+	@Test
+	public void testParallel() throws IOException {
+		XmlWriter out = new XmlWriter(fFile);
+		out.setHeaderColumns(new String[] { "row", "text", "<record>" });
+		for (int row=0; row<2000; row++) {
+			if (row % 7 == 3) out.printComment("before "+row);
+			Object text = TEST_VALUES[row % TEST_VALUES.length][row % 3];
+			out.printRow(new Object[] { row, text, row % 5 == 0 ? "<record>" : null });
+		}
+		out.printComment("end");
+		out.close();
+
+		List<String> expected = new ArrayList<>();
+		for (int parallelism : new int[] { 1, 4 }) {
+			List<String> comments = new ArrayList<>();
+			XmlReader in = new XmlReader(fFile);
+			in.setParallelism(parallelism);
+			in.setChunkSize(2048);
+			in.registerCommentCallBack((reader, comment, row, cell) -> comments.add(row+":"+comment));
+			testRow(new Object[] { "row", "text", "<record>" }, in.getHeaderRow());
+			int row = 0;
+			while (in.hasNext()) {
+				Object columns[] = in.next();
+				assertEquals(row, columns[0]);
+				assertEquals(TEST_VALUES[row % TEST_VALUES.length][row % 3], columns[1]);
+				assertEquals(row % 5 == 0 ? "<record>" : "", columns[2]);
+				row++;
+			}
+			in.close();
+			assertEquals(2000, row);
+			if (parallelism == 1) expected = comments;
+			else assertEquals(expected, comments);
+		}
+		assertEquals("3:before 3", expected.get(0));
+		assertEquals("-1:end", expected.get(expected.size()-1));
+	}
+
+	/**
+	 * Tests that resetting and closing readers stops parsing without leaving threads behind.
+	 * @throws IOException - when the file cannot be written
+	 * @throws InterruptedException - when waiting for the workers is interrupted
+	 */
+	@Test
+	public void testResetClose() throws IOException, InterruptedException {
+		// More rows than a parser could read ahead
+		XmlWriter out = new XmlWriter(fFile);
+		out.setHeaderColumns(TEST_HEADER);
+		for (int row=0; row<100; row++) {
+			out.printRow(TEST_VALUES[row % TEST_VALUES.length]);
+		}
+		out.close();
+		byte xml[] = Files.readAllBytes(fFile.toPath());
+		for (int parallelism : new int[] { 1, 4 }) {
+			for (int i=0; i<200; i++) {
+				XmlReader in = new XmlReader(new ByteArrayInputStream(xml));
+				in.setParallelism(parallelism);
+				in.setChunkSize(256);
+				testRow(TEST_VALUES[0], in.next());
+				testRow(TEST_VALUES[1], in.next());
+				in.reset();
+				testRow(TEST_HEADER, in.getHeaderRow());
+				testRow(TEST_VALUES[0], in.next());
+				if (i % 2 == 0) in.reset();
+				in.close();
+			}
+		}
+		// Workers finish their current chunk before they terminate
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("XmlReader-")) thread.join(5000);
+		}
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			assertFalse(thread.getName().startsWith("XmlReader-") && thread.isAlive(), "Parser still running: "+thread.getName());
+		}
+	}
+
 	/**
 	 * Internal class for testing the comment callback.
 	 */